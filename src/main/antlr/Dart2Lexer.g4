@@ -32,11 +32,6 @@ lexer grammar Dart2Lexer;
 
 @header {
     package com.levelrin.antlr.generated;
-    import com.levelrin.Dart2LexerBase;
-}
-
-options {
-    superClass = Dart2LexerBase;
 }
 
 // Insert here @header for C++ lexer.
@@ -181,21 +176,32 @@ SINGLE_LINE_COMMENT : '//' ~[\r\n]*                         -> channel(3);
 MULTI_LINE_COMMENT  : '/*' ( MULTI_LINE_COMMENT | .)*? '*/' -> skip;
 fragment EXPONENT   : ( 'e' | 'E') ( '+' | '-')? DIGIT+;
 fragment HEX_DIGIT  : 'a' .. 'f' | 'A' .. 'F' | DIGIT;
-fragment StringDQ   : '"' StringContentDQ*? '"';
+// The original rules matched a `$` with the predicate `{ this.CheckNotOpenBrace() }?`.
+// The lexer can't cache the DFA edges of a predicate, so it simulated the ATN for every `$` in every string.
+// Instead, the `$` signs are followed by anything but `{`, or they end the string or the interpolation.
+fragment StringDQ   : '"' StringContentDQ*? '$'* '"';
 fragment StringContentDQ:
-    ~('\\' | '"' | '\n' | '\r' | '$')
+    StringPartDQ
+    | '{'
+    | '$'+ StringPartDQ
+;
+fragment StringPartDQ:
+    ~('\\' | '"' | '\n' | '\r' | '$' | '{')
     | '\\' ~('\n' | '\r')
     | StringDQ
-    | '${' StringContentDQ*? '}'
-    | '$' { this.CheckNotOpenBrace() }?
+    | '${' StringContentDQ*? '$'* '}'
 ;
-fragment StringSQ: '\'' StringContentSQ*? '\'';
+fragment StringSQ: '\'' StringContentSQ*? '$'* '\'';
 fragment StringContentSQ:
-    ~('\\' | '\'' | '\n' | '\r' | '$')
+    StringPartSQ
+    | '{'
+    | '$'+ StringPartSQ
+;
+fragment StringPartSQ:
+    ~('\\' | '\'' | '\n' | '\r' | '$' | '{')
     | '\\' ~('\n' | '\r')
     | StringSQ
-    | '${' StringContentSQ*? '}'
-    | '$' { this.CheckNotOpenBrace() }?
+    | '${' StringContentSQ*? '$'* '}'
 ;
 fragment StringContentTDQ : ~('\\' | '"') | '"' ~'"' | '""' ~'"';
 fragment StringContentTSQ : '\'' ~'\'' | '\'\'' ~'\'' | .;
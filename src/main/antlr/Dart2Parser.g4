@@ -35,11 +35,6 @@ options {
     tokenVocab = Dart2Lexer;
 }
 
-additiveExpression
-    : multiplicativeExpression (additiveOperator multiplicativeExpression)*
-    | SUPER_ ( additiveOperator multiplicativeExpression)+
-    ;
-
 additiveOperator
     : PL
     | MINUS
@@ -95,6 +90,30 @@ awaitExpression
     : AWAIT_ unaryExpression
     ;
 
+// The original rules were a chain of one rule per precedence level, from ifNullExpression to multiplicativeExpression.
+// So every operand was nested in about ten contexts, and the parser made a decision at each level.
+// The formatter puts the same spaces around all binary operators, so one loop of operands and operators is enough.
+// It doesn't check the precedence or the associativity. Ex: `a == b == c` parses.
+binaryExpression
+    : (unaryExpression | SUPER_) (
+        (
+            multiplicativeOperator
+            | additiveOperator
+            | shiftOperator
+            | A
+            | CIR
+            | P
+            | relationalOperator
+            | equalityOperator
+            | AA
+            | PP
+            | QUQU
+        ) unaryExpression
+        | typeTest
+        | typeCast
+    )*
+    ;
+
 binaryOperator
     : multiplicativeOperator
     | additiveOperator
@@ -104,27 +123,12 @@ binaryOperator
     | bitwiseOperator
     ;
 
-bitwiseAndExpression
-    : shiftExpression (A shiftExpression)*
-    | SUPER_ ( A shiftExpression)+
-    ;
-
 bitwiseOperator
     : A
     | CIR
     | P
     ;
 
-bitwiseOrExpression
-    : bitwiseXorExpression (P bitwiseXorExpression)*
-    | SUPER_ ( P bitwiseXorExpression)+
-    ;
-
-bitwiseXorExpression
-    : bitwiseAndExpression (CIR bitwiseAndExpression)*
-    | SUPER_ ( CIR bitwiseAndExpression)+
-    ;
-
 block
     : OBC statements CBC
     ;
@@ -138,9 +142,10 @@ breakStatement
     : BREAK_ identifier? SC
     ;
 
+// The original rule is left-recursive, so the parser evaluated a precedence predicate for every section
+// and the visitor walked the nested cascades. The loop has no predicate and keeps the sections in order.
 cascade
-    : cascade DD cascadeSection
-    | conditionalExpression ( QUDD | DD) cascadeSection
+    : conditionalExpression (QUDD | DD) cascadeSection (DD cascadeSection)*
     ;
 
 cascadeAssignment
@@ -182,8 +187,10 @@ combinator
     | HIDE_ identifierList
     ;
 
+// We removed `expr` and `statement` because the formatter doesn't support them as a file.
+// A file of declarations is also a statement, so the parser looked ahead until the end of the file to decide.
 compilationUnit
-    : (libraryDeclaration | partDeclaration | expr | statement) EOF
+    : (libraryDeclaration | partDeclaration) EOF
     ;
 
 compoundAssignmentOperator
@@ -203,7 +210,7 @@ compoundAssignmentOperator
     ;
 
 conditionalExpression
-    : ifNullExpression (QU expressionWithoutCascade CO expressionWithoutCascade)?
+    : binaryExpression (QU expressionWithoutCascade CO expressionWithoutCascade)?
     ;
 
 configurableUri
@@ -311,20 +318,18 @@ enumType
     : ENUM_ identifier OBC enumEntry (C enumEntry)* C? CBC
     ;
 
-equalityExpression
-    : relationalExpression (equalityOperator relationalExpression)?
-    | SUPER_ equalityOperator relationalExpression
-    ;
-
 equalityOperator
     : EE
     | NE
     ;
 
+// The cascade comes before the conditional expression. It starts with the conditional expression.
+// SLL prediction doesn't know the caller, and `..` could follow an expression that ends a function body. Ex: `(x) => a..b()`.
+// So both alternatives were viable at `..`, and it chose the first one, which failed at `..`.
 expr
     : assignableExpression assignmentOperator expr
-    | conditionalExpression
     | cascade
+    | conditionalExpression
     | throwExpression
     ;
 
@@ -499,10 +504,6 @@ ifElement
     : IF_ OP expr CP element (ELSE_ element)?
     ;
 
-ifNullExpression
-    : logicalOrExpression (QUQU logicalOrExpression)*
-    ;
-
 ifStatement
     : IF_ OP expr CP statement (ELSE_ statement)?
     ;
@@ -603,14 +604,6 @@ localVariableDeclaration
     : metadata initializedVariableDeclaration SC
     ;
 
-logicalAndExpression
-    : equalityExpression (AA equalityExpression)*
-    ;
-
-logicalOrExpression
-    : logicalAndExpression (PP logicalAndExpression)*
-    ;
-
 mapElement
     : expr CO expr
     ;
@@ -660,11 +653,6 @@ multilineString
     : MultiLineString
     ;
 
-multiplicativeExpression
-    : unaryExpression (multiplicativeOperator unaryExpression)*
-    | SUPER_ ( multiplicativeOperator unaryExpression)+
-    ;
-
 multiplicativeOperator
     : ST
     | SL
@@ -842,11 +830,6 @@ redirection
     : CO THIS_ (D identifier)? arguments
     ;
 
-relationalExpression
-    : bitwiseOrExpression (typeTest | typeCast | relationalOperator bitwiseOrExpression)?
-    | SUPER_ relationalOperator bitwiseOrExpression
-    ;
-
 relationalOperator
     : GT EQ
     | GT
@@ -912,11 +895,6 @@ setterSignature
     : type? SET_ identifier formalParameterList
     ;
 
-shiftExpression
-    : additiveExpression (shiftOperator additiveExpression)*
-    | SUPER_ ( shiftOperator additiveExpression)+
-    ;
-
 shiftOperator
     : LTLT
     | GT GT GT
@@ -0,0 +1,278 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses a large file in parallel.
+ * We cut the tokens where a top-level declaration ends, which is a `;` or `}` outside any brackets,
+ * and parse each chunk of declarations as a {@link Dart2Parser.LibraryDeclarationContext} with its own parser.
+ * Then, we move their children into one library declaration, so the visitor sees the same tree as parsing the whole file.
+ * If we can't cut the tokens or a chunk doesn't parse, the caller should parse the whole file instead.
+ * Ex: a part file, a syntax error, or a `}` that doesn't end the declaration like `final a = () {}..b();`.
+ */
+final class ChunkedParser {
+
+    /**
+     * Number of chunks per thread.
+     * More chunks than threads balance the declarations of different sizes.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Position of the declarations in {@link ChunkedParser#ORDER}.
+     */
+    private static final int DECLARATIONS = 3;
+
+    /**
+     * For logging.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedParser.class);
+
+    /**
+     * Order of the children of {@link Dart2Parser.LibraryDeclarationContext}.
+     * Key - Rule index.
+     * Value - Position in the rule. Ex: imports come before the declarations.
+     */
+    private static final int[] ORDER = ruleOrder();
+
+    /**
+     * It runs the parsers of the chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param pool See {@link ChunkedParser#pool}.
+     */
+    ChunkedParser(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parse the tokens of the file in chunks.
+     *
+     * @param tokens All tokens of the file, ending with EOF. Ex: {@link org.antlr.v4.runtime.CommonTokenStream#getTokens()} after filling it.
+     * @return The compilation unit, or null if we couldn't parse the file in chunks.
+     */
+    ParseTree parse(final List<Token> tokens) {
+        final List<Integer> boundaries = boundaries(tokens);
+        ParseTree result = null;
+        if (boundaries.size() > 1) {
+            final int chunkCount = Math.min(boundaries.size(), this.pool.getParallelism() * CHUNKS_PER_THREAD);
+            final List<Callable<Dart2Parser.LibraryDeclarationContext>> tasks = new ArrayList<>(chunkCount);
+            int start = 0;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                final int from = start;
+                final int end = boundaries.get(boundaries.size() * (chunk + 1) / chunkCount - 1);
+                tasks.add(() -> parseChunk(tokens, from, end));
+                start = end;
+            }
+            final List<Dart2Parser.LibraryDeclarationContext> chunks = new ArrayList<>(chunkCount);
+            for (final Future<Dart2Parser.LibraryDeclarationContext> future : this.pool.invokeAll(tasks)) {
+                chunks.add(join(future));
+            }
+            if (!chunks.contains(null) && inOrder(chunks)) {
+                result = stitch(chunks, tokens.get(tokens.size() - 1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find where the top-level declarations end.
+     * We count the brackets of the default channel. Strings and comments are single tokens, so their brackets don't count.
+     *
+     * @param tokens All tokens of the file, ending with EOF.
+     * @return Index of the token after each declaration, or an empty list if the brackets are not balanced.
+     */
+    private static List<Integer> boundaries(final List<Token> tokens) {
+        final List<Integer> result = new ArrayList<>();
+        int depth = 0;
+        int previous = Token.INVALID_TYPE;
+        int lowest = 0;
+        for (final Token token : tokens) {
+            if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+                final int type = token.getType();
+                if (depth == 0 && endsDeclaration(previous, type)) {
+                    result.add(token.getTokenIndex());
+                }
+                depth += depth(type);
+                lowest = Math.min(lowest, depth);
+                previous = type;
+            }
+        }
+        final int last = tokens.size() - 1;
+        if (lowest < 0 || depth != 0 || result.isEmpty() || result.get(result.size() - 1) != last) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Check if the previous token ends a top-level declaration.
+     * A `}` followed by `;` doesn't end the declaration. Ex: `final a = () {};`.
+     *
+     * @param previous Type of the previous token of the default channel.
+     * @param type Type of the current token.
+     * @return True if the current token starts the next declaration.
+     */
+    static boolean endsDeclaration(final int previous, final int type) {
+        return previous == Dart2Lexer.SC || previous == Dart2Lexer.CBC && type != Dart2Lexer.SC;
+    }
+
+    /**
+     * As is.
+     *
+     * @param type Token type.
+     * @return 1 if it opens a bracket, -1 if it closes one, and 0 otherwise.
+     */
+    static int depth(final int type) {
+        final int result;
+        if (type == Dart2Lexer.OBC || type == Dart2Lexer.OP || type == Dart2Lexer.OB) {
+            result = 1;
+        } else if (type == Dart2Lexer.CBC || type == Dart2Lexer.CP || type == Dart2Lexer.CB) {
+            result = -1;
+        } else {
+            result = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Parse the declarations in the range with a new parser.
+     * We use the SLL prediction and give up at the first syntax error like {@link Formatter}.
+     *
+     * @param tokens All tokens of the file.
+     * @param start Index of the first token of the chunk, inclusive.
+     * @param end Index of the last token of the chunk, exclusive.
+     * @return The declarations, or null if they don't parse until the end of the chunk.
+     */
+    static Dart2Parser.LibraryDeclarationContext parseChunk(final List<Token> tokens, final int start, final int end) {
+        final TokenSlice slice = new TokenSlice(tokens, start, end);
+        final Dart2Parser parser = new Dart2Parser(slice);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        Dart2Parser.LibraryDeclarationContext result = null;
+        try {
+            final Dart2Parser.LibraryDeclarationContext library = parser.libraryDeclaration();
+            if (slice.LA(1) == Token.EOF) {
+                result = library;
+            }
+        } catch (final ParseCancellationException ex) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("A chunk of `{}` doesn't parse from the token {}. cause: {}", slice.getSourceName(), start, ex.getCause());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param rule Rule index of a child of {@link Dart2Parser.LibraryDeclarationContext}.
+     * @return Its position in the rule. Ex: 0 for the library name, which comes first.
+     */
+    static int position(final int rule) {
+        return ORDER[rule];
+    }
+
+    /**
+     * Check if the children of the chunks come in the order of {@link Dart2Parser.LibraryDeclarationContext}.
+     * Otherwise, the whole file is not a library declaration. Ex: an import after a class.
+     *
+     * @param chunks Parsed chunks in order.
+     * @return True if they are in order.
+     */
+    private static boolean inOrder(final List<Dart2Parser.LibraryDeclarationContext> chunks) {
+        boolean result = true;
+        int previous = 0;
+        for (final Dart2Parser.LibraryDeclarationContext chunk : chunks) {
+            for (final ParserRuleContext child : chunk.getRuleContexts(ParserRuleContext.class)) {
+                final int current = ORDER[child.getRuleIndex()];
+                // The library name must be the first one, and only once.
+                result = result && current >= previous && !(current == 0 && !child.equals(chunks.get(0).getChild(0)));
+                previous = current;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Move the children of the chunks into one library declaration in one compilation unit.
+     *
+     * @param chunks Parsed chunks in order.
+     * @param eof The last token of the file.
+     * @return The compilation unit.
+     */
+    private static Dart2Parser.CompilationUnitContext stitch(final List<Dart2Parser.LibraryDeclarationContext> chunks, final Token eof) {
+        final Dart2Parser.CompilationUnitContext unit = new Dart2Parser.CompilationUnitContext(null, ATNState.INVALID_STATE_NUMBER);
+        final Dart2Parser.LibraryDeclarationContext library = new Dart2Parser.LibraryDeclarationContext(unit, unit.invokingState);
+        for (final Dart2Parser.LibraryDeclarationContext chunk : chunks) {
+            for (final ParserRuleContext child : chunk.getRuleContexts(ParserRuleContext.class)) {
+                child.setParent(library);
+                library.addChild(child);
+            }
+        }
+        library.start = chunks.get(0).start;
+        library.stop = chunks.get(chunks.size() - 1).stop;
+        unit.addChild(library);
+        final TerminalNodeImpl end = new TerminalNodeImpl(eof);
+        end.setParent(unit);
+        unit.addAnyChild(end);
+        unit.start = library.start;
+        unit.stop = eof;
+        return unit;
+    }
+
+    /**
+     * Wait for the parser of a chunk.
+     *
+     * @param future The task.
+     * @return Its result.
+     */
+    private static Dart2Parser.LibraryDeclarationContext join(final Future<Dart2Parser.LibraryDeclarationContext> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing in parallel.", ex);
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException("Failed to parse a chunk.", ex);
+        }
+    }
+
+    /**
+     * Build {@link ChunkedParser#ORDER}.
+     *
+     * @return The order of each rule.
+     */
+    private static int[] ruleOrder() {
+        final int[] result = new int[Dart2Parser.ruleNames.length];
+        result[Dart2Parser.RULE_libraryName] = 0;
+        result[Dart2Parser.RULE_importOrExport] = 1;
+        result[Dart2Parser.RULE_partDirective] = 2;
+        result[Dart2Parser.RULE_metadata] = DECLARATIONS;
+        result[Dart2Parser.RULE_topLevelDeclaration] = DECLARATIONS;
+        return result;
+    }
+
+}
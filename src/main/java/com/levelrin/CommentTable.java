@@ -0,0 +1,82 @@
+package com.levelrin;
+
+import java.util.List;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Tells which hidden tokens are on the left of each token.
+ * It gives the same tokens as {@link CommonTokenStream#getHiddenTokensToLeft(int)}
+ * without scanning backwards or allocating a list on every call.
+ * We can reset it for the next file, and it keeps its array if it's large enough.
+ */
+final class CommentTable {
+
+    /**
+     * All tokens of the file.
+     */
+    private List<Token> tokens;
+
+    /**
+     * Key - Token index.
+     * Value - Index of the first hidden token right before the token.
+     *         It's the token index itself if there is no hidden token before it.
+     * It may be longer than the number of tokens because we reuse it for the next file.
+     */
+    private int[] hiddenStarts;
+
+    /**
+     * Constructor.
+     * We read all tokens from the stream.
+     *
+     * @param stream Tokens of the file.
+     */
+    CommentTable(final CommonTokenStream stream) {
+        this.hiddenStarts = new int[0];
+        this.reset(stream);
+    }
+
+    /**
+     * Forget the tokens of the previous file and read all tokens from the stream.
+     *
+     * @param stream Tokens of the next file.
+     */
+    void reset(final CommonTokenStream stream) {
+        stream.fill();
+        this.tokens = stream.getTokens();
+        final int count = this.tokens.size();
+        if (this.hiddenStarts.length < count) {
+            this.hiddenStarts = new int[count];
+        }
+        int start = 0;
+        for (int index = 0; index < count; index++) {
+            this.hiddenStarts[index] = start;
+            final Token token = this.tokens.get(index);
+            if (token.getChannel() == Lexer.DEFAULT_TOKEN_CHANNEL || token.getType() == Token.EOF) {
+                start = index + 1;
+            }
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param tokenIndex Index of a token on the default channel.
+     * @return Index of the first hidden token on the left. Hidden tokens span until the token index exclusively.
+     */
+    int firstHidden(final int tokenIndex) {
+        return this.hiddenStarts[tokenIndex];
+    }
+
+    /**
+     * As is.
+     *
+     * @param index Token index.
+     * @return The token.
+     */
+    Token token(final int index) {
+        return this.tokens.get(index);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.List;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Skips the contexts that only pass their single child through.
+ * Ex: A plain identifier goes through expr, conditionalExpression, binaryExpression, and so on until primary.
+ * None of them affects the layout, so the visitor can go straight to the child.
+ */
+final class Compaction {
+
+    /**
+     * Key - Rule index.
+     * Value - True if the context only visits its child when it has exactly one child.
+     */
+    private final boolean[] passThrough;
+
+    /**
+     * Key - Rule index.
+     * Value - True if we must not skip into the context because the parent handles it differently.
+     * Ex: expressionWithoutCascade doesn't support throwExpressionWithoutCascade yet.
+     */
+    private final boolean[] kept;
+
+    /**
+     * Constructor.
+     */
+    Compaction() {
+        this.passThrough = new boolean[Dart2Parser.ruleNames.length];
+        this.kept = new boolean[Dart2Parser.ruleNames.length];
+        final List<Integer> passThroughRules = List.of(
+            Dart2Parser.RULE_expr,
+            Dart2Parser.RULE_expressionWithoutCascade,
+            Dart2Parser.RULE_conditionalExpression,
+            Dart2Parser.RULE_binaryExpression,
+            Dart2Parser.RULE_unaryExpression,
+            Dart2Parser.RULE_postfixExpression,
+            Dart2Parser.RULE_primary,
+            Dart2Parser.RULE_literal
+        );
+        for (final int rule : passThroughRules) {
+            this.passThrough[rule] = true;
+        }
+        this.kept[Dart2Parser.RULE_throwExpressionWithoutCascade] = true;
+        this.kept[Dart2Parser.RULE_symbolLiteral] = true;
+    }
+
+    /**
+     * Find the first descendant that affects the layout.
+     *
+     * @param tree The node we are about to visit.
+     * @return The node itself or its descendant that we should visit instead.
+     */
+    ParseTree skip(final ParseTree tree) {
+        ParseTree result = tree;
+        while (this.skippable(result)) {
+            result = result.getChild(0);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the node only passes its child through.
+     *
+     * @param tree The node.
+     * @return True if we can visit the child instead.
+     */
+    private boolean skippable(final ParseTree tree) {
+        boolean result = false;
+        if (tree instanceof ParserRuleContext && tree.getChildCount() == 1) {
+            final ParseTree child = tree.getChild(0);
+            result = child instanceof ParserRuleContext
+                && this.passThrough[((ParserRuleContext) tree).getRuleIndex()]
+                && !this.kept[((ParserRuleContext) child).getRuleIndex()];
+        }
+        return result;
+    }
+
+}
@@ -2,20 +2,19 @@ package com.levelrin;
 
 import com.levelrin.antlr.generated.Dart2Parser;
 import com.levelrin.antlr.generated.Dart2ParserBaseVisitor;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
-import java.util.StringJoiner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
 import org.antlr.v4.runtime.tree.TerminalNode;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * This is the class that has the formatting logic.
@@ -24,106 +23,236 @@ import org.slf4j.LoggerFactory;
 // Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
 // Except PMD.UnusedAssignment was added due to a false-positive.
 @SuppressWarnings({"PMD.TooManyMethods", "PMD.LinguisticNaming", "PMD.UnusedAssignment"})
-public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
+public final class DartVisitor extends Dart2ParserBaseVisitor<Doc> {
 
     /**
-     * For logging.
+     * Number of chunks per thread when we format declarations in parallel.
+     * More chunks than threads balance the declarations of different sizes.
      */
-    private static final Logger LOGGER = LoggerFactory.getLogger(DartVisitor.class);
+    private static final int CHUNKS_PER_THREAD = 4;
 
     /**
-     * Number of spaces for an indentation.
+     * As is.
      */
-    private static final String INDENT_UNIT = "  ";
+    private int currentIndentLevel;
 
     /**
-     * Whenever we visit a rule, we will record its count.
-     * The purpose is to know what went down when we visit a child context.
-     * Ex: For example, we want to format the constructor call differently
-     *     if the child also calls the constructor (nested constructor calls).
-     *     We can identify the nested constructor calls by checking the constructor call counts
-     *     after visiting the child context.
-     * Key - Simple class name of the context. Ex: CompilationUnitContext.
-     * Value - Number of visits.
-     *
-     * @deprecated We no longer need this because we can use {@link DartVisitor#hasDescendant(ParserRuleContext, Class)} instead.
+     * A flag to see if chaining the method currently.
+     * It's on while we visit an expression statement that chains method calls or cascades.
+     * See {@link LayoutFacts#chains(Dart2Parser.ExprContext)}.
      */
-    @Deprecated
-    private Map<String, Integer> ruleVisitCounts = new HashMap<>();
+    private boolean methodChaining;
 
     /**
-     * As is.
+     * For checking if a subtree contains a specific rule.
      */
-    private int currentIndentLevel;
+    private final RuleIndex ruleIndex;
 
     /**
-     * A flag to see if chaining the method currently.
+     * For deciding the layout before visiting the children.
      */
-    private boolean methodChaining;
+    private final LayoutFacts layoutFacts;
+
+    /**
+     * For skipping the contexts that don't affect the layout.
+     */
+    private final Compaction compaction;
 
     /**
      * For getting comments from the hidden channel.
      */
-    private final CommonTokenStream tokens;
+    private final CommentTable comments;
+
+    /**
+     * For formatting top-level declarations and class members in parallel.
+     * It's null if we format them one after another.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Maximum line width of the printer.
+     * If it's limited, arguments, cascades, and list literals break only if they don't fit in the line.
+     * Use the same value for {@link DocPrinter#DocPrinter(int)}.
+     */
+    private final int lineWidth;
+
+    /**
+     * Counts and logs the visits, or null unless {@link Trace#ENABLED}.
+     * We don't read its settings if the tracing is off.
+     */
+    private final Trace trace;
+
+    /**
+     * Formatted subtrees shared across the files, or null if we format every subtree.
+     */
+    private final Memo memo;
+
+    /**
+     * For identifying the subtrees in {@link DartVisitor#memo}, or null if there is no memo.
+     */
+    private final TokenHashes hashes;
 
     /**
      * Constructor.
      *
-     * @param tokens See {@link DartVisitor#tokens}.
+     * @param tokens Tokens of the file. We build {@link DartVisitor#comments} from them.
      */
     public DartVisitor(final CommonTokenStream tokens) {
-        this.tokens = tokens;
+        this(tokens, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tokens Tokens of the file. We build {@link DartVisitor#comments} from them.
+     * @param pool See {@link DartVisitor#pool}.
+     */
+    public DartVisitor(final CommonTokenStream tokens, final ForkJoinPool pool) {
+        this(tokens, pool, DocPrinter.UNLIMITED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tokens Tokens of the file. We build {@link DartVisitor#comments} from them.
+     * @param pool See {@link DartVisitor#pool}.
+     * @param lineWidth See {@link DartVisitor#lineWidth}.
+     */
+    public DartVisitor(final CommonTokenStream tokens, final ForkJoinPool pool, final int lineWidth) {
+        this(tokens, pool, lineWidth, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tokens Tokens of the file. We build {@link DartVisitor#comments} from them.
+     * @param pool See {@link DartVisitor#pool}.
+     * @param lineWidth See {@link DartVisitor#lineWidth}.
+     * @param memo See {@link DartVisitor#memo}.
+     */
+    public DartVisitor(final CommonTokenStream tokens, final ForkJoinPool pool, final int lineWidth, final Memo memo) {
+        this.comments = new CommentTable(tokens);
+        this.ruleIndex = new RuleIndex();
+        this.layoutFacts = new LayoutFacts(this.ruleIndex);
+        this.compaction = new Compaction();
+        this.pool = pool;
+        this.lineWidth = lineWidth;
+        if (Trace.ENABLED) {
+            this.trace = new Trace();
+        } else {
+            this.trace = null;
+        }
+        this.memo = memo;
+        if (memo == null) {
+            this.hashes = null;
+        } else {
+            this.hashes = new TokenHashes(tokens);
+        }
+    }
+
+    /**
+     * Constructor for formatting a part of the tree on another thread.
+     * It shares the read-only tables but has its own state.
+     *
+     * @param origin The visitor that is formatting the parent.
+     */
+    private DartVisitor(final DartVisitor origin) {
+        this.comments = origin.comments;
+        this.ruleIndex = origin.ruleIndex;
+        this.layoutFacts = new LayoutFacts(origin.ruleIndex);
+        this.compaction = origin.compaction;
+        this.pool = origin.pool;
+        this.lineWidth = origin.lineWidth;
+        if (Trace.ENABLED) {
+            this.trace = new Trace();
+        } else {
+            this.trace = null;
+        }
+        this.memo = origin.memo;
+        this.hashes = origin.hashes;
+        this.currentIndentLevel = origin.currentIndentLevel;
+        this.methodChaining = origin.methodChaining;
+    }
+
+    /**
+     * Prepare the visitor for the next file.
+     * We keep the tables and their buffers, but forget everything about the previous file.
+     * It also clears the state left by a failure in the middle of the previous file.
+     *
+     * @param tokens Tokens of the next file. We rebuild {@link DartVisitor#comments} from them.
+     */
+    void reset(final CommonTokenStream tokens) {
+        this.comments.reset(tokens);
+        this.ruleIndex.clear();
+        this.layoutFacts.clear();
+        if (Trace.ENABLED) {
+            this.trace.clear();
+        }
+        if (this.hashes != null) {
+            this.hashes.reset(tokens);
+        }
+        this.currentIndentLevel = 0;
+        this.methodChaining = false;
     }
 
     @Override
-    public String visitCompilationUnit(final Dart2Parser.CompilationUnitContext context) {
+    public Doc visitCompilationUnit(final Dart2Parser.CompilationUnitContext context) {
         final Dart2Parser.LibraryDeclarationContext libraryDeclarationContext = context.libraryDeclaration();
         final Dart2Parser.PartDeclarationContext partDeclarationContext = context.partDeclaration();
-        final Dart2Parser.ExprContext exprContext = context.expr();
-        final Dart2Parser.StatementContext statementContext = context.statement();
-        final StringBuilder text = new StringBuilder();
+        final Doc body;
         if (libraryDeclarationContext != null) {
-            text.append(this.visit(libraryDeclarationContext));
-        } else if (partDeclarationContext != null) {
-            text.append(this.visit(partDeclarationContext));
-        } else if (exprContext != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitCompilationUnit -> expr");
-        } else if (statementContext != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitCompilationUnit -> statement");
+            body = this.visit(libraryDeclarationContext);
+        } else {
+            body = this.visit(partDeclarationContext);
+        }
+        if (Trace.ENABLED) {
+            this.trace.report(context.getStart().getInputStream().getSourceName());
         }
+        return this.joinUnit(body);
+    }
+
+    /**
+     * Finish the file after its formatted body.
+     *
+     * @param body The formatted library or part declaration.
+     * @return The formatted file.
+     */
+    Doc joinUnit(final Doc body) {
+        final DocBuilder text = new DocBuilder();
+        text.append(body);
         this.appendNewLinesAndIndent(text, 1);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPartDeclaration(final Dart2Parser.PartDeclarationContext context) {
+    public Doc visitPartDeclaration(final Dart2Parser.PartDeclarationContext context) {
         final Dart2Parser.PartHeaderContext partHeaderContext = context.partHeader();
         final List<Dart2Parser.MetadataContext> metadataContexts = context.metadata();
         final List<Dart2Parser.TopLevelDeclarationContext> topLevelDeclarationContexts = context.topLevelDeclaration();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(partHeaderContext));
         for (int index = 0; index < metadataContexts.size(); index++) {
             final Dart2Parser.MetadataContext metadataContext = metadataContexts.get(index);
             final Dart2Parser.TopLevelDeclarationContext topLevelDeclarationContext = topLevelDeclarationContexts.get(index);
-            if (!metadataContext.getText().isEmpty()) {
+            if (!this.isEmpty(metadataContext)) {
                 throw new UnsupportedOperationException("The following parsing path is not supported yet: visitPartDeclaration -> metadata");
             }
             this.appendNewLinesAndIndent(text, 2);
             text.append(this.visit(topLevelDeclarationContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPartHeader(final Dart2Parser.PartHeaderContext context) {
+    public Doc visitPartHeader(final Dart2Parser.PartHeaderContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode partTerminal = context.PART_();
         final TerminalNode ofTerminal = context.OF_();
         final Dart2Parser.DottedIdentifierListContext dottedIdentifierListContext = context.dottedIdentifierList();
         final Dart2Parser.UriContext uriContext = context.uri();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet.: visitPartHeader -> metadata");
         }
         text.append(this.visit(partTerminal))
@@ -137,98 +266,114 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(uriContext));
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLibraryDeclaration(final Dart2Parser.LibraryDeclarationContext context) {
+    public Doc visitLibraryDeclaration(final Dart2Parser.LibraryDeclarationContext context) {
         final Dart2Parser.LibraryNameContext libraryNameContext = context.libraryName();
         final List<Dart2Parser.ImportOrExportContext> importOrExportContexts = context.importOrExport();
         final List<Dart2Parser.PartDirectiveContext> partDirectiveContexts = context.partDirective();
         final List<Dart2Parser.MetadataContext> metadataContexts = context.metadata();
         final List<Dart2Parser.TopLevelDeclarationContext> topLevelDeclarationContexts = context.topLevelDeclaration();
-        final StringBuilder text = new StringBuilder();
+        Doc libraryNameText = null;
         if (libraryNameContext != null) {
-            text.append(this.visit(libraryNameContext));
+            libraryNameText = this.visit(libraryNameContext);
+        }
+        final List<Doc> importOrExportTexts = new ArrayList<>(importOrExportContexts.size());
+        for (final Dart2Parser.ImportOrExportContext importOrExportContext : importOrExportContexts) {
+            importOrExportTexts.add(this.visit(importOrExportContext));
+        }
+        final List<Doc> partDirectiveTexts = new ArrayList<>(partDirectiveContexts.size());
+        for (final Dart2Parser.PartDirectiveContext partDirectiveContext : partDirectiveContexts) {
+            partDirectiveTexts.add(this.visit(partDirectiveContext));
+        }
+        final List<Doc> topLevelDeclarationTexts = this.visitDeclarations(context, metadataContexts, topLevelDeclarationContexts);
+        return this.joinLibrary(libraryNameText, importOrExportTexts, partDirectiveTexts, topLevelDeclarationTexts);
+    }
+
+    /**
+     * Put the formatted parts of a library declaration together.
+     *
+     * @param libraryNameText Formatted library name, or null if there is none.
+     * @param importOrExportTexts Formatted imports and exports.
+     * @param partDirectiveTexts Formatted part directives.
+     * @param topLevelDeclarationTexts Formatted top-level declarations with their metadata.
+     * @return The formatted library declaration.
+     */
+    Doc joinLibrary(final Doc libraryNameText, final List<Doc> importOrExportTexts, final List<Doc> partDirectiveTexts, final List<Doc> topLevelDeclarationTexts) {
+        final DocBuilder text = new DocBuilder();
+        if (libraryNameText != null) {
+            text.append(libraryNameText);
         }
-        if (!importOrExportContexts.isEmpty()) {
-            if (libraryNameContext != null) {
+        if (!importOrExportTexts.isEmpty()) {
+            if (libraryNameText != null) {
                 this.appendNewLinesAndIndent(text, 2);
             }
-            for (final Dart2Parser.ImportOrExportContext importOrExportContext : importOrExportContexts) {
-                final String importOrExportText = this.visit(importOrExportContext);
+            for (final Doc importOrExportText : importOrExportTexts) {
                 text.append(importOrExportText);
                 this.appendNewLinesAndIndent(text, 1);
             }
             this.appendNewLinesAndIndent(text, 1);
         }
-        if (!partDirectiveContexts.isEmpty()) {
-            if (libraryNameContext != null && importOrExportContexts.isEmpty()) {
+        if (!partDirectiveTexts.isEmpty()) {
+            if (libraryNameText != null && importOrExportTexts.isEmpty()) {
                 this.appendNewLinesAndIndent(text, 2);
             }
-            for (final Dart2Parser.PartDirectiveContext partDirectiveContext : partDirectiveContexts) {
-                text.append(this.visit(partDirectiveContext));
+            for (final Doc partDirectiveText : partDirectiveTexts) {
+                text.append(partDirectiveText);
                 this.appendNewLinesAndIndent(text, 1);
             }
             this.appendNewLinesAndIndent(text, 1);
         }
-        if (!topLevelDeclarationContexts.isEmpty()) {
-            for (int index = 0; index < topLevelDeclarationContexts.size(); index++) {
-                if (index > 0) {
-                    this.appendNewLinesAndIndent(text, 2);
-                }
-                final Dart2Parser.MetadataContext metadataContext = metadataContexts.get(index);
-                final Dart2Parser.TopLevelDeclarationContext topLevelDeclarationContext = topLevelDeclarationContexts.get(index);
-                if (!metadataContext.getText().isEmpty()) {
-                    text.append(this.visit(metadataContext));
-                    this.appendNewLinesAndIndent(text, 1);
-                }
-                final String topLevelDeclarationText = this.visit(topLevelDeclarationContext);
-                text.append(topLevelDeclarationText);
+        for (int index = 0; index < topLevelDeclarationTexts.size(); index++) {
+            if (index > 0) {
+                this.appendNewLinesAndIndent(text, 2);
             }
+            text.append(topLevelDeclarationTexts.get(index));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPartDirective(final Dart2Parser.PartDirectiveContext context) {
+    public Doc visitPartDirective(final Dart2Parser.PartDirectiveContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode partTerminal = context.PART_();
         final Dart2Parser.UriContext uriContext = context.uri();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitPartDirective -> metadata");
         }
         text.append(this.visit(partTerminal))
             .append(' ')
             .append(this.visit(uriContext))
             .append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLibraryName(final Dart2Parser.LibraryNameContext context) {
+    public Doc visitLibraryName(final Dart2Parser.LibraryNameContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode libraryTerminal = context.LIBRARY_();
         final Dart2Parser.DottedIdentifierListContext dottedIdentifierListContext = context.dottedIdentifierList();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLibraryName -> metadata");
         }
         text.append(this.visit(libraryTerminal))
             .append(' ')
             .append(this.visit(dottedIdentifierListContext))
             .append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDottedIdentifierList(final Dart2Parser.DottedIdentifierListContext context) {
+    public Doc visitDottedIdentifierList(final Dart2Parser.DottedIdentifierListContext context) {
         final List<Dart2Parser.IdentifierContext> identifierContexts = context.identifier();
         final List<TerminalNode> dTerminals = context.D();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.IdentifierContext firstIdentifierContext = identifierContexts.get(0);
         text.append(this.visit(firstIdentifierContext));
         for (int index = 0; index < dTerminals.size(); index++) {
@@ -237,11 +382,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(dTerminal))
                 .append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTopLevelDeclaration(final Dart2Parser.TopLevelDeclarationContext context) {
+    public Doc visitTopLevelDeclaration(final Dart2Parser.TopLevelDeclarationContext context) {
         final Dart2Parser.ClassDeclarationContext classDeclarationContext = context.classDeclaration();
         final Dart2Parser.MixinDeclarationContext mixinDeclarationContext = context.mixinDeclaration();
         final Dart2Parser.ExtensionDeclarationContext extensionDeclarationContext = context.extensionDeclaration();
@@ -260,7 +405,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final TerminalNode lateTerminal = context.LATE_();
         final Dart2Parser.InitializedIdentifierListContext initializedIdentifierListContext = context.initializedIdentifierList();
         final Dart2Parser.VarOrTypeContext varOrTypeContext = context.varOrType();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (classDeclarationContext != null) {
             text.append(this.visit(classDeclarationContext));
         } else if (mixinDeclarationContext != null) {
@@ -320,11 +465,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(initializedIdentifierListContext))
                 .append(this.visit(scTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExtensionDeclaration(final Dart2Parser.ExtensionDeclarationContext context) {
+    public Doc visitExtensionDeclaration(final Dart2Parser.ExtensionDeclarationContext context) {
         final TerminalNode extensionTerminal = context.EXTENSION_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final Dart2Parser.TypeParametersContext typeParametersContext = context.typeParameters();
@@ -334,7 +479,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final List<Dart2Parser.MetadataContext> metadataContexts = context.metadata();
         final List<Dart2Parser.ClassMemberDeclarationContext> classMemberDeclarationContexts = context.classMemberDeclaration();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(extensionTerminal));
         if (identifierContext != null) {
             text.append(' ')
@@ -354,7 +499,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         for (int index = 0; index < metadataContexts.size(); index++) {
             final Dart2Parser.MetadataContext metadataContext = metadataContexts.get(index);
             final Dart2Parser.ClassMemberDeclarationContext classMemberDeclarationContext = classMemberDeclarationContexts.get(index);
-            if (!metadataContext.getText().isEmpty()) {
+            if (!this.isEmpty(metadataContext)) {
                 text.append(this.visit(metadataContext));
                 this.appendNewLinesAndIndent(text, 1);
             }
@@ -363,18 +508,18 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         this.currentIndentLevel--;
         this.appendNewLinesAndIndent(text, 2);
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitEnumType(final Dart2Parser.EnumTypeContext context) {
+    public Doc visitEnumType(final Dart2Parser.EnumTypeContext context) {
         final TerminalNode enumTerminal = context.ENUM_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode obcTerminal = context.OBC();
         final List<Dart2Parser.EnumEntryContext> enumEntryContexts = context.enumEntry();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(enumTerminal))
             .append(' ')
             .append(this.visit(identifierContext))
@@ -398,23 +543,23 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         this.currentIndentLevel--;
         this.appendNewLinesAndIndent(text, 1);
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitEnumEntry(final Dart2Parser.EnumEntryContext context) {
+    public Doc visitEnumEntry(final Dart2Parser.EnumEntryContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitEnumEntry -> metadata");
         }
         text.append(this.visit(identifierContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMixinDeclaration(final Dart2Parser.MixinDeclarationContext context) {
+    public Doc visitMixinDeclaration(final Dart2Parser.MixinDeclarationContext context) {
         final TerminalNode mixinTerminal = context.MIXIN_();
         final Dart2Parser.TypeIdentifierContext typeIdentifierContext = context.typeIdentifier();
         final Dart2Parser.TypeParametersContext typeParametersContext = context.typeParameters();
@@ -425,7 +570,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final List<Dart2Parser.MetadataContext> metadataContexts = context.metadata();
         final List<Dart2Parser.ClassMemberDeclarationContext> classMemberDeclarationContexts = context.classMemberDeclaration();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(mixinTerminal))
             .append(' ')
             .append(this.visit(typeIdentifierContext));
@@ -451,7 +596,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             final Dart2Parser.ClassMemberDeclarationContext classMemberDeclarationContext = classMemberDeclarationContexts.get(index);
             this.currentIndentLevel++;
             this.appendNewLinesAndIndent(text, 2);
-            if (!metadataContext.getText().isEmpty()) {
+            if (!this.isEmpty(metadataContext)) {
                 text.append(this.visit(metadataContext));
                 this.appendNewLinesAndIndent(text, 1);
             }
@@ -462,11 +607,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             }
         }
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeIdentifier(final Dart2Parser.TypeIdentifierContext context) {
+    public Doc visitTypeIdentifier(final Dart2Parser.TypeIdentifierContext context) {
         final TerminalNode identifierTerminal = context.IDENTIFIER();
         final TerminalNode asyncTerminal = context.ASYNC_();
         final TerminalNode hideTerminal = context.HIDE_();
@@ -479,7 +624,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final TerminalNode dynamicTerminal = context.DYNAMIC_();
         final TerminalNode nativeTerminal = context.NATIVE_();
         final TerminalNode functionTerminal = context.FUNCTION_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (identifierTerminal != null) {
             text.append(this.visit(identifierTerminal));
         } else if (asyncTerminal != null) {
@@ -505,33 +650,33 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (functionTerminal != null) {
             text.append(this.visit(functionTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitImportOrExport(final Dart2Parser.ImportOrExportContext context) {
+    public Doc visitImportOrExport(final Dart2Parser.ImportOrExportContext context) {
         final Dart2Parser.LibraryImportContext libraryImportContext = context.libraryImport();
         final Dart2Parser.LibraryExportContext libraryExportContext = context.libraryExport();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (libraryImportContext == null) {
             text.append(this.visit(libraryExportContext));
         } else {
             text.append(this.visit(libraryImportContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLibraryExport(final Dart2Parser.LibraryExportContext context) {
+    public Doc visitLibraryExport(final Dart2Parser.LibraryExportContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode exportTerminal = context.EXPORT_();
         final Dart2Parser.ConfigurableUriContext configurableUriContext = context.configurableUri();
         final List<Dart2Parser.CombinatorContext> combinatorContexts = context.combinator();
         final TerminalNode scTerminal = context.SC();
-        if (!metadataContext.getText().isEmpty()) {
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLibraryExport -> metadata");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(exportTerminal))
             .append(' ')
             .append(this.visit(configurableUriContext));
@@ -540,24 +685,24 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(combinatorContext));
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLibraryImport(final Dart2Parser.LibraryImportContext context) {
+    public Doc visitLibraryImport(final Dart2Parser.LibraryImportContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.ImportSpecificationContext importSpecificationContext = context.importSpecification();
-        if (!metadataContext.getText().isEmpty()) {
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLibraryImport -> metadata");
         }
-        final StringBuilder text = new StringBuilder();
-        final String importSpecificationText = this.visit(importSpecificationContext);
+        final DocBuilder text = new DocBuilder();
+        final Doc importSpecificationText = this.visit(importSpecificationContext);
         text.append(importSpecificationText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitImportSpecification(final Dart2Parser.ImportSpecificationContext context) {
+    public Doc visitImportSpecification(final Dart2Parser.ImportSpecificationContext context) {
         final TerminalNode importTerminal = context.IMPORT_();
         final Dart2Parser.ConfigurableUriContext configurableUriContext = context.configurableUri();
         final TerminalNode deferredTerminal = context.DEFERRED_();
@@ -568,7 +713,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (deferredTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitImportSpecification -> deferred");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(importTerminal))
             .append(' ')
             .append(this.visit(configurableUriContext));
@@ -583,15 +728,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(combinatorContext));
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCombinator(final Dart2Parser.CombinatorContext context) {
+    public Doc visitCombinator(final Dart2Parser.CombinatorContext context) {
         final TerminalNode showTerminal = context.SHOW_();
         final Dart2Parser.IdentifierListContext identifierListContext = context.identifierList();
         final TerminalNode hideTerminal = context.HIDE_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (showTerminal != null) {
             text.append(this.visit(showTerminal));
         } else if (hideTerminal != null) {
@@ -599,14 +744,14 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         }
         text.append(' ')
             .append(this.visit(identifierListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIdentifierList(final Dart2Parser.IdentifierListContext context) {
+    public Doc visitIdentifierList(final Dart2Parser.IdentifierListContext context) {
         final List<Dart2Parser.IdentifierContext> identifierContexts = context.identifier();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.IdentifierContext firstIdentifierContext = identifierContexts.get(0);
         text.append(this.visit(firstIdentifierContext));
         for (int index = 0; index < cTerminals.size(); index++) {
@@ -616,61 +761,61 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConfigurableUri(final Dart2Parser.ConfigurableUriContext context) {
+    public Doc visitConfigurableUri(final Dart2Parser.ConfigurableUriContext context) {
         final Dart2Parser.UriContext uriContext = context.uri();
         final List<Dart2Parser.ConfigurationUriContext> configurationUriContexts = context.configurationUri();
         if (!configurationUriContexts.isEmpty()) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitConfigurableUri -> configurationUri");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(uriContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitUri(final Dart2Parser.UriContext context) {
+    public Doc visitUri(final Dart2Parser.UriContext context) {
         final Dart2Parser.StringLiteralContext stringLiteralContext = context.stringLiteral();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(stringLiteralContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitStringLiteral(final Dart2Parser.StringLiteralContext context) {
+    public Doc visitStringLiteral(final Dart2Parser.StringLiteralContext context) {
         final List<Dart2Parser.MultilineStringContext> multilineStringContexts = context.multilineString();
         final List<Dart2Parser.SingleLineStringContext> singleLineStringContexts = context.singleLineString();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         for (final Dart2Parser.MultilineStringContext multilineStringContext : multilineStringContexts) {
             text.append(this.visit(multilineStringContext));
         }
         for (final Dart2Parser.SingleLineStringContext singleLineStringContext : singleLineStringContexts) {
             text.append(this.visit(singleLineStringContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMultilineString(final Dart2Parser.MultilineStringContext context) {
+    public Doc visitMultilineString(final Dart2Parser.MultilineStringContext context) {
         final TerminalNode multiLineStringTerminal = context.MultiLineString();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(multiLineStringTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSingleLineString(final Dart2Parser.SingleLineStringContext context) {
+    public Doc visitSingleLineString(final Dart2Parser.SingleLineStringContext context) {
         final TerminalNode singleLineString = context.SingleLineString();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(singleLineString));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitClassDeclaration(final Dart2Parser.ClassDeclarationContext context) {
+    public Doc visitClassDeclaration(final Dart2Parser.ClassDeclarationContext context) {
         final TerminalNode abstractTerminal = context.ABSTRACT_();
         final TerminalNode classTerminal = context.CLASS_();
         // It can be a class name.
@@ -686,7 +831,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (mixinApplicationClassContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitClassDeclaration -> mixinApplicationClass");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (abstractTerminal != null) {
             text.append(this.visit(abstractTerminal))
                 .append(' ');
@@ -708,49 +853,36 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(interfacesContext))
                 .append(' ');
         }
-        text.append(this.visit(obcTerminal))
-            .append("\n\n");
+        text.append(this.visit(obcTerminal));
         this.currentIndentLevel++;
-        if (!classMemberDeclarationContexts.isEmpty()) {
-            text.append(INDENT_UNIT.repeat(this.currentIndentLevel));
-        }
-        for (int index = 0; index < classMemberDeclarationContexts.size(); index++) {
-            final Dart2Parser.MetadataContext metadataContext = metadataContexts.get(index);
-            final Dart2Parser.ClassMemberDeclarationContext classMemberDeclarationContext = classMemberDeclarationContexts.get(index);
-            if (!metadataContext.getText().isEmpty()) {
-                text.append(this.visit(metadataContext));
-                this.appendNewLinesAndIndent(text, 1);
-            }
-            text.append(this.visit(classMemberDeclarationContext))
-                .append("\n\n");
-            if (index < classMemberDeclarationContexts.size() - 1) {
-                text.append(INDENT_UNIT.repeat(this.currentIndentLevel));
-            }
+        for (final Doc classMemberDeclarationText : this.visitDeclarations(context, metadataContexts, classMemberDeclarationContexts)) {
+            this.appendNewLinesAndIndent(text, 2);
+            text.append(classMemberDeclarationText);
         }
         this.currentIndentLevel--;
-        text.append(INDENT_UNIT.repeat(this.currentIndentLevel))
-            .append(this.visit(cbcTerminal));
-        return text.toString();
+        this.appendNewLinesAndIndent(text, 2);
+        text.append(this.visit(cbcTerminal));
+        return text.build();
     }
 
     @Override
-    public String visitInterfaces(final Dart2Parser.InterfacesContext context) {
+    public Doc visitInterfaces(final Dart2Parser.InterfacesContext context) {
         final TerminalNode implementsTerminal = context.IMPLEMENTS_();
         final Dart2Parser.TypeNotVoidListContext typeNotVoidListContext = context.typeNotVoidList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(implementsTerminal))
             .append(' ')
             .append(this.visit(typeNotVoidListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeParameters(final Dart2Parser.TypeParametersContext context) {
+    public Doc visitTypeParameters(final Dart2Parser.TypeParametersContext context) {
         final TerminalNode ltTerminal = context.LT();
         final List<Dart2Parser.TypeParameterContext> typeParameterContexts = context.typeParameter();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode gtTerminal = context.GT();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(ltTerminal));
         final Dart2Parser.TypeParameterContext firstTypeParameter = typeParameterContexts.get(0);
         text.append(this.visit(firstTypeParameter));
@@ -762,17 +894,17 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(typeParameterContext));
         }
         text.append(this.visit(gtTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeParameter(final Dart2Parser.TypeParameterContext context) {
+    public Doc visitTypeParameter(final Dart2Parser.TypeParameterContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode extendsTerminal = context.EXTENDS_();
         final Dart2Parser.TypeNotVoidContext typeNotVoidContext = context.typeNotVoid();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             text.append(this.visit(metadataContext))
                 .append(' ');
         }
@@ -783,31 +915,31 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(typeNotVoidContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMetadata(final Dart2Parser.MetadataContext context) {
+    public Doc visitMetadata(final Dart2Parser.MetadataContext context) {
         final List<TerminalNode> atTerminals = context.AT();
         final List<Dart2Parser.MetadatumContext> metadatumContexts = context.metadatum();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         for (int index = 0; index < atTerminals.size(); index++) {
             final TerminalNode atTerminal = atTerminals.get(index);
             final Dart2Parser.MetadatumContext metadatumContext = metadatumContexts.get(index);
             text.append(this.visit(atTerminal))
                 .append(this.visit(metadatumContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMetadatum(final Dart2Parser.MetadatumContext context) {
+    public Doc visitMetadatum(final Dart2Parser.MetadatumContext context) {
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final Dart2Parser.QualifiedNameContext qualifiedNameContext = context.qualifiedName();
         // todo: use `constructorDesignationContext`, `argumentsContext`, and `argumentsContext` with tests.
         // final Dart2Parser.ConstructorDesignationContext constructorDesignationContext = context.constructorDesignation();
         // final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (identifierContext != null) {
             text.append(this.visit(identifierContext));
         } else if (qualifiedNameContext != null) {
@@ -815,15 +947,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitMetadatum -> constructorDesignation");
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSuperclass(final Dart2Parser.SuperclassContext context) {
+    public Doc visitSuperclass(final Dart2Parser.SuperclassContext context) {
         final TerminalNode extendsTerminal = context.EXTENDS_();
         final Dart2Parser.TypeNotVoidContext typeNotVoidContext = context.typeNotVoid();
         final Dart2Parser.MixinsContext mixinsContext = context.mixins();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (extendsTerminal != null) {
             text.append(this.visit(extendsTerminal))
                 .append(' ')
@@ -835,25 +967,25 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             text.append(this.visit(mixinsContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMixins(final Dart2Parser.MixinsContext context) {
+    public Doc visitMixins(final Dart2Parser.MixinsContext context) {
         final TerminalNode withTerminal = context.WITH_();
         final Dart2Parser.TypeNotVoidListContext typeNotVoidListContext = context.typeNotVoidList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(withTerminal))
             .append(' ')
             .append(this.visit(typeNotVoidListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeNotVoidList(final Dart2Parser.TypeNotVoidListContext context) {
+    public Doc visitTypeNotVoidList(final Dart2Parser.TypeNotVoidListContext context) {
         final List<Dart2Parser.TypeNotVoidContext> typeNotVoidContexts = context.typeNotVoid();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.TypeNotVoidContext firstTypeNotVoidContext = typeNotVoidContexts.get(0);
         text.append(this.visit(firstTypeNotVoidContext));
         for (int index = 0; index < cTerminals.size(); index++) {
@@ -863,11 +995,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(typeNotVoidContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeNotVoid(final Dart2Parser.TypeNotVoidContext context) {
+    public Doc visitTypeNotVoid(final Dart2Parser.TypeNotVoidContext context) {
         final Dart2Parser.FunctionTypeContext functionTypeContext = context.functionType();
         // todo: use `quTerminal` with tests.
         // final TerminalNode quTerminal = context.QU();
@@ -875,37 +1007,37 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (functionTypeContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitTypeNotVoid -> functionType");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeNotVoidNotFunctionContext != null) {
             text.append(this.visit(typeNotVoidNotFunctionContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitClassMemberDeclaration(final Dart2Parser.ClassMemberDeclarationContext context) {
+    public Doc visitClassMemberDeclaration(final Dart2Parser.ClassMemberDeclarationContext context) {
         final Dart2Parser.DeclarationContext declarationContext = context.declaration();
         final TerminalNode scTerminal = context.SC();
         final Dart2Parser.MethodSignatureContext methodSignatureContext = context.methodSignature();
         final Dart2Parser.FunctionBodyContext functionBodyContext = context.functionBody();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (declarationContext != null) {
-            final String declarationText = this.visit(declarationContext);
+            final Doc declarationText = this.visit(declarationContext);
             text.append(declarationText)
                 .append(this.visit(scTerminal));
         }
         if (methodSignatureContext != null) {
-            final String methodSignatureText = this.visit(methodSignatureContext);
+            final Doc methodSignatureText = this.visit(methodSignatureContext);
             text.append(methodSignatureText)
                 .append(' ');
-            final String functionBodyText = this.visit(functionBodyContext);
+            final Doc functionBodyText = this.visit(functionBodyContext);
             text.append(functionBodyText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMethodSignature(final Dart2Parser.MethodSignatureContext context) {
+    public Doc visitMethodSignature(final Dart2Parser.MethodSignatureContext context) {
         final Dart2Parser.ConstructorSignatureContext constructorSignatureContext = context.constructorSignature();
         final Dart2Parser.InitializersContext initializersContext = context.initializers();
         final Dart2Parser.FactoryConstructorSignatureContext factoryConstructorSignatureContext = context.factoryConstructorSignature();
@@ -914,13 +1046,13 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final Dart2Parser.GetterSignatureContext getterSignatureContext = context.getterSignature();
         final Dart2Parser.SetterSignatureContext setterSignatureContext = context.setterSignature();
         final Dart2Parser.OperatorSignatureContext operatorSignatureContext = context.operatorSignature();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (constructorSignatureContext != null) {
             text.append(this.visit(constructorSignatureContext))
                 .append(' ')
                 .append(this.visit(initializersContext));
         } else if (factoryConstructorSignatureContext != null) {
-            final String factoryConstructorSignatureText = this.visit(factoryConstructorSignatureContext);
+            final Doc factoryConstructorSignatureText = this.visit(factoryConstructorSignatureContext);
             text.append(factoryConstructorSignatureText);
         } else if (functionSignatureContext != null) {
             if (staticTerminal != null) {
@@ -943,16 +1075,16 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (operatorSignatureContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitMethodSignature -> operatorSignature");
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSetterSignature(final Dart2Parser.SetterSignatureContext context) {
+    public Doc visitSetterSignature(final Dart2Parser.SetterSignatureContext context) {
         final Dart2Parser.TypeContext typeContext = context.type();
         final TerminalNode setTerminal = context.SET_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final Dart2Parser.FormalParameterListContext formalParameterListContext = context.formalParameterList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeContext != null) {
             text.append(this.visit(typeContext))
                 .append(' ');
@@ -961,15 +1093,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             .append(' ')
             .append(this.visit(identifierContext))
             .append(this.visit(formalParameterListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitGetterSignature(final Dart2Parser.GetterSignatureContext context) {
+    public Doc visitGetterSignature(final Dart2Parser.GetterSignatureContext context) {
         final Dart2Parser.TypeContext typeContext = context.type();
         final TerminalNode getTerminal = context.GET_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeContext != null) {
             text.append(this.visit(typeContext))
                 .append(' ');
@@ -977,11 +1109,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         text.append(this.visit(getTerminal))
             .append(' ')
             .append(this.visit(identifierContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFactoryConstructorSignature(final Dart2Parser.FactoryConstructorSignatureContext context) {
+    public Doc visitFactoryConstructorSignature(final Dart2Parser.FactoryConstructorSignatureContext context) {
         final TerminalNode constTerminal = context.CONST_();
         final TerminalNode factoryTerminal = context.FACTORY_();
         final Dart2Parser.ConstructorNameContext constructorNameContext = context.constructorName();
@@ -989,69 +1121,69 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (constTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFactoryConstructorSignature -> const");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(factoryTerminal))
             .append(' ')
             .append(this.visit(constructorNameContext));
-        final String formalParameterListText = this.visit(formalParameterListContext);
+        final Doc formalParameterListText = this.visit(formalParameterListContext);
         text.append(formalParameterListText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstructorName(final Dart2Parser.ConstructorNameContext context) {
+    public Doc visitConstructorName(final Dart2Parser.ConstructorNameContext context) {
         final Dart2Parser.TypeIdentifierContext typeIdentifierContext = context.typeIdentifier();
         final TerminalNode dTerminal = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(typeIdentifierContext));
         if (dTerminal != null) {
             text.append(this.visit(dTerminal))
                 .append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionSignature(final Dart2Parser.FunctionSignatureContext context) {
+    public Doc visitFunctionSignature(final Dart2Parser.FunctionSignatureContext context) {
         final Dart2Parser.TypeContext typeContext = context.type();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final Dart2Parser.FormalParameterPartContext formalParameterPartContext = context.formalParameterPart();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeContext != null) {
             text.append(this.visit(typeContext))
                 .append(' ');
         }
         text.append(this.visit(identifierContext));
-        final String formalParameterText = this.visit(formalParameterPartContext);
+        final Doc formalParameterText = this.visit(formalParameterPartContext);
         text.append(formalParameterText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFormalParameterPart(final Dart2Parser.FormalParameterPartContext context) {
+    public Doc visitFormalParameterPart(final Dart2Parser.FormalParameterPartContext context) {
         final Dart2Parser.TypeParametersContext typeParametersContext = context.typeParameters();
         final Dart2Parser.FormalParameterListContext formalParameterListContext = context.formalParameterList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeParametersContext != null) {
             text.append(this.visit(typeParametersContext));
         }
-        final String formalParameterListText = this.visit(formalParameterListContext);
+        final Doc formalParameterListText = this.visit(formalParameterListContext);
         text.append(formalParameterListText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFormalParameterList(final Dart2Parser.FormalParameterListContext context) {
+    public Doc visitFormalParameterList(final Dart2Parser.FormalParameterListContext context) {
         final TerminalNode opTerminal = context.OP();
         final TerminalNode cpTerminal = context.CP();
         final Dart2Parser.NormalFormalParametersContext normalFormalParametersContext = context.normalFormalParameters();
         final TerminalNode cTerminal = context.C();
         final Dart2Parser.OptionalOrNamedFormalParametersContext optionalOrNamedFormalParametersContext = context.optionalOrNamedFormalParameters();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(opTerminal));
         if (normalFormalParametersContext != null) {
-            final String normalFormalParametersText = this.visit(normalFormalParametersContext);
+            final Doc normalFormalParametersText = this.visit(normalFormalParametersContext);
             text.append(normalFormalParametersText);
         }
         if (cTerminal != null) {
@@ -1062,30 +1194,30 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(optionalOrNamedFormalParametersContext));
         }
         text.append(this.visit(cpTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitOptionalOrNamedFormalParameters(final Dart2Parser.OptionalOrNamedFormalParametersContext context) {
+    public Doc visitOptionalOrNamedFormalParameters(final Dart2Parser.OptionalOrNamedFormalParametersContext context) {
         final Dart2Parser.OptionalPositionalFormalParametersContext optionalPositionalFormalParametersContext = context.optionalPositionalFormalParameters();
         final Dart2Parser.NamedFormalParametersContext namedFormalParametersContext = context.namedFormalParameters();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (optionalPositionalFormalParametersContext != null) {
             text.append(this.visit(optionalPositionalFormalParametersContext));
         }
         if (namedFormalParametersContext != null) {
             text.append(this.visit(namedFormalParametersContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitOptionalPositionalFormalParameters(final Dart2Parser.OptionalPositionalFormalParametersContext context) {
+    public Doc visitOptionalPositionalFormalParameters(final Dart2Parser.OptionalPositionalFormalParametersContext context) {
         final TerminalNode obTerminal = context.OB();
         final List<Dart2Parser.DefaultFormalParameterContext> defaultFormalParameterContexts = context.defaultFormalParameter();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode cbTerminal = context.CB();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(obTerminal));
         final Dart2Parser.DefaultFormalParameterContext firstDefaultFormalParameterContext = defaultFormalParameterContexts.get(0);
         text.append(this.visit(firstDefaultFormalParameterContext));
@@ -1103,15 +1235,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             }
         }
         text.append(this.visit(cbTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDefaultFormalParameter(final Dart2Parser.DefaultFormalParameterContext context) {
+    public Doc visitDefaultFormalParameter(final Dart2Parser.DefaultFormalParameterContext context) {
         final Dart2Parser.NormalFormalParameterContext normalFormalParameterContext = context.normalFormalParameter();
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(normalFormalParameterContext));
         if (eqTerminal != null) {
             text.append(' ')
@@ -1119,16 +1251,16 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(exprContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNamedFormalParameters(final Dart2Parser.NamedFormalParametersContext context) {
+    public Doc visitNamedFormalParameters(final Dart2Parser.NamedFormalParametersContext context) {
         final TerminalNode obcTerminal = context.OBC();
         final List<Dart2Parser.DefaultNamedParameterContext> defaultNamedParameterContexts = context.defaultNamedParameter();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(obcTerminal));
         this.currentIndentLevel++;
         this.appendNewLinesAndIndent(text, 1);
@@ -1150,19 +1282,19 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         this.currentIndentLevel--;
         this.appendNewLinesAndIndent(text, 1);
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDefaultNamedParameter(final Dart2Parser.DefaultNamedParameterContext context) {
+    public Doc visitDefaultNamedParameter(final Dart2Parser.DefaultNamedParameterContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode requiredTerminal = context.REQUIRED_();
         final Dart2Parser.NormalFormalParameterNoMetadataContext normalFormalParameterNoMetadataContext = context.normalFormalParameterNoMetadata();
         final TerminalNode eqTerminal = context.EQ();
         final TerminalNode coTerminal = context.CO();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitDefaultNamedParameter -> metadata");
         }
         if (requiredTerminal != null) {
@@ -1180,56 +1312,56 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(' ')
                 .append(this.visit(exprContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNormalFormalParameters(final Dart2Parser.NormalFormalParametersContext context) {
+    public Doc visitNormalFormalParameters(final Dart2Parser.NormalFormalParametersContext context) {
         final List<Dart2Parser.NormalFormalParameterContext> normalFormalParameterContexts = context.normalFormalParameter();
-        final StringBuilder text = new StringBuilder();
-        final StringJoiner joiner = new StringJoiner(", ");
-        for (final Dart2Parser.NormalFormalParameterContext normalFormalParameterContext : normalFormalParameterContexts) {
-            final String normalFormalParameterText = this.visit(normalFormalParameterContext);
-            joiner.add(normalFormalParameterText);
+        final DocBuilder text = new DocBuilder();
+        for (int index = 0; index < normalFormalParameterContexts.size(); index++) {
+            if (index > 0) {
+                text.append(", ");
+            }
+            text.append(this.visit(normalFormalParameterContexts.get(index)));
         }
-        text.append(joiner);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNormalFormalParameter(final Dart2Parser.NormalFormalParameterContext context) {
+    public Doc visitNormalFormalParameter(final Dart2Parser.NormalFormalParameterContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.NormalFormalParameterNoMetadataContext normalFormalParameterNoMetadataContext = context.normalFormalParameterNoMetadata();
-        if (!metadataContext.getText().isEmpty()) {
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitNormalFormalParameter -> metadata");
         }
-        final StringBuilder text = new StringBuilder();
-        final String normalFormalParameterNoMetadataText = this.visit(normalFormalParameterNoMetadataContext);
+        final DocBuilder text = new DocBuilder();
+        final Doc normalFormalParameterNoMetadataText = this.visit(normalFormalParameterNoMetadataContext);
         text.append(normalFormalParameterNoMetadataText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNormalFormalParameterNoMetadata(final Dart2Parser.NormalFormalParameterNoMetadataContext context) {
+    public Doc visitNormalFormalParameterNoMetadata(final Dart2Parser.NormalFormalParameterNoMetadataContext context) {
         final Dart2Parser.FunctionFormalParameterContext functionFormalParameterContext = context.functionFormalParameter();
         final Dart2Parser.FieldFormalParameterContext fieldFormalParameterContext = context.fieldFormalParameter();
         final Dart2Parser.SimpleFormalParameterContext simpleFormalParameterContext = context.simpleFormalParameter();
         if (functionFormalParameterContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitNormalFormalParameterNoMetadata -> functionFormalParameter");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (simpleFormalParameterContext != null) {
-            final String simpleFormalParameterText = this.visit(simpleFormalParameterContext);
+            final Doc simpleFormalParameterText = this.visit(simpleFormalParameterContext);
             text.append(simpleFormalParameterText);
         }
         if (fieldFormalParameterContext != null) {
             text.append(this.visit(fieldFormalParameterContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFieldFormalParameter(final Dart2Parser.FieldFormalParameterContext context) {
+    public Doc visitFieldFormalParameter(final Dart2Parser.FieldFormalParameterContext context) {
         final Dart2Parser.FinalConstVarOrTypeContext finalConstVarOrTypeContext = context.finalConstVarOrType();
         final TerminalNode thisTerminal = context.THIS_();
         final TerminalNode superTerminal = context.SUPER_();
@@ -1238,7 +1370,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final Dart2Parser.FormalParameterPartContext formalParameterPartContext = context.formalParameterPart();
         // todo: use `quTerminal` with tests.
         // final TerminalNode quTerminal = context.QU();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (finalConstVarOrTypeContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFieldFormalParameter -> finalConstVarOrType");
         }
@@ -1252,34 +1384,34 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (formalParameterPartContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFieldFormalParameter -> formalParameterPart");
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSimpleFormalParameter(final Dart2Parser.SimpleFormalParameterContext context) {
+    public Doc visitSimpleFormalParameter(final Dart2Parser.SimpleFormalParameterContext context) {
         final Dart2Parser.DeclaredIdentifierContext declaredIdentifierContext = context.declaredIdentifier();
         final TerminalNode covariantTerminal = context.COVARIANT_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         if (covariantTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitSimpleFormalParameter -> covariant");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (declaredIdentifierContext != null) {
-            final String declaredIdentifierText = this.visit(declaredIdentifierContext);
+            final Doc declaredIdentifierText = this.visit(declaredIdentifierContext);
             text.append(declaredIdentifierText);
         }
         if (identifierContext != null) {
             text.append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDeclaredIdentifier(final Dart2Parser.DeclaredIdentifierContext context) {
+    public Doc visitDeclaredIdentifier(final Dart2Parser.DeclaredIdentifierContext context) {
         final TerminalNode covariantTerminal = context.COVARIANT_();
         final Dart2Parser.FinalConstVarOrTypeContext finalConstVarOrTypeContext = context.finalConstVarOrType();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (covariantTerminal != null) {
             text.append(this.visit(covariantTerminal))
                 .append(' ');
@@ -1287,17 +1419,17 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         text.append(this.visit(finalConstVarOrTypeContext))
             .append(' ')
             .append(this.visit(identifierContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFinalConstVarOrType(final Dart2Parser.FinalConstVarOrTypeContext context) {
+    public Doc visitFinalConstVarOrType(final Dart2Parser.FinalConstVarOrTypeContext context) {
         final TerminalNode lateTerminal = context.LATE_();
         final TerminalNode finalTerminal = context.FINAL_();
         final Dart2Parser.TypeContext typeContext = context.type();
         final TerminalNode constTerminal = context.CONST_();
         final Dart2Parser.VarOrTypeContext varOrTypeContext = context.varOrType();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (finalTerminal != null) {
             // LATE_? FINAL_ type?
             if (lateTerminal != null) {
@@ -1324,11 +1456,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             }
             text.append(this.visit(varOrTypeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionBody(final Dart2Parser.FunctionBodyContext context) {
+    public Doc visitFunctionBody(final Dart2Parser.FunctionBodyContext context) {
         final TerminalNode nativeTerminal = context.NATIVE_();
         final Dart2Parser.StringLiteralContext stringLiteralContext = context.stringLiteral();
         final TerminalNode scTerminal = context.SC();
@@ -1347,7 +1479,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (stTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFunctionBody -> st");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (egTerminal != null) {
             if (asyncTerminal != null) {
                 text.append(this.visit(asyncTerminal))
@@ -1367,21 +1499,21 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 text.append(this.visit(syncTerminal))
                     .append(' ');
             }
-            final String blockText = this.visit(blockContext);
+            final Doc blockText = this.visit(blockContext);
             text.append(blockText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitBlock(final Dart2Parser.BlockContext context) {
+    public Doc visitBlock(final Dart2Parser.BlockContext context) {
         final TerminalNode obcTerminal = context.OBC();
         final Dart2Parser.StatementsContext statementsContext = context.statements();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(obcTerminal));
         this.currentIndentLevel++;
-        final String statementsText = this.visit(statementsContext);
+        final Doc statementsText = this.visit(statementsContext);
         if (statementsText.isEmpty()) {
             this.currentIndentLevel--;
             text.append(this.visit(cbcTerminal));
@@ -1392,13 +1524,13 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             this.appendNewLinesAndIndent(text, 1);
             text.append(this.visit(cbcTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitStatements(final Dart2Parser.StatementsContext context) {
+    public Doc visitStatements(final Dart2Parser.StatementsContext context) {
         final List<Dart2Parser.StatementContext> statementContexts = context.statement();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         for (int index = 0; index < statementContexts.size(); index++) {
             final Dart2Parser.StatementContext statementContext = statementContexts.get(index);
             text.append(this.visit(statementContext));
@@ -1406,25 +1538,25 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 this.appendNewLinesAndIndent(text, 1);
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitStatement(final Dart2Parser.StatementContext context) {
+    public Doc visitStatement(final Dart2Parser.StatementContext context) {
         final List<Dart2Parser.LabelContext> labelContexts = context.label();
         final Dart2Parser.NonLabelledStatementContext nonLabelledStatementContext = context.nonLabelledStatement();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         for (final Dart2Parser.LabelContext labelContext : labelContexts) {
             text.append(this.visit(labelContext))
                 .append(' ');
         }
-        final String nonLabelledStatementText = this.visit(nonLabelledStatementContext);
+        final Doc nonLabelledStatementText = this.visit(nonLabelledStatementContext);
         text.append(nonLabelledStatementText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNonLabelledStatement(final Dart2Parser.NonLabelledStatementContext context) {
+    public Doc visitNonLabelledStatement(final Dart2Parser.NonLabelledStatementContext context) {
         final Dart2Parser.BlockContext blockContext = context.block();
         final Dart2Parser.LocalVariableDeclarationContext localVariableDeclarationContext = context.localVariableDeclaration();
         final Dart2Parser.ForStatementContext forStatementContext = context.forStatement();
@@ -1454,7 +1586,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (yieldEachStatementContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitNonLabelledStatement -> yieldEachStatement");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (blockContext != null) {
             text.append(this.visit(blockContext));
         } else if (returnStatementContext != null) {
@@ -1482,27 +1614,27 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (assertStatementContext != null) {
             text.append(this.visit(assertStatementContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAssertStatement(final Dart2Parser.AssertStatementContext context) {
+    public Doc visitAssertStatement(final Dart2Parser.AssertStatementContext context) {
         final Dart2Parser.AssertionContext assertionContext = context.assertion();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(assertionContext))
             .append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAssertion(final Dart2Parser.AssertionContext context) {
+    public Doc visitAssertion(final Dart2Parser.AssertionContext context) {
         final TerminalNode assertTerminal = context.ASSERT_();
         final TerminalNode opTerminal = context.OP();
         final List<Dart2Parser.ExprContext> exprContexts = context.expr();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode cpTerminal = context.CP();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(assertTerminal))
             .append(this.visit(opTerminal));
         final Dart2Parser.ExprContext firstExprContext = exprContexts.get(0);
@@ -1519,55 +1651,55 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(cTerminal));
         }
         text.append(this.visit(cpTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitRethrowStatement(final Dart2Parser.RethrowStatementContext context) {
+    public Doc visitRethrowStatement(final Dart2Parser.RethrowStatementContext context) {
         final TerminalNode rethrowTerminal = context.RETHROW_();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(rethrowTerminal))
             .append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitBreakStatement(final Dart2Parser.BreakStatementContext context) {
+    public Doc visitBreakStatement(final Dart2Parser.BreakStatementContext context) {
         final TerminalNode breakTerminal = context.BREAK_();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(breakTerminal));
         if (identifierContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBreakStatement -> identifier");
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLocalFunctionDeclaration(final Dart2Parser.LocalFunctionDeclarationContext context) {
+    public Doc visitLocalFunctionDeclaration(final Dart2Parser.LocalFunctionDeclarationContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.FunctionSignatureContext functionSignatureContext = context.functionSignature();
         final Dart2Parser.FunctionBodyContext functionBodyContext = context.functionBody();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLocalFunctionDeclaration -> metadata");
         }
         text.append(this.visit(functionSignatureContext))
             .append(' ')
             .append(this.visit(functionBodyContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTryStatement(final Dart2Parser.TryStatementContext context) {
+    public Doc visitTryStatement(final Dart2Parser.TryStatementContext context) {
         final TerminalNode tryTerminal = context.TRY_();
         final Dart2Parser.BlockContext blockContext = context.block();
         final List<Dart2Parser.OnPartContext> onPartContexts = context.onPart();
         final Dart2Parser.FinallyPartContext finallyPartContext = context.finallyPart();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(tryTerminal))
             .append(' ')
             .append(this.visit(blockContext));
@@ -1579,27 +1711,27 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(' ')
                 .append(this.visit(finallyPartContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFinallyPart(final Dart2Parser.FinallyPartContext context) {
+    public Doc visitFinallyPart(final Dart2Parser.FinallyPartContext context) {
         final TerminalNode finallyTerminal = context.FINALLY_();
         final Dart2Parser.BlockContext blockContext = context.block();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(finallyTerminal))
             .append(' ')
             .append(this.visit(blockContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitOnPart(final Dart2Parser.OnPartContext context) {
+    public Doc visitOnPart(final Dart2Parser.OnPartContext context) {
         final Dart2Parser.CatchPartContext catchPartContext = context.catchPart();
         final Dart2Parser.BlockContext blockContext = context.block();
         final TerminalNode onTerminal = context.ON_();
         final Dart2Parser.TypeNotVoidContext typeNotVoidContext = context.typeNotVoid();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (onTerminal == null) {
             // catchPart block
             text.append(this.visit(catchPartContext))
@@ -1617,17 +1749,17 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(' ')
                 .append(this.visit(blockContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCatchPart(final Dart2Parser.CatchPartContext context) {
+    public Doc visitCatchPart(final Dart2Parser.CatchPartContext context) {
         final TerminalNode catchTerminal = context.CATCH_();
         final TerminalNode opTerminal = context.OP();
         final List<Dart2Parser.IdentifierContext> identifierContexts = context.identifier();
         final TerminalNode cTerminal = context.C();
         final TerminalNode cpTerminal = context.CP();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(catchTerminal))
             .append(' ')
             .append(this.visit(opTerminal));
@@ -1640,11 +1772,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(secondIdentifierContext));
         }
         text.append(this.visit(cpTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSwitchStatement(final Dart2Parser.SwitchStatementContext context) {
+    public Doc visitSwitchStatement(final Dart2Parser.SwitchStatementContext context) {
         final TerminalNode switchTerminal = context.SWITCH_();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ExprContext exprContext = context.expr();
@@ -1653,7 +1785,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final List<Dart2Parser.SwitchCaseContext> switchCaseContexts = context.switchCase();
         final Dart2Parser.DefaultCaseContext defaultCaseContext = context.defaultCase();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(switchTerminal))
             .append(' ')
             .append(this.visit(opTerminal))
@@ -1673,11 +1805,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         this.currentIndentLevel--;
         this.appendNewLinesAndIndent(text, 1);
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSwitchCase(final Dart2Parser.SwitchCaseContext context) {
+    public Doc visitSwitchCase(final Dart2Parser.SwitchCaseContext context) {
         final List<Dart2Parser.LabelContext> labelContexts = context.label();
         final TerminalNode caseTerminal = context.CASE_();
         final Dart2Parser.ExprContext exprContext = context.expr();
@@ -1686,22 +1818,22 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (!labelContexts.isEmpty()) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitSwitchCase -> label");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(caseTerminal))
             .append(' ')
             .append(this.visit(exprContext))
             .append(this.visit(coTerminal));
         this.currentIndentLevel++;
-        if (this.hasDescendant(statementsContext, Dart2Parser.StatementContext.class)) {
+        if (this.ruleIndex.hasDescendant(statementsContext, Dart2Parser.RULE_statement)) {
             this.appendNewLinesAndIndent(text, 1);
             text.append(this.visit(statementsContext));
         }
         this.currentIndentLevel--;
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDefaultCase(final Dart2Parser.DefaultCaseContext context) {
+    public Doc visitDefaultCase(final Dart2Parser.DefaultCaseContext context) {
         final List<Dart2Parser.LabelContext> labelContexts = context.label();
         final TerminalNode defaultTerminal = context.DEFAULT_();
         final TerminalNode coTerminal = context.CO();
@@ -1709,101 +1841,86 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (!labelContexts.isEmpty()) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitDefaultCase -> label");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(defaultTerminal))
             .append(this.visit(coTerminal));
         this.currentIndentLevel++;
         this.appendNewLinesAndIndent(text, 1);
         text.append(this.visit(statementsContext));
         this.currentIndentLevel--;
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitWhileStatement(final Dart2Parser.WhileStatementContext context) {
+    public Doc visitWhileStatement(final Dart2Parser.WhileStatementContext context) {
         final TerminalNode whileTerminal = context.WHILE_();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cpTerminal = context.CP();
         final Dart2Parser.StatementContext statementContext = context.statement();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(whileTerminal))
             .append(' ')
             .append(this.visit(opTerminal));
-        final String exprText = this.visit(exprContext);
+        final Doc exprText = this.visit(exprContext);
         text.append(exprText)
             .append(this.visit(cpTerminal))
             .append(' ');
-        final String statementText = this.visit(statementContext);
+        final Doc statementText = this.visit(statementContext);
         text.append(statementText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExpressionStatement(final Dart2Parser.ExpressionStatementContext context) {
+    public Doc visitExpressionStatement(final Dart2Parser.ExpressionStatementContext context) {
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (exprContext != null) {
-            final int visitUnconditionalAssignableSelectorCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.UnconditionalAssignableSelectorContext.class.getSimpleName(), 0);
-            final int visitIdentifierCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.IdentifierContext.class.getSimpleName(), 0);
-            final int visitArgumentsCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.ArgumentsContext.class.getSimpleName(), 0);
-            final int visitCascadeCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.CascadeContext.class.getSimpleName(), 0);
-            final String exprText = this.visit(exprContext);
-            final int visitUnconditionalAssignableSelectorCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.UnconditionalAssignableSelectorContext.class.getSimpleName(), 0);
-            final int visitIdentifierCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.IdentifierContext.class.getSimpleName(), 0);
-            final int visitArgumentsCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.ArgumentsContext.class.getSimpleName(), 0);
-            final int visitCascadeCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.CascadeContext.class.getSimpleName(), 0);
-            final int visitUnconditionalAssignableSelectorCountDiff = visitUnconditionalAssignableSelectorCountAfter - visitUnconditionalAssignableSelectorCountBefore;
-            final int visitIdentifierCountDiff = visitIdentifierCountAfter - visitIdentifierCountBefore;
-            final int visitArgumentsCountDiff = visitArgumentsCountAfter - visitArgumentsCountBefore;
-            final int visitCascadeCountDiff = visitCascadeCountAfter - visitCascadeCountBefore;
-            final boolean methodChained = visitUnconditionalAssignableSelectorCountDiff > 1 && visitIdentifierCountDiff > 1 && visitArgumentsCountDiff > 1;
-            final boolean bothChained = visitUnconditionalAssignableSelectorCountDiff > 0 && visitIdentifierCountDiff > 0 && visitCascadeCountDiff > 0;
-            if (methodChained || visitCascadeCountDiff > 1 || bothChained) {
+            if (this.layoutFacts.chains(exprContext)) {
                 this.methodChaining = true;
                 text.append(this.visit(exprContext));
                 this.methodChaining = false;
             } else {
-                text.append(exprText);
+                text.append(this.visit(exprContext));
             }
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIfStatement(final Dart2Parser.IfStatementContext context) {
+    public Doc visitIfStatement(final Dart2Parser.IfStatementContext context) {
         final TerminalNode ifTerminal = context.IF_();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cpTerminal = context.CP();
         final List<Dart2Parser.StatementContext> statementContexts = context.statement();
         final TerminalNode elseTerminal = context.ELSE_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(ifTerminal))
             .append(' ')
             .append(this.visit(opTerminal));
-        final String exprText = this.visit(exprContext);
+        final Doc exprText = this.visit(exprContext);
         text.append(exprText)
             .append(this.visit(cpTerminal))
             .append(' ');
         final Dart2Parser.StatementContext firstStatementContext = statementContexts.get(0);
-        final String firstStatementText = this.visit(firstStatementContext);
+        final Doc firstStatementText = this.visit(firstStatementContext);
         text.append(firstStatementText);
         if (elseTerminal != null) {
             text.append(' ')
                 .append(this.visit(elseTerminal))
                 .append(' ');
             final Dart2Parser.StatementContext secondStatementContext = statementContexts.get(1);
-            final String secondStatementText = this.visit(secondStatementContext);
+            final Doc secondStatementText = this.visit(secondStatementContext);
             text.append(secondStatementText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitForStatement(final Dart2Parser.ForStatementContext context) {
+    public Doc visitForStatement(final Dart2Parser.ForStatementContext context) {
         final TerminalNode awaitTerminal = context.AWAIT_();
         final TerminalNode forTerminal = context.FOR_();
         final TerminalNode opTerminal = context.OP();
@@ -1813,21 +1930,21 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (awaitTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitForStatement -> await");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(forTerminal))
             .append(' ')
             .append(this.visit(opTerminal));
-        final String forLoopPartsText = this.visit(forLoopPartsContext);
+        final Doc forLoopPartsText = this.visit(forLoopPartsContext);
         text.append(forLoopPartsText)
             .append(this.visit(cpTerminal))
             .append(' ');
-        final String statementText = this.visit(statementContext);
+        final Doc statementText = this.visit(statementContext);
         text.append(statementText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitForLoopParts(final Dart2Parser.ForLoopPartsContext context) {
+    public Doc visitForLoopParts(final Dart2Parser.ForLoopPartsContext context) {
         final Dart2Parser.ForInitializerStatementContext forInitializerStatementContext = context.forInitializerStatement();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode scTerminal = context.SC();
@@ -1839,7 +1956,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (identifierContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitForLoopParts -> identifier");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (forInitializerStatementContext != null) {
             text.append(this.visit(forInitializerStatementContext))
                 .append(' ');
@@ -1853,7 +1970,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             }
         }
         if (metadataContext != null) {
-            if (!metadataContext.getText().isEmpty()) {
+            if (!this.isEmpty(metadataContext)) {
                 throw new UnsupportedOperationException("The following parsing path is not supported yet: visitForLoopParts -> metadata");
             }
             text.append(this.visit(declaredIdentifierContext))
@@ -1862,22 +1979,22 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(exprContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExpressionList(final Dart2Parser.ExpressionListContext context) {
+    public Doc visitExpressionList(final Dart2Parser.ExpressionListContext context) {
         final List<Dart2Parser.ExprContext> exprContexts = context.expr();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.ExprContext firstExprContext = exprContexts.get(0);
-        final String firstExprText = this.visit(firstExprContext);
+        final Doc firstExprText = this.visit(firstExprContext);
         text.append(firstExprText);
         for (int index = 0; index < cTerminals.size(); index++) {
             final TerminalNode cTerminal = cTerminals.get(index);
             final Dart2Parser.ExprContext exprContext = exprContexts.get(index + 1);
             // We assume the following condition means nested object initialization. Ex: User('Rin', User('Ian'));
-            if (this.hasDescendant(exprContext, Dart2Parser.ArgumentsContext.class)) {
+            if (this.ruleIndex.hasDescendant(exprContext, Dart2Parser.RULE_arguments)) {
                 text.append(this.visit(cTerminal));
                 this.appendNewLinesAndIndent(text, 1);
                 text.append(this.visit(exprContext));
@@ -1887,11 +2004,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                     .append(this.visit(exprContext));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitForInitializerStatement(final Dart2Parser.ForInitializerStatementContext context) {
+    public Doc visitForInitializerStatement(final Dart2Parser.ForInitializerStatementContext context) {
         final Dart2Parser.LocalVariableDeclarationContext localVariableDeclarationContext = context.localVariableDeclaration();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode scTerminal = context.SC();
@@ -1901,30 +2018,30 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (scTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitForInitializerStatement -> sc");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (localVariableDeclarationContext != null) {
-            final String localVariableDeclarationText = this.visit(localVariableDeclarationContext);
+            final Doc localVariableDeclarationText = this.visit(localVariableDeclarationContext);
             text.append(localVariableDeclarationText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLocalVariableDeclaration(final Dart2Parser.LocalVariableDeclarationContext context) {
+    public Doc visitLocalVariableDeclaration(final Dart2Parser.LocalVariableDeclarationContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.InitializedVariableDeclarationContext initializedVariableDeclarationContext = context.initializedVariableDeclaration();
         final TerminalNode scTerminal = context.SC();
-        if (!metadataContext.getText().isEmpty()) {
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLocalVariableDeclaration -> metadata");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(initializedVariableDeclarationContext))
             .append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializedVariableDeclaration(final Dart2Parser.InitializedVariableDeclarationContext context) {
+    public Doc visitInitializedVariableDeclaration(final Dart2Parser.InitializedVariableDeclarationContext context) {
         final Dart2Parser.DeclaredIdentifierContext declaredIdentifierContext = context.declaredIdentifier();
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.ExprContext exprContext = context.expr();
@@ -1934,7 +2051,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (!cTerminals.isEmpty()) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitInitializedVariableDeclaration -> c");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(declaredIdentifierContext));
         if (eqTerminal != null) {
             text.append(' ')
@@ -1942,27 +2059,27 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(exprContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitReturnStatement(final Dart2Parser.ReturnStatementContext context) {
+    public Doc visitReturnStatement(final Dart2Parser.ReturnStatementContext context) {
         final TerminalNode returnTerminal = context.RETURN_();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode scTerminal = context.SC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(returnTerminal))
             .append(' ');
         if (exprContext != null) {
-            final String exprText = this.visit(exprContext);
+            final Doc exprText = this.visit(exprContext);
             text.append(exprText);
         }
         text.append(this.visit(scTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitDeclaration(final Dart2Parser.DeclarationContext context) {
+    public Doc visitDeclaration(final Dart2Parser.DeclarationContext context) {
         final TerminalNode abstractTerminal = context.ABSTRACT_();
         final TerminalNode externalTerminal = context.EXTERNAL_();
         final Dart2Parser.FactoryConstructorSignatureContext factoryConstructorSignatureContext = context.factoryConstructorSignature();
@@ -1985,7 +2102,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final Dart2Parser.RedirectingFactoryConstructorSignatureContext redirectingFactoryConstructorSignatureContext = context.redirectingFactoryConstructorSignature();
         final Dart2Parser.RedirectionContext redirectionContext = context.redirection();
         final Dart2Parser.InitializersContext initializersContext = context.initializers();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (abstractTerminal != null) {
             text.append(this.visit(abstractTerminal))
                 .append(' ');
@@ -2125,25 +2242,25 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                     .append(this.visit(initializersContext));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstructorSignature(final Dart2Parser.ConstructorSignatureContext context) {
+    public Doc visitConstructorSignature(final Dart2Parser.ConstructorSignatureContext context) {
         final Dart2Parser.ConstructorNameContext constructorNameContext = context.constructorName();
         final Dart2Parser.FormalParameterListContext formalParameterListContext = context.formalParameterList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(constructorNameContext))
             .append(this.visit(formalParameterListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializers(final Dart2Parser.InitializersContext context) {
+    public Doc visitInitializers(final Dart2Parser.InitializersContext context) {
         final TerminalNode coTerminal = context.CO();
         final List<Dart2Parser.InitializerListEntryContext> initializerListEntryContexts = context.initializerListEntry();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(coTerminal))
             .append(' ');
         final Dart2Parser.InitializerListEntryContext firstInitializerListEntryContext = initializerListEntryContexts.get(0);
@@ -2155,11 +2272,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(initializerListEntryContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializerListEntry(final Dart2Parser.InitializerListEntryContext context) {
+    public Doc visitInitializerListEntry(final Dart2Parser.InitializerListEntryContext context) {
         final TerminalNode superTerminal = context.SUPER_();
         final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
         final TerminalNode dTerminal = context.D();
@@ -2167,7 +2284,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final Dart2Parser.FieldInitializerContext fieldInitializerContext = context.fieldInitializer();
         // todo: use `assertionContext` with tests.
         // final Dart2Parser.AssertionContext assertionContext = context.assertion();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (dTerminal != null) {
             // SUPER_ D identifier arguments
             text.append(this.visit(superTerminal))
@@ -2185,17 +2302,17 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             // assertion
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitInitializerListEntry -> assertion");
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFieldInitializer(final Dart2Parser.FieldInitializerContext context) {
+    public Doc visitFieldInitializer(final Dart2Parser.FieldInitializerContext context) {
         final TerminalNode thisTerminal = context.THIS_();
         final TerminalNode dTerminal = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.InitializerExpressionContext initializerExpressionContext = context.initializerExpression();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (thisTerminal != null) {
             text.append(this.visit(thisTerminal))
                 .append(this.visit(dTerminal));
@@ -2205,40 +2322,40 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             .append(this.visit(eqTerminal))
             .append(' ')
             .append(this.visit(initializerExpressionContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializerExpression(final Dart2Parser.InitializerExpressionContext context) {
+    public Doc visitInitializerExpression(final Dart2Parser.InitializerExpressionContext context) {
         final Dart2Parser.ConditionalExpressionContext conditionalExpressionContext = context.conditionalExpression();
         final Dart2Parser.CascadeContext cascadeContext = context.cascade();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (conditionalExpressionContext != null) {
             text.append(this.visit(conditionalExpressionContext));
         } else {
             text.append(this.visit(cascadeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitVarOrType(final Dart2Parser.VarOrTypeContext context) {
+    public Doc visitVarOrType(final Dart2Parser.VarOrTypeContext context) {
         final TerminalNode varTerminal = context.VAR_();
         final Dart2Parser.TypeContext typeContext = context.type();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (varTerminal != null) {
             text.append(this.visit(varTerminal));
         } else if (typeContext != null) {
             text.append(this.visit(typeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitStaticFinalDeclarationList(final Dart2Parser.StaticFinalDeclarationListContext context) {
+    public Doc visitStaticFinalDeclarationList(final Dart2Parser.StaticFinalDeclarationListContext context) {
         final List<Dart2Parser.StaticFinalDeclarationContext> staticFinalDeclarationContexts = context.staticFinalDeclaration();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.StaticFinalDeclarationContext firstStaticFinalDeclarationContext = staticFinalDeclarationContexts.get(0);
         text.append(this.visit(firstStaticFinalDeclarationContext));
         for (int index = 0; index < cTerminals.size(); index++) {
@@ -2248,73 +2365,73 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(staticFinalDeclarationContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitStaticFinalDeclaration(final Dart2Parser.StaticFinalDeclarationContext context) {
+    public Doc visitStaticFinalDeclaration(final Dart2Parser.StaticFinalDeclarationContext context) {
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(identifierContext))
             .append(' ')
             .append(this.visit(eqTerminal))
             .append(' ')
             .append(this.visit(exprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstantConstructorSignature(final Dart2Parser.ConstantConstructorSignatureContext context) {
+    public Doc visitConstantConstructorSignature(final Dart2Parser.ConstantConstructorSignatureContext context) {
         final TerminalNode constTerminal = context.CONST_();
         final Dart2Parser.ConstructorNameContext constructorNameContext = context.constructorName();
         final Dart2Parser.FormalParameterListContext formalParameterListContext = context.formalParameterList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(constTerminal))
             .append(' ')
             .append(this.visit(constructorNameContext));
-        final String formalParameterListText = this.visit(formalParameterListContext);
+        final Doc formalParameterListText = this.visit(formalParameterListContext);
         text.append(formalParameterListText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitType(final Dart2Parser.TypeContext context) {
+    public Doc visitType(final Dart2Parser.TypeContext context) {
         final Dart2Parser.FunctionTypeContext functionTypeContext = context.functionType();
         final TerminalNode quTerminal = context.QU();
         final Dart2Parser.TypeNotFunctionContext typeNotFunctionContext = context.typeNotFunction();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (functionTypeContext != null) {
-            final String functionTypeText = this.visit(functionTypeContext);
+            final Doc functionTypeText = this.visit(functionTypeContext);
             text.append(functionTypeText);
             if (quTerminal != null) {
                 text.append(this.visit(quTerminal));
             }
         } else if (typeNotFunctionContext != null) {
-            final String typeNotFunctionText = this.visit(typeNotFunctionContext);
+            final Doc typeNotFunctionText = this.visit(typeNotFunctionContext);
             text.append(typeNotFunctionText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionType(final Dart2Parser.FunctionTypeContext context) {
+    public Doc visitFunctionType(final Dart2Parser.FunctionTypeContext context) {
         final Dart2Parser.FunctionTypeTailsContext functionTypeTailsContext = context.functionTypeTails();
         final Dart2Parser.TypeNotFunctionContext typeNotFunctionContext = context.typeNotFunction();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeNotFunctionContext != null) {
-            final String typeNotFunctionText = this.visit(typeNotFunctionContext);
+            final Doc typeNotFunctionText = this.visit(typeNotFunctionContext);
             text.append(typeNotFunctionText)
                 .append(' ');
         }
-        final String functionTypeText = this.visit(functionTypeTailsContext);
+        final Doc functionTypeText = this.visit(functionTypeTailsContext);
         text.append(functionTypeText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionTypeTails(final Dart2Parser.FunctionTypeTailsContext context) {
+    public Doc visitFunctionTypeTails(final Dart2Parser.FunctionTypeTailsContext context) {
         final Dart2Parser.FunctionTypeTailContext functionTypeTailContext = context.functionTypeTail();
         final TerminalNode quTerminal = context.QU();
         final Dart2Parser.FunctionTypeTailsContext functionTypeTailsContext = context.functionTypeTails();
@@ -2324,34 +2441,34 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (functionTypeTailsContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFunctionTypeTails -> functionTypeTails");
         }
-        final StringBuilder text = new StringBuilder();
-        final String functionTypeTailText = this.visit(functionTypeTailContext);
+        final DocBuilder text = new DocBuilder();
+        final Doc functionTypeTailText = this.visit(functionTypeTailContext);
         text.append(functionTypeTailText);
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionTypeTail(final Dart2Parser.FunctionTypeTailContext context) {
+    public Doc visitFunctionTypeTail(final Dart2Parser.FunctionTypeTailContext context) {
         final TerminalNode functionTerminal = context.FUNCTION_();
         final Dart2Parser.TypeParametersContext typeParametersContext = context.typeParameters();
         final Dart2Parser.ParameterTypeListContext parameterTypeListContext = context.parameterTypeList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(functionTerminal));
         if (typeParametersContext != null) {
             text.append(this.visit(typeParametersContext));
         }
         text.append(this.visit(parameterTypeListContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitParameterTypeList(final Dart2Parser.ParameterTypeListContext context) {
+    public Doc visitParameterTypeList(final Dart2Parser.ParameterTypeListContext context) {
         final TerminalNode opTerminal = context.OP();
         final TerminalNode cpTerminal = context.CP();
         final Dart2Parser.NormalParameterTypesContext normalParameterTypesContext = context.normalParameterTypes();
         final TerminalNode cTerminal = context.C();
         final Dart2Parser.OptionalParameterTypesContext optionalParameterTypesContext = context.optionalParameterTypes();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (opTerminal != null && normalParameterTypesContext != null && cTerminal != null && optionalParameterTypesContext != null && cpTerminal != null) {
             // OP normalParameterTypes C optionalParameterTypes CP
             text.append(this.visit(opTerminal))
@@ -2379,29 +2496,29 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(opTerminal))
                 .append(this.visit(cpTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitOptionalParameterTypes(final Dart2Parser.OptionalParameterTypesContext context) {
+    public Doc visitOptionalParameterTypes(final Dart2Parser.OptionalParameterTypesContext context) {
         final Dart2Parser.OptionalPositionalParameterTypesContext optionalParameterTypesContext = context.optionalPositionalParameterTypes();
         final Dart2Parser.NamedParameterTypesContext namedParameterTypesContext = context.namedParameterTypes();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (optionalParameterTypesContext != null) {
             text.append(this.visit(optionalParameterTypesContext));
         } else if (namedParameterTypesContext != null) {
             text.append(this.visit(namedParameterTypesContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNamedParameterTypes(final Dart2Parser.NamedParameterTypesContext context) {
+    public Doc visitNamedParameterTypes(final Dart2Parser.NamedParameterTypesContext context) {
         final TerminalNode obcTerminal = context.OBC();
         final List<Dart2Parser.NamedParameterTypeContext> namedParameterTypeContexts = context.namedParameterType();
         final List<TerminalNode> cTerminals = context.C();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(obcTerminal));
         this.currentIndentLevel++;
         this.appendNewLinesAndIndent(text, 1);
@@ -2421,16 +2538,16 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         this.currentIndentLevel--;
         this.appendNewLinesAndIndent(text, 1);
         text.append(this.visit(cbcTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNamedParameterType(final Dart2Parser.NamedParameterTypeContext context) {
+    public Doc visitNamedParameterType(final Dart2Parser.NamedParameterTypeContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final TerminalNode requiredTerminal = context.REQUIRED_();
         final Dart2Parser.TypedIdentifierContext typedIdentifierContext = context.typedIdentifier();
-        final StringBuilder text = new StringBuilder();
-        if (!metadataContext.getText().isEmpty()) {
+        final DocBuilder text = new DocBuilder();
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitNamedParameterType -> metadata");
         }
         if (requiredTerminal != null) {
@@ -2438,30 +2555,30 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ');
         }
         text.append(this.visit(typedIdentifierContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitOptionalPositionalParameterTypes(final Dart2Parser.OptionalPositionalParameterTypesContext context) {
+    public Doc visitOptionalPositionalParameterTypes(final Dart2Parser.OptionalPositionalParameterTypesContext context) {
         final TerminalNode obTerminal = context.OB();
         final Dart2Parser.NormalParameterTypesContext normalParameterTypesContext = context.normalParameterTypes();
         final TerminalNode cTerminal = context.C();
         final TerminalNode cbTerminal = context.CB();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(obTerminal))
             .append(this.visit(normalParameterTypesContext));
         if (cTerminal != null) {
             text.append(this.visit(cTerminal));
         }
         text.append(this.visit(cbTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNormalParameterTypes(final Dart2Parser.NormalParameterTypesContext context) {
+    public Doc visitNormalParameterTypes(final Dart2Parser.NormalParameterTypesContext context) {
         final List<Dart2Parser.NormalParameterTypeContext> normalParameterTypeContexts = context.normalParameterType();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.NormalParameterTypeContext firstNormalParameterTypeContext = normalParameterTypeContexts.get(0);
         text.append(this.visit(firstNormalParameterTypeContext));
         for (int index = 0; index < cTerminals.size(); index++) {
@@ -2469,54 +2586,54 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(normalParameterTypeContexts.get(index + 1)));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNormalParameterType(final Dart2Parser.NormalParameterTypeContext context) {
+    public Doc visitNormalParameterType(final Dart2Parser.NormalParameterTypeContext context) {
         final Dart2Parser.MetadataContext metadataContext = context.metadata();
         final Dart2Parser.TypedIdentifierContext typedIdentifierContext = context.typedIdentifier();
         final Dart2Parser.TypeContext typeContext = context.type();
-        if (!metadataContext.getText().isEmpty()) {
+        if (!this.isEmpty(metadataContext)) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitNormalParameterType -> metadata");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typedIdentifierContext != null) {
             text.append(this.visit(typedIdentifierContext));
         } else if (typeContext != null) {
             text.append(this.visit(typeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypedIdentifier(final Dart2Parser.TypedIdentifierContext context) {
+    public Doc visitTypedIdentifier(final Dart2Parser.TypedIdentifierContext context) {
         final Dart2Parser.TypeContext typeContext = context.type();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(typeContext))
             .append(' ')
             .append(this.visit(identifierContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeNotFunction(final Dart2Parser.TypeNotFunctionContext context) {
+    public Doc visitTypeNotFunction(final Dart2Parser.TypeNotFunctionContext context) {
         final TerminalNode voidTerminal = context.VOID_();
         final Dart2Parser.TypeNotVoidNotFunctionContext typeNotVoidNotFunctionContext = context.typeNotVoidNotFunction();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (voidTerminal != null) {
             text.append(this.visit(voidTerminal));
         }
         if (typeNotVoidNotFunctionContext != null) {
-            final String typeNotVoidNotFunctionText = this.visit(typeNotVoidNotFunctionContext);
+            final Doc typeNotVoidNotFunctionText = this.visit(typeNotVoidNotFunctionContext);
             text.append(typeNotVoidNotFunctionText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeNotVoidNotFunction(final Dart2Parser.TypeNotVoidNotFunctionContext context) {
+    public Doc visitTypeNotVoidNotFunction(final Dart2Parser.TypeNotVoidNotFunctionContext context) {
         final Dart2Parser.TypeNameContext typeNameContext = context.typeName();
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final TerminalNode quTerminal = context.QU();
@@ -2524,25 +2641,25 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (functionTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitTypeNotVoidNotFunction -> function");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeNameContext != null) {
             text.append(this.visit(typeNameContext));
         }
         if (typeArgumentsContext != null) {
-            final String typeArgumentsText = this.visit(typeArgumentsContext);
+            final Doc typeArgumentsText = this.visit(typeArgumentsContext);
             text.append(typeArgumentsText);
         }
         if (quTerminal != null) {
             text.append(this.visit(quTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeName(final Dart2Parser.TypeNameContext context) {
+    public Doc visitTypeName(final Dart2Parser.TypeNameContext context) {
         final List<Dart2Parser.TypeIdentifierContext> typeIdentifierContexts = context.typeIdentifier();
         final TerminalNode dTerminal = context.D();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.TypeIdentifierContext firstTypeIdentifierContext = typeIdentifierContexts.get(0);
         text.append(this.visit(firstTypeIdentifierContext));
         if (dTerminal != null) {
@@ -2550,40 +2667,40 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             final Dart2Parser.TypeIdentifierContext secondTypeIdentifierContext = typeIdentifierContexts.get(1);
             text.append(this.visit(secondTypeIdentifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeArguments(final Dart2Parser.TypeArgumentsContext context) {
+    public Doc visitTypeArguments(final Dart2Parser.TypeArgumentsContext context) {
         final TerminalNode ltTerminal = context.LT();
         final Dart2Parser.TypeListContext typeListContext = context.typeList();
         final TerminalNode gtTerminal = context.GT();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(ltTerminal))
             .append(this.visit(typeListContext))
             .append(this.visit(gtTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeList(final Dart2Parser.TypeListContext context) {
+    public Doc visitTypeList(final Dart2Parser.TypeListContext context) {
         final List<Dart2Parser.TypeContext> typeContexts = context.type();
-        final StringBuilder text = new StringBuilder();
-        final String firstTypeText = this.visit(typeContexts.get(0));
+        final DocBuilder text = new DocBuilder();
+        final Doc firstTypeText = this.visit(typeContexts.get(0));
         text.append(firstTypeText);
         for (int index = 1; index < typeContexts.size(); index++) {
             final Dart2Parser.TypeContext typeContext = typeContexts.get(index);
             text.append(", ")
                 .append(this.visit(typeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializedIdentifierList(final Dart2Parser.InitializedIdentifierListContext context) {
+    public Doc visitInitializedIdentifierList(final Dart2Parser.InitializedIdentifierListContext context) {
         final List<Dart2Parser.InitializedIdentifierContext> initializedIdentifierContexts = context.initializedIdentifier();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.InitializedIdentifierContext firstInitializedIdentifierContext = initializedIdentifierContexts.get(0);
         text.append(this.visit(firstInitializedIdentifierContext));
         for (int index = 0; index < cTerminals.size(); index++) {
@@ -2593,16 +2710,16 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(initializedIdentifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitInitializedIdentifier(final Dart2Parser.InitializedIdentifierContext context) {
+    public Doc visitInitializedIdentifier(final Dart2Parser.InitializedIdentifierContext context) {
         // It can be a variable name.
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(identifierContext));
         if (eqTerminal != null) {
             text.append(' ')
@@ -2610,51 +2727,42 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(' ')
                 .append(this.visit(exprContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExpr(final Dart2Parser.ExprContext context) {
+    public Doc visitExpr(final Dart2Parser.ExprContext context) {
+        // The other alternatives have a single child, which Compaction visits directly.
+        // assignableExpression assignmentOperator expr
         final Dart2Parser.AssignableExpressionContext assignableExpressionContext = context.assignableExpression();
         final Dart2Parser.AssignmentOperatorContext assignmentOperatorContext = context.assignmentOperator();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final Dart2Parser.ConditionalExpressionContext conditionalExpressionContext = context.conditionalExpression();
-        final Dart2Parser.CascadeContext cascadeContext = context.cascade();
-        final Dart2Parser.ThrowExpressionContext throwExpressionContext = context.throwExpression();
-        final StringBuilder text = new StringBuilder();
-        if (assignableExpressionContext != null) {
-            text.append(this.visit(assignableExpressionContext))
-                .append(' ')
-                .append(this.visit(assignmentOperatorContext))
-                .append(' ')
-                .append(this.visit(exprContext));
-        } else if (conditionalExpressionContext != null) {
-            text.append(this.visit(conditionalExpressionContext));
-        } else if (cascadeContext != null) {
-            text.append(this.visit(cascadeContext));
-        } else if (throwExpressionContext != null) {
-            text.append(this.visit(throwExpressionContext));
-        }
-        return text.toString();
+        final DocBuilder text = new DocBuilder();
+        text.append(this.visit(assignableExpressionContext))
+            .append(' ')
+            .append(this.visit(assignmentOperatorContext))
+            .append(' ')
+            .append(this.visit(exprContext));
+        return text.build();
     }
 
     @Override
-    public String visitAssignmentOperator(final Dart2Parser.AssignmentOperatorContext context) {
+    public Doc visitAssignmentOperator(final Dart2Parser.AssignmentOperatorContext context) {
         final TerminalNode eqTerminal = context.EQ();
         final Dart2Parser.CompoundAssignmentOperatorContext compoundAssignmentOperatorContext = context.compoundAssignmentOperator();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (eqTerminal != null) {
             text.append(this.visit(eqTerminal));
         } else {
             text.append(this.visit(compoundAssignmentOperatorContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
     // False-positive: PMD.ConfusingTernary
     @SuppressWarnings("PMD.ConfusingTernary")
-    public String visitCompoundAssignmentOperator(final Dart2Parser.CompoundAssignmentOperatorContext context) {
+    public Doc visitCompoundAssignmentOperator(final Dart2Parser.CompoundAssignmentOperatorContext context) {
         final TerminalNode steTerminal = context.STE();
         final TerminalNode seTerminal = context.SE();
         final TerminalNode sqseTerminal = context.SQSE();
@@ -2668,7 +2776,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final TerminalNode cireTerminal = context.CIRE();
         final TerminalNode poeTerminal = context.POE();
         final TerminalNode ququeqTerminal = context.QUQUEQ();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (steTerminal != null) {
             text.append(this.visit(steTerminal));
         } else if (seTerminal != null) {
@@ -2697,18 +2805,18 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (ququeqTerminal != null) {
             text.append(this.visit(ququeqTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAssignableExpression(final Dart2Parser.AssignableExpressionContext context) {
+    public Doc visitAssignableExpression(final Dart2Parser.AssignableExpressionContext context) {
         final Dart2Parser.PrimaryContext primaryContext = context.primary();
         final Dart2Parser.AssignableSelectorPartContext assignableSelectorPartContext = context.assignableSelectorPart();
         final TerminalNode superTerminal = context.SUPER_();
         // todo: use `unconditionalAssignableSelectorContext` with tests.
         // final Dart2Parser.UnconditionalAssignableSelectorContext unconditionalAssignableSelectorContext = context.unconditionalAssignableSelector();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (primaryContext != null) {
             text.append(this.visit(primaryContext))
                 .append(this.visit(assignableSelectorPartContext));
@@ -2717,98 +2825,98 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             text.append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAssignableSelectorPart(final Dart2Parser.AssignableSelectorPartContext context) {
+    public Doc visitAssignableSelectorPart(final Dart2Parser.AssignableSelectorPartContext context) {
         final List<Dart2Parser.SelectorContext> selectorContexts = context.selector();
         final Dart2Parser.AssignableSelectorContext assignableSelectorContext = context.assignableSelector();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         for (final Dart2Parser.SelectorContext selectorContext : selectorContexts) {
             text.append(this.visit(selectorContext));
         }
         text.append(this.visit(assignableSelectorContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCascade(final Dart2Parser.CascadeContext context) {
-        final Dart2Parser.CascadeContext cascadeContext = context.cascade();
-        final TerminalNode ddTerminal = context.DD();
-        final Dart2Parser.CascadeSectionContext cascadeSectionContext = context.cascadeSection();
-        final Dart2Parser.ConditionalExpressionContext conditionalExpressionContext = context.conditionalExpression();
-        final TerminalNode quddTerminal = context.QUDD();
-        if (quddTerminal != null) {
+    public Doc visitCascade(final Dart2Parser.CascadeContext context) {
+        // conditionalExpression (QUDD | DD) cascadeSection (DD cascadeSection)*
+        if (context.QUDD() != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitCascade -> qudd");
         }
-        final StringBuilder text = new StringBuilder();
-        if (cascadeContext != null) {
-            if (this.methodChaining) {
-                text.append(this.visit(cascadeContext));
-                this.currentIndentLevel++;
-                this.appendNewLinesAndIndent(text, 1);
-                text.append(this.visit(ddTerminal))
-                    .append(this.visit(cascadeSectionContext));
-                this.currentIndentLevel--;
-            } else {
-                text.append(this.visit(cascadeContext))
-                    .append(this.visit(ddTerminal))
-                    .append(this.visit(cascadeSectionContext));
-            }
-        } else if (conditionalExpressionContext != null) {
-            if (this.methodChaining) {
-                text.append(this.visit(conditionalExpressionContext));
-                this.currentIndentLevel++;
-                this.appendNewLinesAndIndent(text, 1);
-                if (ddTerminal != null) {
-                    text.append(this.visit(ddTerminal));
-                }
-                text.append(this.visit(cascadeSectionContext));
-                this.currentIndentLevel--;
-            } else {
-                text.append(this.visit(conditionalExpressionContext));
-                if (ddTerminal != null) {
-                    text.append(this.visit(ddTerminal));
-                }
-                text.append(this.visit(cascadeSectionContext));
+        final List<TerminalNode> ddTerminals = context.DD();
+        final List<Dart2Parser.CascadeSectionContext> cascadeSectionContexts = context.cascadeSection();
+        final boolean chaining = this.methodChaining;
+        final DocBuilder text = new DocBuilder();
+        final Doc headText = this.visit(context.conditionalExpression());
+        text.append(headText);
+        if (chaining) {
+            this.currentIndentLevel++;
+        }
+        boolean singleLine = headText.isSingleLine();
+        final List<Doc> sectionTexts = new ArrayList<>(cascadeSectionContexts.size());
+        for (int index = 0; index < cascadeSectionContexts.size(); index++) {
+            final DocBuilder sectionText = new DocBuilder();
+            sectionText.append(this.visit(ddTerminals.get(index)))
+                .append(this.visit(cascadeSectionContexts.get(index)));
+            final Doc section = sectionText.build();
+            singleLine = singleLine && section.isSingleLine();
+            sectionTexts.add(section);
+        }
+        if (chaining) {
+            this.currentIndentLevel--;
+        }
+        // The sections break like method chaining if the whole cascade doesn't fit in the line.
+        final boolean breakable = !chaining && singleLine && this.lineWidth < DocPrinter.UNLIMITED;
+        for (final Doc sectionText : sectionTexts) {
+            if (chaining) {
+                text.append(Doc.line(1, this.currentIndentLevel + 1));
+            } else if (breakable) {
+                text.append(Doc.softLine("", 1, this.currentIndentLevel + 1));
             }
+            text.append(sectionText);
+        }
+        Doc result = text.build();
+        if (breakable) {
+            result = Doc.group(result);
         }
-        return text.toString();
+        return result;
     }
 
     @Override
-    public String visitCascadeSection(final Dart2Parser.CascadeSectionContext context) {
+    public Doc visitCascadeSection(final Dart2Parser.CascadeSectionContext context) {
         final Dart2Parser.CascadeSelectorContext cascadeSelectorContext = context.cascadeSelector();
         final Dart2Parser.CascadeSectionTailContext cascadeSectionTailContext = context.cascadeSectionTail();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(cascadeSelectorContext))
             .append(this.visit(cascadeSectionTailContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCascadeSelector(final Dart2Parser.CascadeSelectorContext context) {
+    public Doc visitCascadeSelector(final Dart2Parser.CascadeSelectorContext context) {
         final TerminalNode obTerminal = context.OB();
         // todo: use `exprContext` and `cbTerminal` with tests.
         // final Dart2Parser.ExprContext exprContext = context.expr();
         // final TerminalNode cbTerminal = context.CB();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (obTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitCascadeSelector -> ob");
         } else {
             text.append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCascadeSectionTail(final Dart2Parser.CascadeSectionTailContext context) {
+    public Doc visitCascadeSectionTail(final Dart2Parser.CascadeSectionTailContext context) {
         final Dart2Parser.CascadeAssignmentContext cascadeAssignmentContext = context.cascadeAssignment();
         final List<Dart2Parser.SelectorContext> selectorContexts = context.selector();
         final Dart2Parser.AssignableSelectorContext assignableSelectorContext = context.assignableSelector();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (cascadeAssignmentContext != null && assignableSelectorContext == null) {
             // cascadeAssignment
             text.append(this.visit(cascadeAssignmentContext));
@@ -2821,40 +2929,40 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 throw new UnsupportedOperationException("The following parsing path is not supported yet: visitCascadeSectionTail -> assignableSelector");
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitCascadeAssignment(final Dart2Parser.CascadeAssignmentContext context) {
+    public Doc visitCascadeAssignment(final Dart2Parser.CascadeAssignmentContext context) {
         final Dart2Parser.AssignmentOperatorContext assignmentOperatorContext = context.assignmentOperator();
         final Dart2Parser.ExpressionWithoutCascadeContext expressionWithoutCascadeContext = context.expressionWithoutCascade();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(' ')
             .append(this.visit(assignmentOperatorContext))
             .append(' ')
             .append(this.visit(expressionWithoutCascadeContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitThrowExpression(final Dart2Parser.ThrowExpressionContext context) {
+    public Doc visitThrowExpression(final Dart2Parser.ThrowExpressionContext context) {
         final TerminalNode throwTerminal = context.THROW_();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(throwTerminal))
             .append(' ')
             .append(this.visit(exprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConditionalExpression(final Dart2Parser.ConditionalExpressionContext context) {
-        final Dart2Parser.IfNullExpressionContext ifNullExpressionContext = context.ifNullExpression();
+    public Doc visitConditionalExpression(final Dart2Parser.ConditionalExpressionContext context) {
+        final Dart2Parser.BinaryExpressionContext binaryExpressionContext = context.binaryExpression();
         final TerminalNode quTerminal = context.QU();
         final List<Dart2Parser.ExpressionWithoutCascadeContext> expressionWithoutCascadeContexts = context.expressionWithoutCascade();
         final TerminalNode coTerminal = context.CO();
-        final StringBuilder text = new StringBuilder();
-        text.append(this.visit(ifNullExpressionContext));
+        final DocBuilder text = new DocBuilder();
+        text.append(this.visit(binaryExpressionContext));
         if (quTerminal != null) {
             text.append(' ')
                 .append(this.visit(quTerminal))
@@ -2867,197 +2975,99 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             final Dart2Parser.ExpressionWithoutCascadeContext secondExpressionWithoutCascadeContext = expressionWithoutCascadeContexts.get(1);
             text.append(this.visit(secondExpressionWithoutCascadeContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExpressionWithoutCascade(final Dart2Parser.ExpressionWithoutCascadeContext context) {
+    public Doc visitExpressionWithoutCascade(final Dart2Parser.ExpressionWithoutCascadeContext context) {
+        // Compaction visits conditionalExpression directly.
         final Dart2Parser.AssignableExpressionContext assignableExpressionContext = context.assignableExpression();
         // todo: use `assignmentOperatorContext` and `expressionWithoutCascadeContext` with tests.
         // final Dart2Parser.AssignmentOperatorContext assignmentOperatorContext = context.assignmentOperator();
         // final Dart2Parser.ExpressionWithoutCascadeContext expressionWithoutCascadeContext = context.expressionWithoutCascade();
-        final Dart2Parser.ConditionalExpressionContext conditionalExpressionContext = context.conditionalExpression();
-        final Dart2Parser.ThrowExpressionWithoutCascadeContext throwExpressionWithoutCascadeContext = context.throwExpressionWithoutCascade();
-        final StringBuilder text = new StringBuilder();
         if (assignableExpressionContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitExpressionWithoutCascade -> assignableExpression");
-        } else if (conditionalExpressionContext != null) {
-            text.append(this.visit(conditionalExpressionContext));
-        } else if (throwExpressionWithoutCascadeContext != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitExpressionWithoutCascade -> throwExpressionWithoutCascade");
         }
-        return text.toString();
+        throw new UnsupportedOperationException("The following parsing path is not supported yet: visitExpressionWithoutCascade -> throwExpressionWithoutCascade");
     }
 
     @Override
-    public String visitIfNullExpression(final Dart2Parser.IfNullExpressionContext context) {
-        final List<Dart2Parser.LogicalOrExpressionContext> logicalOrExpressionContexts = context.logicalOrExpression();
-        final List<TerminalNode> ququTerminals = context.QUQU();
-        final StringBuilder text = new StringBuilder();
-        final Dart2Parser.LogicalOrExpressionContext firstLogicalOrExpression = logicalOrExpressionContexts.get(0);
-        text.append(this.visit(firstLogicalOrExpression));
-        for (int index = 0; index < ququTerminals.size(); index++) {
-            final TerminalNode ququTerminal = ququTerminals.get(index);
-            final Dart2Parser.LogicalOrExpressionContext logicalOrExpressionContext = logicalOrExpressionContexts.get(index + 1);
-            text.append(' ')
-                .append(this.visit(ququTerminal))
-                .append(' ')
-                .append(this.visit(logicalOrExpressionContext));
+    public Doc visitBinaryExpression(final Dart2Parser.BinaryExpressionContext context) {
+        // Compaction visits the single unaryExpression directly, so we only get here with operators.
+        final TerminalNode superTerminal = context.SUPER_();
+        if (superTerminal != null) {
+            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBinaryExpression -> super");
         }
-        return text.toString();
-    }
-
-    @Override
-    public String visitLogicalOrExpression(final Dart2Parser.LogicalOrExpressionContext context) {
-        final List<Dart2Parser.LogicalAndExpressionContext> logicalAndExpressionContexts = context.logicalAndExpression();
-        final List<TerminalNode> ppTerminals = context.PP();
-        final Dart2Parser.LogicalAndExpressionContext firstLogicalAndExpressionContext = logicalAndExpressionContexts.get(0);
-        final StringBuilder text = new StringBuilder();
-        text.append(this.visit(firstLogicalAndExpressionContext));
-        for (int index = 0; index < ppTerminals.size(); index++) {
-            final TerminalNode ppTerminal = ppTerminals.get(index);
-            final Dart2Parser.LogicalAndExpressionContext logicalAndExpressionContext = logicalAndExpressionContexts.get(index + 1);
+        // The operators and the operands alternate, except that typeTest and typeCast have their own types.
+        final DocBuilder text = new DocBuilder();
+        text.append(this.visit(context.getChild(0)));
+        for (int index = 1; index < context.getChildCount(); index++) {
             text.append(' ')
-                .append(this.visit(ppTerminal))
-                .append(' ')
-                .append(this.visit(logicalAndExpressionContext));
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitLogicalAndExpression(final Dart2Parser.LogicalAndExpressionContext context) {
-        final List<Dart2Parser.EqualityExpressionContext> equalityExpressionContexts = context.equalityExpression();
-        final List<TerminalNode> aaTerminals = context.AA();
-        final StringBuilder text = new StringBuilder();
-        final Dart2Parser.EqualityExpressionContext firstEqualityExpressionContext = equalityExpressionContexts.get(0);
-        text.append(this.visit(firstEqualityExpressionContext));
-        for (int index = 0; index < aaTerminals.size(); index++) {
-            final TerminalNode aaTerminal = aaTerminals.get(index);
-            final Dart2Parser.EqualityExpressionContext equalityExpressionContext = equalityExpressionContexts.get(index + 1);
-            text.append(' ')
-                .append(this.visit(aaTerminal))
-                .append(' ')
-                .append(this.visit(equalityExpressionContext));
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitEqualityExpression(final Dart2Parser.EqualityExpressionContext context) {
-        final List<Dart2Parser.RelationalExpressionContext> relationalExpressionContexts = context.relationalExpression();
-        final Dart2Parser.EqualityOperatorContext equalityOperatorContext = context.equalityOperator();
-        final TerminalNode superTerminal = context.SUPER_();
-        final StringBuilder text = new StringBuilder();
-        final Dart2Parser.RelationalExpressionContext firstRelationalExpressionContext = relationalExpressionContexts.get(0);
-        final String firstRelationalExpressionText = this.visit(firstRelationalExpressionContext);
-        if (superTerminal == null) {
-            text.append(firstRelationalExpressionText);
-            if (equalityOperatorContext != null) {
-                text.append(' ')
-                    .append(this.visit(equalityOperatorContext))
-                    .append(' ');
-                final Dart2Parser.RelationalExpressionContext secondRelationalExpressionContext = relationalExpressionContexts.get(1);
-                text.append(this.visit(secondRelationalExpressionContext));
-            }
-        } else {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitEqualityExpression -> super");
+                .append(this.visit(context.getChild(index)));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitEqualityOperator(final Dart2Parser.EqualityOperatorContext context) {
+    public Doc visitEqualityOperator(final Dart2Parser.EqualityOperatorContext context) {
         final TerminalNode eeTerminal = context.EE();
         final TerminalNode neTerminal = context.NE();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (eeTerminal != null) {
             text.append(this.visit(eeTerminal));
         } else {
             text.append(this.visit(neTerminal));
         }
-        return text.toString();
-    }
-
-    @Override
-    public String visitRelationalExpression(final Dart2Parser.RelationalExpressionContext context) {
-        final List<Dart2Parser.BitwiseOrExpressionContext> bitwiseOrExpressionContexts = context.bitwiseOrExpression();
-        final Dart2Parser.TypeTestContext typeTestContext = context.typeTest();
-        final Dart2Parser.TypeCastContext typeCastContext = context.typeCast();
-        final Dart2Parser.RelationalOperatorContext relationalOperatorContext = context.relationalOperator();
-        final TerminalNode superTerminal = context.SUPER_();
-        final StringBuilder text = new StringBuilder();
-        if (superTerminal == null) {
-            // bitwiseOrExpression (typeTest | typeCast | relationalOperator bitwiseOrExpression)?
-            final Dart2Parser.BitwiseOrExpressionContext firstBitwiseOrExpression = bitwiseOrExpressionContexts.get(0);
-            text.append(this.visit(firstBitwiseOrExpression));
-            if (typeTestContext != null) {
-                text.append(' ')
-                    .append(this.visit(typeTestContext));
-            } else if (typeCastContext != null) {
-                text.append(' ')
-                    .append(this.visit(typeCastContext));
-            } else if (relationalOperatorContext != null) {
-                text.append(' ')
-                    .append(this.visit(relationalOperatorContext))
-                    .append(' ');
-                final Dart2Parser.BitwiseOrExpressionContext secondBitwiseOrExpression = bitwiseOrExpressionContexts.get(1);
-                text.append(this.visit(secondBitwiseOrExpression));
-            }
-        } else {
-            // SUPER_ relationalOperator bitwiseOrExpression
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitRelationalExpression -> super");
-        }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTypeCast(final Dart2Parser.TypeCastContext context) {
+    public Doc visitTypeCast(final Dart2Parser.TypeCastContext context) {
         final Dart2Parser.AsOperatorContext asOperatorContext = context.asOperator();
         final Dart2Parser.TypeNotVoidContext typeNotVoidContext = context.typeNotVoid();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(asOperatorContext))
             .append(' ')
             .append(this.visit(typeNotVoidContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAsOperator(final Dart2Parser.AsOperatorContext context) {
+    public Doc visitAsOperator(final Dart2Parser.AsOperatorContext context) {
         return this.visit(context.AS_());
     }
 
     @Override
-    public String visitTypeTest(final Dart2Parser.TypeTestContext context) {
+    public Doc visitTypeTest(final Dart2Parser.TypeTestContext context) {
         final Dart2Parser.IsOperatorContext isOperatorContext = context.isOperator();
         final Dart2Parser.TypeNotVoidContext typeNotVoidContext = context.typeNotVoid();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(isOperatorContext))
             .append(' ')
             .append(this.visit(typeNotVoidContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIsOperator(final Dart2Parser.IsOperatorContext context) {
+    public Doc visitIsOperator(final Dart2Parser.IsOperatorContext context) {
         final TerminalNode isTerminal = context.IS_();
         final TerminalNode notTerminal = context.NOT();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(isTerminal));
         if (notTerminal != null) {
             text.append(' ')
                 .append(this.visit(notTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitRelationalOperator(final Dart2Parser.RelationalOperatorContext context) {
+    public Doc visitRelationalOperator(final Dart2Parser.RelationalOperatorContext context) {
         final TerminalNode gtTerminal = context.GT();
         final TerminalNode eqTerminal = context.EQ();
         final TerminalNode lteTerminal = context.LTE();
         final TerminalNode ltTerminal = context.LT();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (eqTerminal != null) {
             text.append(this.visit(gtTerminal))
                 .append(this.visit(eqTerminal));
@@ -3068,158 +3078,45 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             text.append(this.visit(ltTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitBitwiseOrExpression(final Dart2Parser.BitwiseOrExpressionContext context) {
-        final List<Dart2Parser.BitwiseXorExpressionContext> bitwiseXorExpressionContexts = context.bitwiseXorExpression();
-        final List<TerminalNode> pTerminals = context.P();
-        final TerminalNode superTerminal = context.SUPER_();
-        if (!pTerminals.isEmpty()) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBitwiseOrExpression -> p");
-        }
-        if (superTerminal != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBitwiseOrExpression -> super");
-        }
-        final StringBuilder text = new StringBuilder();
-        for (final Dart2Parser.BitwiseXorExpressionContext bitwiseXorExpression : bitwiseXorExpressionContexts) {
-            final String bitwiseXorExpressionText = this.visit(bitwiseXorExpression);
-            text.append(bitwiseXorExpressionText);
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitBitwiseXorExpression(final Dart2Parser.BitwiseXorExpressionContext context) {
-        final List<Dart2Parser.BitwiseAndExpressionContext> bitwiseAndExpressionContexts = context.bitwiseAndExpression();
-        final List<TerminalNode> cirTerminals = context.CIR();
-        final TerminalNode superTerminal = context.SUPER_();
-        if (!cirTerminals.isEmpty()) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBitwiseXorExpression -> cir");
-        }
-        if (superTerminal != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBitwiseXorExpression -> super");
-        }
-        final StringBuilder text = new StringBuilder();
-        for (final Dart2Parser.BitwiseAndExpressionContext bitwiseAndExpression : bitwiseAndExpressionContexts) {
-            final String bitwiseAndExpressionText = this.visit(bitwiseAndExpression);
-            text.append(bitwiseAndExpressionText);
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitBitwiseAndExpression(final Dart2Parser.BitwiseAndExpressionContext context) {
-        final List<Dart2Parser.ShiftExpressionContext> shiftExpressionContexts = context.shiftExpression();
-        final List<TerminalNode> aTerminals = context.A();
-        final TerminalNode superTerminal = context.SUPER_();
-        final StringBuilder text = new StringBuilder();
-        if (superTerminal == null) {
-            // shiftExpression (A shiftExpression)*
-            final Dart2Parser.ShiftExpressionContext firstShiftExpressionContext = shiftExpressionContexts.get(0);
-            text.append(this.visit(firstShiftExpressionContext));
-            for (int index = 0; index < aTerminals.size(); index++) {
-                final TerminalNode aTerminal = aTerminals.get(index);
-                final Dart2Parser.ShiftExpressionContext shiftExpressionContext = shiftExpressionContexts.get(index + 1);
-                text.append(' ')
-                    .append(this.visit(aTerminal))
-                    .append(' ')
-                    .append(this.visit(shiftExpressionContext));
-            }
+    public Doc visitShiftOperator(final Dart2Parser.ShiftOperatorContext context) {
+        final TerminalNode ltltTerminal = context.LTLT();
+        final List<TerminalNode> gtTerminals = context.GT();
+        final DocBuilder text = new DocBuilder();
+        if (ltltTerminal != null) {
+            text.append(this.visit(ltltTerminal));
         } else {
-            // SUPER_ ( A shiftExpression)+
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitBitwiseAndExpression -> SUPER_ ( A shiftExpression)+");
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitShiftExpression(final Dart2Parser.ShiftExpressionContext context) {
-        final List<Dart2Parser.AdditiveExpressionContext> additiveExpressionContexts = context.additiveExpression();
-        final List<Dart2Parser.ShiftOperatorContext> shiftOperatorContexts = context.shiftOperator();
-        final TerminalNode superTerminal = context.SUPER_();
-        if (!shiftOperatorContexts.isEmpty()) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitShiftExpression -> shiftOperator");
-        }
-        if (superTerminal != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitShiftExpression -> super");
-        }
-        final StringBuilder text = new StringBuilder();
-        for (final Dart2Parser.AdditiveExpressionContext additiveExpression : additiveExpressionContexts) {
-            final String additiveExpressionText = this.visit(additiveExpression);
-            text.append(additiveExpressionText);
-        }
-        return text.toString();
-    }
-
-    @Override
-    public String visitAdditiveExpression(final Dart2Parser.AdditiveExpressionContext context) {
-        final List<Dart2Parser.MultiplicativeExpressionContext> multiplicativeExpressionContexts = context.multiplicativeExpression();
-        final List<Dart2Parser.AdditiveOperatorContext> additiveOperatorContexts = context.additiveOperator();
-        final TerminalNode superTerminal = context.SUPER_();
-        if (superTerminal != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitAdditiveExpression -> super");
-        }
-        final StringBuilder text = new StringBuilder();
-        for (int index = 0; index < multiplicativeExpressionContexts.size(); index++) {
-            final Dart2Parser.MultiplicativeExpressionContext multiplicativeExpression = multiplicativeExpressionContexts.get(index);
-            final String multiplicativeExpressionText = this.visit(multiplicativeExpression);
-            text.append(multiplicativeExpressionText);
-            if (index < additiveOperatorContexts.size()) {
-                final Dart2Parser.AdditiveOperatorContext additiveOperatorContext = additiveOperatorContexts.get(index);
-                text.append(' ')
-                    .append(this.visit(additiveOperatorContext))
-                    .append(' ');
+            // The lexer splits `>>` and `>>>` into `>` tokens because of the type arguments like `List<List<int>>`.
+            for (final TerminalNode gtTerminal : gtTerminals) {
+                text.append(this.visit(gtTerminal));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAdditiveOperator(final Dart2Parser.AdditiveOperatorContext context) {
+    public Doc visitAdditiveOperator(final Dart2Parser.AdditiveOperatorContext context) {
         final TerminalNode plTerminal = context.PL();
         final TerminalNode minusTerminal = context.MINUS();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (plTerminal != null) {
             text.append(this.visit(plTerminal));
         } else {
             text.append(this.visit(minusTerminal));
         }
-        return text.toString();
-    }
-
-    @Override
-    public String visitMultiplicativeExpression(final Dart2Parser.MultiplicativeExpressionContext context) {
-        final List<Dart2Parser.UnaryExpressionContext> unaryExpressionContexts = context.unaryExpression();
-        final List<Dart2Parser.MultiplicativeOperatorContext> multiplicativeOperatorContexts = context.multiplicativeOperator();
-        final TerminalNode superTerminal = context.SUPER_();
-        final StringBuilder text = new StringBuilder();
-        if (superTerminal == null) {
-            final Dart2Parser.UnaryExpressionContext firstUnaryExpression = unaryExpressionContexts.get(0);
-            final String firstUnaryExpressionText = this.visit(firstUnaryExpression);
-            text.append(firstUnaryExpressionText);
-            for (int index = 0; index < multiplicativeOperatorContexts.size(); index++) {
-                text.append(' ');
-                final Dart2Parser.MultiplicativeOperatorContext multiplicativeOperatorContext = multiplicativeOperatorContexts.get(index);
-                text.append(this.visit(multiplicativeOperatorContext))
-                    .append(' ');
-                final Dart2Parser.UnaryExpressionContext unaryExpressionContext = unaryExpressionContexts.get(index + 1);
-                text.append(this.visit(unaryExpressionContext));
-            }
-        } else {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitMultiplicativeExpression -> super");
-        }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMultiplicativeOperator(final Dart2Parser.MultiplicativeOperatorContext context) {
+    public Doc visitMultiplicativeOperator(final Dart2Parser.MultiplicativeOperatorContext context) {
         final TerminalNode stTerminal = context.ST();
         final TerminalNode slTerminal = context.SL();
         final TerminalNode pcTerminal = context.PC();
         final TerminalNode sqsTerminal = context.SQS();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (stTerminal != null) {
             text.append(this.visit(stTerminal));
         } else if (slTerminal != null) {
@@ -3229,30 +3126,25 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             text.append(this.visit(sqsTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitUnaryExpression(final Dart2Parser.UnaryExpressionContext context) {
+    public Doc visitUnaryExpression(final Dart2Parser.UnaryExpressionContext context) {
         final Dart2Parser.PrefixOperatorContext prefixOperatorContext = context.prefixOperator();
         final Dart2Parser.UnaryExpressionContext unaryExpressionContext = context.unaryExpression();
-        final Dart2Parser.AwaitExpressionContext awaitExpressionContext = context.awaitExpression();
-        final Dart2Parser.PostfixExpressionContext postfixExpressionContext = context.postfixExpression();
         // todo: use `minusOperatorContext` and `tildeOperatorContext` with tests.
         // final Dart2Parser.MinusOperatorContext minusOperatorContext = context.minusOperator();
         // final Dart2Parser.TildeOperatorContext tildeOperatorContext = context.tildeOperator();
         final TerminalNode superTerminal = context.SUPER_();
         final Dart2Parser.IncrementOperatorContext incrementOperatorContext = context.incrementOperator();
         final Dart2Parser.AssignableExpressionContext assignableExpressionContext = context.assignableExpression();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
+        // Compaction visits awaitExpression and postfixExpression directly.
         if (prefixOperatorContext != null) {
             // prefixOperator unaryExpression
             text.append(this.visit(prefixOperatorContext))
                 .append(this.visit(unaryExpressionContext));
-        } else if (awaitExpressionContext != null) {
-            text.append(this.visit(awaitExpressionContext));
-        } else if (postfixExpressionContext != null) {
-            text.append(this.visit(postfixExpressionContext));
         } else if (superTerminal != null) {
             // ( minusOperator | tildeOperator) SUPER_
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitUnaryExpression -> ( minusOperator | tildeOperator) SUPER_");
@@ -3261,15 +3153,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             text.append(this.visit(incrementOperatorContext))
                 .append(this.visit(assignableExpressionContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPrefixOperator(final Dart2Parser.PrefixOperatorContext context) {
+    public Doc visitPrefixOperator(final Dart2Parser.PrefixOperatorContext context) {
         final Dart2Parser.MinusOperatorContext minusOperatorContext = context.minusOperator();
         final Dart2Parser.NegationOperatorContext negationOperatorContext = context.negationOperator();
         final Dart2Parser.TildeOperatorContext tildeOperatorContext = context.tildeOperator();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (minusOperatorContext != null) {
             text.append(this.visit(minusOperatorContext));
         } else if (negationOperatorContext != null) {
@@ -3277,51 +3169,51 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else {
             text.append(this.visit(tildeOperatorContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMinusOperator(final Dart2Parser.MinusOperatorContext context) {
+    public Doc visitMinusOperator(final Dart2Parser.MinusOperatorContext context) {
         final TerminalNode minusTerminal = context.MINUS();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(minusTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNegationOperator(final Dart2Parser.NegationOperatorContext context) {
+    public Doc visitNegationOperator(final Dart2Parser.NegationOperatorContext context) {
         final TerminalNode notTerminal = context.NOT();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(notTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitTildeOperator(final Dart2Parser.TildeOperatorContext context) {
+    public Doc visitTildeOperator(final Dart2Parser.TildeOperatorContext context) {
         final TerminalNode sqigTerminal = context.SQUIG();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(sqigTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAwaitExpression(final Dart2Parser.AwaitExpressionContext context) {
+    public Doc visitAwaitExpression(final Dart2Parser.AwaitExpressionContext context) {
         final TerminalNode awaitTerminal = context.AWAIT_();
         final Dart2Parser.UnaryExpressionContext unaryExpressionContext = context.unaryExpression();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(awaitTerminal))
             .append(' ')
             .append(this.visit(unaryExpressionContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPostfixExpression(final Dart2Parser.PostfixExpressionContext context) {
+    public Doc visitPostfixExpression(final Dart2Parser.PostfixExpressionContext context) {
         final Dart2Parser.AssignableExpressionContext assignableExpressionContext = context.assignableExpression();
         final Dart2Parser.PostfixOperatorContext postfixOperatorContext = context.postfixOperator();
         final Dart2Parser.PrimaryContext primaryContext = context.primary();
         final List<Dart2Parser.SelectorContext> selectorContexts = context.selector();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (assignableExpressionContext != null) {
             text.append(this.visit(assignableExpressionContext))
                 .append(this.visit(postfixOperatorContext));
@@ -3332,49 +3224,49 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         for (final Dart2Parser.SelectorContext selectorContext : selectorContexts) {
             text.append(this.visit(selectorContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPostfixOperator(final Dart2Parser.PostfixOperatorContext context) {
+    public Doc visitPostfixOperator(final Dart2Parser.PostfixOperatorContext context) {
         final Dart2Parser.IncrementOperatorContext incrementOperatorContext = context.incrementOperator();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(incrementOperatorContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIncrementOperator(final Dart2Parser.IncrementOperatorContext context) {
+    public Doc visitIncrementOperator(final Dart2Parser.IncrementOperatorContext context) {
         final TerminalNode plplTerminal = context.PLPL();
         final TerminalNode mmTerminal = context.MM();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (plplTerminal != null) {
             text.append(this.visit(plplTerminal));
         } else {
             text.append(this.visit(mmTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSelector(final Dart2Parser.SelectorContext context) {
+    public Doc visitSelector(final Dart2Parser.SelectorContext context) {
         final TerminalNode notTerminal = context.NOT();
         final Dart2Parser.AssignableSelectorContext assignableSelectorContext = context.assignableSelector();
         final Dart2Parser.ArgumentPartContext argumentPartContext = context.argumentPart();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (notTerminal != null) {
             text.append(this.visit(notTerminal));
         } else if (assignableSelectorContext != null) {
             text.append(this.visit(assignableSelectorContext));
         } else {
-            final String argumentPartText = this.visit(argumentPartContext);
+            final Doc argumentPartText = this.visit(argumentPartContext);
             text.append(argumentPartText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitAssignableSelector(final Dart2Parser.AssignableSelectorContext context) {
+    public Doc visitAssignableSelector(final Dart2Parser.AssignableSelectorContext context) {
         final Dart2Parser.UnconditionalAssignableSelectorContext unconditionalAssignableSelectorContext = context.unconditionalAssignableSelector();
         final TerminalNode qudTerminal = context.QUD();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
@@ -3382,7 +3274,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final TerminalNode obTerminal = context.OB();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cbTerminal = context.CB();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (unconditionalAssignableSelectorContext != null) {
             // unconditionalAssignableSelector
             text.append(this.visit(unconditionalAssignableSelectorContext));
@@ -3397,17 +3289,17 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(exprContext))
                 .append(this.visit(cbTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitUnconditionalAssignableSelector(final Dart2Parser.UnconditionalAssignableSelectorContext context) {
+    public Doc visitUnconditionalAssignableSelector(final Dart2Parser.UnconditionalAssignableSelectorContext context) {
         final TerminalNode obTerminal = context.OB();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cbTerminal = context.CB();
         final TerminalNode dTerminal = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (obTerminal != null) {
             // OB expr CB
             text.append(this.visit(obTerminal))
@@ -3426,61 +3318,41 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                     .append(this.visit(identifierContext));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitArgumentPart(final Dart2Parser.ArgumentPartContext context) {
+    public Doc visitArgumentPart(final Dart2Parser.ArgumentPartContext context) {
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeArgumentsContext != null) {
             text.append(this.visit(typeArgumentsContext));
         }
         if (argumentsContext != null) {
-            final String argumentsText = this.visit(argumentsContext);
+            final Doc argumentsText = this.visit(argumentsContext);
             text.append(argumentsText);
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitPrimary(final Dart2Parser.PrimaryContext context) {
-        final Dart2Parser.ThisExpressionContext thisExpressionContext = context.thisExpression();
+    public Doc visitPrimary(final Dart2Parser.PrimaryContext context) {
+        // The alternatives with a single child never get here because Compaction visits the child directly.
         final TerminalNode superTerminal = context.SUPER_();
         final Dart2Parser.UnconditionalAssignableSelectorContext unconditionalAssignableSelectorContext = context.unconditionalAssignableSelector();
         final Dart2Parser.ArgumentPartContext argumentPartContext = context.argumentPart();
-        final Dart2Parser.FunctionExpressionContext functionExpressionContext = context.functionExpression();
-        final Dart2Parser.LiteralContext literalContext = context.literal();
-        final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final Dart2Parser.NewExpressionContext newExpressionContext = context.newExpression();
-        final Dart2Parser.ConstObjectExpressionContext constObjectExpressionContext = context.constObjectExpression();
-        final Dart2Parser.ConstructorInvocationContext constructorInvocationContext = context.constructorInvocation();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cpTerminal = context.CP();
-        final StringBuilder text = new StringBuilder();
-        if (thisExpressionContext != null) {
-            text.append(this.visit(thisExpressionContext));
-        } else if (unconditionalAssignableSelectorContext != null) {
+        final DocBuilder text = new DocBuilder();
+        if (unconditionalAssignableSelectorContext != null) {
             text.append(this.visit(superTerminal))
                 .append(this.visit(unconditionalAssignableSelectorContext));
         } else if (argumentPartContext != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitPrimary -> argumentPart");
-        } else if (functionExpressionContext != null) {
-            text.append(this.visit(functionExpressionContext));
-        } else if (literalContext != null) {
-            text.append(this.visit(literalContext));
-        } else if (identifierContext != null) {
-            text.append(this.visit(identifierContext));
-        } else if (newExpressionContext != null) {
-            text.append(this.visit(newExpressionContext));
-        } else if (constObjectExpressionContext != null) {
-            text.append(this.visit(constObjectExpressionContext));
-        } else if (constructorInvocationContext != null) {
-            text.append(this.visit(constructorInvocationContext));
         } else if (opTerminal != null) {
-            final boolean shouldIndent = this.hasDescendant(exprContext, Dart2Parser.ArgumentsContext.class);
+            final boolean shouldIndent = this.ruleIndex.hasDescendant(exprContext, Dart2Parser.RULE_arguments);
             if (shouldIndent) {
                 text.append(this.visit(opTerminal));
                 this.currentIndentLevel++;
@@ -3495,55 +3367,55 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                     .append(this.visit(cpTerminal));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstructorInvocation(final Dart2Parser.ConstructorInvocationContext context) {
+    public Doc visitConstructorInvocation(final Dart2Parser.ConstructorInvocationContext context) {
         final Dart2Parser.TypeNameContext typeNameContext = context.typeName();
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final TerminalNode dTerminal = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(typeNameContext))
             .append(this.visit(typeArgumentsContext))
             .append(this.visit(dTerminal))
             .append(this.visit(identifierContext))
             .append(this.visit(argumentsContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitThisExpression(final Dart2Parser.ThisExpressionContext context) {
+    public Doc visitThisExpression(final Dart2Parser.ThisExpressionContext context) {
         final TerminalNode thisTerminal = context.THIS_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(thisTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstObjectExpression(final Dart2Parser.ConstObjectExpressionContext context) {
+    public Doc visitConstObjectExpression(final Dart2Parser.ConstObjectExpressionContext context) {
         final TerminalNode constTerminal = context.CONST_();
         final Dart2Parser.ConstructorDesignationContext constructorDesignationContext = context.constructorDesignation();
         final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(constTerminal))
             .append(' ')
             .append(this.visit(constructorDesignationContext))
             .append(this.visit(argumentsContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitConstructorDesignation(final Dart2Parser.ConstructorDesignationContext context) {
+    public Doc visitConstructorDesignation(final Dart2Parser.ConstructorDesignationContext context) {
         final Dart2Parser.TypeIdentifierContext typeIdentifierContext = context.typeIdentifier();
         final Dart2Parser.QualifiedNameContext qualifiedNameContext = context.qualifiedName();
         final Dart2Parser.TypeNameContext typeNameContext = context.typeName();
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final TerminalNode dTerminal = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeIdentifierContext != null) {
             text.append(this.visit(typeIdentifierContext));
         } else if (qualifiedNameContext != null) {
@@ -3557,15 +3429,15 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                     .append(this.visit(identifierContext));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitQualifiedName(final Dart2Parser.QualifiedNameContext context) {
+    public Doc visitQualifiedName(final Dart2Parser.QualifiedNameContext context) {
         final List<Dart2Parser.TypeIdentifierContext> typeIdentifierContexts = context.typeIdentifier();
         final List<TerminalNode> dTerminals = context.D();
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (typeIdentifierContexts.size() == 1) {
             // typeIdentifier D identifier
             final Dart2Parser.TypeIdentifierContext typeIdentifierContext = typeIdentifierContexts.get(0);
@@ -3585,22 +3457,22 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 .append(this.visit(secondDTerminal))
                 .append(this.visit(identifierContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionExpression(final Dart2Parser.FunctionExpressionContext context) {
+    public Doc visitFunctionExpression(final Dart2Parser.FunctionExpressionContext context) {
         final Dart2Parser.FormalParameterPartContext formalParameterPartContext = context.formalParameterPart();
         final Dart2Parser.FunctionExpressionBodyContext functionExpressionBodyContext = context.functionExpressionBody();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(formalParameterPartContext))
             .append(' ')
             .append(this.visit(functionExpressionBodyContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitFunctionExpressionBody(final Dart2Parser.FunctionExpressionBodyContext context) {
+    public Doc visitFunctionExpressionBody(final Dart2Parser.FunctionExpressionBodyContext context) {
         final TerminalNode asyncTerminal = context.ASYNC_();
         final TerminalNode egTerminal = context.EG();
         final Dart2Parser.ExprContext exprContext = context.expr();
@@ -3610,7 +3482,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         if (stTerminal != null) {
             throw new UnsupportedOperationException("The following parsing path is not supported yet: visitFunctionExpressionBody -> st");
         }
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (egTerminal != null) {
             // ASYNC_? EG expr
             if (asyncTerminal != null) {
@@ -3631,11 +3503,11 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             }
             text.append(this.visit(blockContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIdentifier(final Dart2Parser.IdentifierContext context) {
+    public Doc visitIdentifier(final Dart2Parser.IdentifierContext context) {
         final TerminalNode identifierTerminal = context.IDENTIFIER();
         final TerminalNode abstractTerminal = context.ABSTRACT_();
         final TerminalNode asTerminal = context.AS_();
@@ -3669,7 +3541,7 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         final TerminalNode awaitTerminal = context.AWAIT_();
         final TerminalNode yieldTerminal = context.YIELD_();
         final TerminalNode nativeTerminal = context.NATIVE_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (identifierTerminal != null) {
             text.append(this.visit(identifierTerminal));
         } else if (abstractTerminal != null) {
@@ -3737,85 +3609,57 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (nativeTerminal != null) {
             text.append(this.visit(nativeTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLiteral(final Dart2Parser.LiteralContext context) {
-        final Dart2Parser.NullLiteralContext nullLiteralContext = context.nullLiteral();
-        final Dart2Parser.BooleanLiteralContext booleanLiteralContext = context.booleanLiteral();
-        final Dart2Parser.NumericLiteralContext numericLiteralContext = context.numericLiteral();
-        final Dart2Parser.StringLiteralContext stringLiteralContext = context.stringLiteral();
-        final Dart2Parser.SymbolLiteralContext symbolLiteralContext = context.symbolLiteral();
-        final Dart2Parser.ListLiteralContext listLiteralContext = context.listLiteral();
-        final Dart2Parser.SetOrMapLiteralContext setOrMapLiteralContext = context.setOrMapLiteral();
-        if (symbolLiteralContext != null) {
-            throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLiteral -> symbolLiteral");
-        }
-        final StringBuilder text = new StringBuilder();
-        if (nullLiteralContext != null) {
-            text.append(this.visit(nullLiteralContext));
-        }
-        if (booleanLiteralContext != null) {
-            text.append(this.visit(booleanLiteralContext));
-        }
-        if (stringLiteralContext != null) {
-            text.append(this.visit(stringLiteralContext));
-        }
-        if (setOrMapLiteralContext != null) {
-            text.append(this.visit(setOrMapLiteralContext));
-        }
-        if (listLiteralContext != null) {
-            text.append(this.visit(listLiteralContext));
-        }
-        if (numericLiteralContext != null) {
-            text.append(this.visit(numericLiteralContext));
-        }
-        return text.toString();
+    public Doc visitLiteral(final Dart2Parser.LiteralContext context) {
+        // Compaction visits the other literals directly, so we only get here with the symbol literal.
+        throw new UnsupportedOperationException("The following parsing path is not supported yet: visitLiteral -> symbolLiteral");
     }
 
     @Override
-    public String visitNumericLiteral(final Dart2Parser.NumericLiteralContext context) {
+    public Doc visitNumericLiteral(final Dart2Parser.NumericLiteralContext context) {
         final TerminalNode numberTerminal = context.NUMBER();
         final TerminalNode hexNumberTerminal = context.HEX_NUMBER();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (numberTerminal == null) {
             text.append(this.visit(hexNumberTerminal));
         } else {
             text.append(this.visit(numberTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitBooleanLiteral(final Dart2Parser.BooleanLiteralContext context) {
+    public Doc visitBooleanLiteral(final Dart2Parser.BooleanLiteralContext context) {
         final TerminalNode trueTerminal = context.TRUE_();
         final TerminalNode falseTerminal = context.FALSE_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (trueTerminal == null) {
             text.append(this.visit(falseTerminal));
         } else {
             text.append(this.visit(trueTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNullLiteral(final Dart2Parser.NullLiteralContext context) {
+    public Doc visitNullLiteral(final Dart2Parser.NullLiteralContext context) {
         final TerminalNode nullTerminal = context.NULL_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(nullTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitListLiteral(final Dart2Parser.ListLiteralContext context) {
+    public Doc visitListLiteral(final Dart2Parser.ListLiteralContext context) {
         final TerminalNode constTerminal = context.CONST_();
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final TerminalNode obTerminal = context.OB();
         final Dart2Parser.ElementsContext elementsContext = context.elements();
         final TerminalNode cbTerminal = context.CB();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (constTerminal != null) {
             text.append(this.visit(constTerminal))
                 .append(' ');
@@ -3825,24 +3669,31 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         }
         text.append(this.visit(obTerminal));
         if (elementsContext != null) {
-            this.currentIndentLevel++;
-            this.appendNewLinesAndIndent(text, 1);
-            text.append(this.visit(elementsContext));
-            this.currentIndentLevel--;
-            this.appendNewLinesAndIndent(text, 1);
+            if (this.fitsElements(elementsContext, elementsContext.element().size(), elementsContext.C().size())) {
+                this.currentIndentLevel++;
+                final Doc elementsText = this.visit(elementsContext);
+                this.currentIndentLevel--;
+                text.append(this.indentIfLong(elementsText));
+            } else {
+                this.currentIndentLevel++;
+                this.appendNewLinesAndIndent(text, 1);
+                text.append(this.visit(elementsContext));
+                this.currentIndentLevel--;
+                this.appendNewLinesAndIndent(text, 1);
+            }
         }
         text.append(this.visit(cbTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSetOrMapLiteral(final Dart2Parser.SetOrMapLiteralContext context) {
+    public Doc visitSetOrMapLiteral(final Dart2Parser.SetOrMapLiteralContext context) {
         final TerminalNode constTerminal = context.CONST_();
         final Dart2Parser.TypeArgumentsContext typeArgumentsContext = context.typeArguments();
         final TerminalNode obcTerminal = context.OBC();
         final Dart2Parser.ElementsContext elementsContext = context.elements();
         final TerminalNode cbcTerminal = context.CBC();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (constTerminal != null) {
             text.append(this.visit(constTerminal))
                 .append(' ');
@@ -3862,39 +3713,44 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             this.appendNewLinesAndIndent(text, 1);
             text.append(this.visit(cbcTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitElements(final Dart2Parser.ElementsContext context) {
+    public Doc visitElements(final Dart2Parser.ElementsContext context) {
         final List<Dart2Parser.ElementContext> elementContexts = context.element();
         final List<TerminalNode> cTerminals = context.C();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
+        final boolean fits = this.fitsElements(context, elementContexts.size(), cTerminals.size());
         final Dart2Parser.ElementContext firstElementContext = elementContexts.get(0);
-        final String firstElementText = this.visit(firstElementContext);
+        final Doc firstElementText = this.visit(firstElementContext);
         text.append(firstElementText);
         for (int index = 1; index < elementContexts.size(); index++) {
             final Dart2Parser.ElementContext elementContext = elementContexts.get(index);
             final TerminalNode cTerminal = cTerminals.get(index - 1);
             text.append(this.visit(cTerminal));
-            this.appendNewLinesAndIndent(text, 1);
+            if (fits) {
+                text.append(Doc.softLine(" ", 1, this.currentIndentLevel));
+            } else {
+                this.appendNewLinesAndIndent(text, 1);
+            }
             text.append(this.visit(elementContext));
         }
         if (elementContexts.size() == cTerminals.size()) {
             final TerminalNode cTerminal = cTerminals.get(cTerminals.size() - 1);
             text.append(this.visit(cTerminal));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitElement(final Dart2Parser.ElementContext context) {
+    public Doc visitElement(final Dart2Parser.ElementContext context) {
         final Dart2Parser.ExpressionElementContext expressionElementContext = context.expressionElement();
         final Dart2Parser.MapElementContext mapElementContext = context.mapElement();
         final Dart2Parser.SpreadElementContext spreadElementContext = context.spreadElement();
         final Dart2Parser.IfElementContext ifElementContext = context.ifElement();
         final Dart2Parser.ForElementContext forElementContext = context.forElement();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (expressionElementContext != null) {
             text.append(this.visit(expressionElementContext));
         } else if (mapElementContext != null) {
@@ -3906,18 +3762,18 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
         } else if (forElementContext != null) {
             text.append(this.visit(forElementContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitForElement(final Dart2Parser.ForElementContext context) {
+    public Doc visitForElement(final Dart2Parser.ForElementContext context) {
         final TerminalNode awaitTerminal = context.AWAIT_();
         final TerminalNode forTerminal = context.FOR_();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ForLoopPartsContext forLoopPartsContext = context.forLoopParts();
         final TerminalNode cpTerminal = context.CP();
         final Dart2Parser.ElementContext elementContext = context.element();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (awaitTerminal != null) {
             text.append(this.visit(awaitTerminal))
                 .append(' ');
@@ -3929,18 +3785,18 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             .append(this.visit(cpTerminal))
             .append(' ')
             .append(this.visit(elementContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitIfElement(final Dart2Parser.IfElementContext context) {
+    public Doc visitIfElement(final Dart2Parser.IfElementContext context) {
         final TerminalNode ifTerminal = context.IF_();
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ExprContext exprContext = context.expr();
         final TerminalNode cpTerminal = context.CP();
         final List<Dart2Parser.ElementContext> elementContexts = context.element();
         final TerminalNode elseTerminal = context.ELSE_();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(ifTerminal))
             .append(' ')
             .append(this.visit(opTerminal))
@@ -3956,88 +3812,77 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
             final Dart2Parser.ElementContext secondElementContext = elementContexts.get(1);
             text.append(this.visit(secondElementContext));
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitSpreadElement(final Dart2Parser.SpreadElementContext context) {
+    public Doc visitSpreadElement(final Dart2Parser.SpreadElementContext context) {
         final TerminalNode dddTerminal = context.DDD();
         final TerminalNode dddqTerminal = context.DDDQ();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (dddTerminal != null) {
             text.append(this.visit(dddTerminal));
         } else if (dddqTerminal != null) {
             text.append(this.visit(dddqTerminal));
         }
         text.append(this.visit(exprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitExpressionElement(final Dart2Parser.ExpressionElementContext context) {
+    public Doc visitExpressionElement(final Dart2Parser.ExpressionElementContext context) {
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(exprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitMapElement(final Dart2Parser.MapElementContext context) {
+    public Doc visitMapElement(final Dart2Parser.MapElementContext context) {
         final List<Dart2Parser.ExprContext> exprContexts = context.expr();
         final TerminalNode coTerminal = context.CO();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         final Dart2Parser.ExprContext firstExprContext = exprContexts.get(0);
         text.append(this.visit(firstExprContext))
             .append(this.visit(coTerminal))
             .append(' ');
         final Dart2Parser.ExprContext secondExprContext = exprContexts.get(1);
         text.append(this.visit(secondExprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNewExpression(final Dart2Parser.NewExpressionContext context) {
+    public Doc visitNewExpression(final Dart2Parser.NewExpressionContext context) {
         final TerminalNode newTerminal = context.NEW_();
         // It can be a class name.
         final Dart2Parser.ConstructorDesignationContext constructorDesignationContext = context.constructorDesignation();
         final Dart2Parser.ArgumentsContext argumentsContext = context.arguments();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(newTerminal))
             .append(' ')
             .append(this.visit(constructorDesignationContext))
             .append(this.visit(argumentsContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitArguments(final Dart2Parser.ArgumentsContext context) {
+    public Doc visitArguments(final Dart2Parser.ArgumentsContext context) {
         final TerminalNode opTerminal = context.OP();
         final Dart2Parser.ArgumentListContext argumentListContext = context.argumentList();
         final TerminalNode cTerminal = context.C();
         final TerminalNode cpTerminal = context.CP();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(opTerminal));
         if (argumentListContext != null) {
-            // We will visit children assuming that we are not supposed to indent them.
-            // After the visit, we can determine if the children actually needed indentation.
-            // If indentation was needed, we will visit the children again with indentation.
-            // That means we may visit the same children twice, which may mess up the visit counts.
-            // For that reason, we create a backup for the visit counts to reset them.
-            final Map<String, Integer> ruleVisitCountsBackup = new HashMap<>(this.ruleVisitCounts);
-            final int visitArgumentsCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.ArgumentsContext.class.getSimpleName(), 0);
-            final int visitNamedArgumentCountBefore = this.ruleVisitCounts.getOrDefault(Dart2Parser.NamedArgumentContext.class.getSimpleName(), 0);
-            final String unindentedArgumentsText = this.visit(argumentListContext);
-            final int visitArgumentsCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.ArgumentsContext.class.getSimpleName(), 0);
-            final int visitNamedArgumentCountAfter = this.ruleVisitCounts.getOrDefault(Dart2Parser.NamedArgumentContext.class.getSimpleName(), 0);
-            // We assume the following condition means nested object initialization. Ex: User(User('Rin'));
-            final boolean objNested = visitArgumentsCountBefore < visitArgumentsCountAfter;
-            final boolean namedParamUsed = visitNamedArgumentCountBefore < visitNamedArgumentCountAfter;
-            if (objNested || namedParamUsed) {
-                // Indentation needed.
-                // We need to visit children again with indentation.
-                // Reset the visit counts.
-                this.ruleVisitCounts = ruleVisitCountsBackup;
+            // We assume nested object initialization or named arguments need indentation. Ex: User(User('Rin'));
+            if (this.layoutFacts.indentsArguments(argumentListContext)) {
+                // The arguments used to be visited once without indentation before this visit.
+                // A chained expression statement in them turned off the method chaining during that visit.
+                // We keep it that way so that the output stays the same.
+                if (this.layoutFacts.resetsChaining(argumentListContext)) {
+                    this.methodChaining = false;
+                }
                 this.currentIndentLevel++;
                 this.appendNewLinesAndIndent(text, 1);
                 text.append(this.visit(argumentListContext));
@@ -4047,23 +3892,30 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 this.currentIndentLevel--;
                 this.appendNewLinesAndIndent(text, 1);
             } else {
-                // No indentation needed.
-                text.append(unindentedArgumentsText);
+                final DocBuilder argumentsText = new DocBuilder();
+                argumentsText.append(this.visit(argumentListContext));
                 if (cTerminal != null) {
-                    text.append(this.visit(cTerminal));
+                    argumentsText.append(this.visit(cTerminal));
+                }
+                final Doc argumentsDoc = argumentsText.build();
+                // We can't indent the lines inside, so only the arguments in one line may break.
+                if (this.lineWidth < DocPrinter.UNLIMITED && argumentsDoc.isSingleLine()) {
+                    text.append(this.indentIfLong(argumentsDoc));
+                } else {
+                    text.append(argumentsDoc);
                 }
             }
         }
         text.append(this.visit(cpTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitArgumentList(final Dart2Parser.ArgumentListContext context) {
+    public Doc visitArgumentList(final Dart2Parser.ArgumentListContext context) {
         final List<Dart2Parser.NamedArgumentContext> namedArgumentContexts = context.namedArgument();
         final List<TerminalNode> cTerminals = context.C();
         final Dart2Parser.ExpressionListContext expressionListContext = context.expressionList();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         if (expressionListContext != null) {
             // expressionList ( C namedArgument)*
             text.append(this.visit(expressionListContext));
@@ -4090,32 +3942,32 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
                 text.append(this.visit(namedArgumentContext));
             }
         }
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitNamedArgument(final Dart2Parser.NamedArgumentContext context) {
+    public Doc visitNamedArgument(final Dart2Parser.NamedArgumentContext context) {
         final Dart2Parser.LabelContext labelContext = context.label();
         final Dart2Parser.ExprContext exprContext = context.expr();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(labelContext))
             .append(' ')
             .append(this.visit(exprContext));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitLabel(final Dart2Parser.LabelContext context) {
+    public Doc visitLabel(final Dart2Parser.LabelContext context) {
         final Dart2Parser.IdentifierContext identifierContext = context.identifier();
         final TerminalNode coTerminal = context.CO();
-        final StringBuilder text = new StringBuilder();
+        final DocBuilder text = new DocBuilder();
         text.append(this.visit(identifierContext))
             .append(this.visit(coTerminal));
-        return text.toString();
+        return text.build();
     }
 
     @Override
-    public String visitChildren(final RuleNode node) {
+    public Doc visitChildren(final RuleNode node) {
         throw new UnsupportedOperationException(
             String.format(
                 "The following rule is not implemented yet: %s text: %s",
@@ -4126,69 +3978,228 @@ public final class DartVisitor extends Dart2ParserBaseVisitor<String> {
     }
 
     @Override
-    public String visit(final ParseTree tree) {
-        final String ruleName = tree.getClass().getSimpleName();
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Enter `{}` text: {}", ruleName, tree.getText());
+    public Doc visit(final ParseTree tree) {
+        final ParseTree target = this.compaction.skip(tree);
+        if (Trace.ENABLED) {
+            this.trace.enter(target);
+        }
+        final Doc result;
+        if (this.memo != null && this.memo.covers(target)) {
+            result = this.visitMemoized((ParserRuleContext) target);
+        } else {
+            result = target.accept(this);
         }
-        this.ruleVisitCounts.putIfAbsent(ruleName, 0);
-        this.ruleVisitCounts.computeIfPresent(ruleName, (ignored, currentCount) -> currentCount + 1);
-        return tree.accept(this);
+        return result;
     }
 
-    @Override
-    public String visitTerminal(final TerminalNode node) {
-        final int tokenIndex = node.getSymbol().getTokenIndex();
-        final int commentChannel = 3;
-        final List<Token> comments = this.tokens.getHiddenTokensToLeft(tokenIndex, commentChannel);
-        final StringBuilder text = new StringBuilder();
-        if (comments != null) {
-            for (final Token comment : comments) {
-                text.append(comment.getText());
+    /**
+     * Reuse the formatted subtree if we have seen the same one.
+     * Otherwise, format it and remember the result.
+     *
+     * @param context The root of the subtree.
+     * @return Formatted subtree.
+     */
+    private Doc visitMemoized(final ParserRuleContext context) {
+        // The comments on the left of the first token are a part of the result.
+        final int start = this.comments.firstHidden(context.getStart().getTokenIndex());
+        final Memo.Key key = Memo.Key.lookup(this.hashes, start, context.getStop().getTokenIndex(), context.getRuleIndex(), this.currentIndentLevel, this.methodChaining);
+        final Memo.Entry found = this.memo.get(key);
+        final Doc result;
+        if (found == null) {
+            result = context.accept(this);
+            this.memo.put(key, result, this.methodChaining);
+        } else {
+            result = found.getDoc();
+            this.methodChaining = found.isChaining();
+        }
+        return result;
+    }
+
+    /**
+     * Format the declarations with their metadata.
+     * They don't depend on each other, so we format them in parallel if we have {@link DartVisitor#pool}.
+     * Each chunk of the declarations gets its own visitor, and we join the results in order.
+     *
+     * @param parent The parent of the declarations.
+     * @param metadataContexts Metadata of each declaration.
+     * @param declarationContexts The declarations.
+     * @return Formatted declarations in the same order.
+     */
+    private List<Doc> visitDeclarations(final ParserRuleContext parent, final List<Dart2Parser.MetadataContext> metadataContexts, final List<? extends ParserRuleContext> declarationContexts) {
+        final int count = declarationContexts.size();
+        final List<Doc> result = new ArrayList<>(count);
+        if (this.pool == null || count < 2) {
+            result.addAll(this.visitDeclarations(metadataContexts, declarationContexts, 0, count));
+        } else {
+            // Other visitors will ask the index concurrently, so we build it in advance.
+            this.ruleIndex.prepare(parent);
+            final int chunkCount = Math.min(count, this.pool.getParallelism() * CHUNKS_PER_THREAD);
+            final List<Callable<List<Doc>>> tasks = new ArrayList<>(chunkCount);
+            final List<DartVisitor> visitors = new ArrayList<>(chunkCount);
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                final DartVisitor visitor = new DartVisitor(this);
+                visitors.add(visitor);
+                final int start = count * chunk / chunkCount;
+                final int end = count * (chunk + 1) / chunkCount;
+                tasks.add(() -> visitor.visitDeclarations(metadataContexts, declarationContexts, start, end));
+            }
+            for (final Future<List<Doc>> future : this.pool.invokeAll(tasks)) {
+                result.addAll(join(future));
+            }
+            if (Trace.ENABLED) {
+                for (final DartVisitor visitor : visitors) {
+                    this.trace.merge(visitor.trace);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Format the declarations in the range one after another.
+     *
+     * @param metadataContexts Metadata of each declaration.
+     * @param declarationContexts The declarations.
+     * @param start Index of the first declaration, inclusive.
+     * @param end Index of the last declaration, exclusive.
+     * @return Formatted declarations in the same order.
+     */
+    List<Doc> visitDeclarations(final List<Dart2Parser.MetadataContext> metadataContexts, final List<? extends ParserRuleContext> declarationContexts, final int start, final int end) {
+        final List<Doc> result = new ArrayList<>(end - start);
+        for (int index = start; index < end; index++) {
+            final Dart2Parser.MetadataContext metadataContext = metadataContexts.get(index);
+            final DocBuilder text = new DocBuilder();
+            if (!this.isEmpty(metadataContext)) {
+                text.append(this.visit(metadataContext));
                 this.appendNewLinesAndIndent(text, 1);
             }
+            text.append(this.visit(declarationContexts.get(index)));
+            result.add(text.build());
         }
-        text.append(node.getText());
-        return text.toString();
+        return result;
     }
 
     /**
-     * Inspect the descendants to see if the specified type is found in the parse tree.
+     * Wait for the result of the parallel formatting.
+     * Exceptions from the other thread are thrown as they are, so the caller sees the same error as sequential formatting.
      *
-     * @param subject The search begins from this.
-     * @param descendantType The type we are looking for.
-     * @return True if a descendant with the specified type is found.
+     * @param future The result.
+     * @return Formatted declarations.
      */
-    private boolean hasDescendant(final ParserRuleContext subject, final Class<? extends ParserRuleContext> descendantType) {
-        if (subject.children == null) {
-            return false;
-        }
-        boolean result = false;
-        // Note that the `children` attribute only gives us direct children.
-        // In other words, it doesn't recursively include all descendants.
-        final Queue<ParseTree> queue = new LinkedList<>(subject.children);
-        while (!queue.isEmpty()) {
-            final ParseTree child = queue.remove();
-            if (descendantType.isInstance(child)) {
-                result = true;
-                break;
+    // The exception from another thread already has the stack trace we need.
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    private static List<Doc> join(final Future<List<Doc>> future) {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while formatting declarations in parallel.", ex);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            for (int index = 0; index < child.getChildCount(); index++) {
-                queue.add(child.getChild(index));
+            throw new IllegalStateException("Failed to format declarations in parallel.", cause);
+        }
+    }
+
+    @Override
+    public Doc visitTerminal(final TerminalNode node) {
+        final int tokenIndex = node.getSymbol().getTokenIndex();
+        final int firstHidden = this.comments.firstHidden(tokenIndex);
+        final Doc result;
+        if (firstHidden == tokenIndex) {
+            result = token(node.getSymbol());
+        } else {
+            final int commentChannel = 3;
+            final DocBuilder text = new DocBuilder();
+            for (int index = firstHidden; index < tokenIndex; index++) {
+                final Token comment = this.comments.token(index);
+                if (comment.getChannel() == commentChannel) {
+                    text.append(token(comment));
+                    this.appendNewLinesAndIndent(text, 1);
+                }
             }
+            text.append(token(node.getSymbol()));
+            result = text.build();
         }
         return result;
     }
 
+    /**
+     * Document for the text of the token.
+     * If the code is {@link SourceStream}, we copy the text when we print it instead of creating a string here.
+     *
+     * @param token The token.
+     * @return Document.
+     */
+    private static Doc token(final Token token) {
+        final CharStream input = token.getInputStream();
+        final Doc result;
+        if (input instanceof SourceStream) {
+            result = Doc.token((SourceStream) input, token.getStartIndex(), token.getStopIndex());
+        } else {
+            result = Doc.text(token.getText());
+        }
+        return result;
+    }
+
+    /**
+     * Put the content in its own indented lines if it doesn't fit in the line width.
+     * The lines inside the content must be indented for the next level already.
+     *
+     * @param content Ex: arguments without the parentheses.
+     * @return Document.
+     */
+    private Doc indentIfLong(final Doc content) {
+        return Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.softLine("", 1, this.currentIndentLevel + 1),
+                    content,
+                    Doc.softLine("", 1, this.currentIndentLevel)
+                )
+            )
+        );
+    }
+
+    /**
+     * Check if the elements of a list literal stay in one line when they fit.
+     * Otherwise, each element is in its own line.
+     * A trailing comma keeps them in their own lines.
+     * We take the counts from the caller because listing the children scans all of them.
+     *
+     * @param context The elements.
+     * @param elementCount Number of the elements.
+     * @param commaCount Number of the commas between and after the elements.
+     * @return True if they stay in one line when they fit.
+     */
+    private boolean fitsElements(final Dart2Parser.ElementsContext context, final int elementCount, final int commaCount) {
+        return this.lineWidth < DocPrinter.UNLIMITED
+            && context.getParent() instanceof Dart2Parser.ListLiteralContext
+            && commaCount < elementCount;
+    }
+
+    /**
+     * Check if the context has no tokens without building its text.
+     * Ex: metadata without annotations.
+     *
+     * @param context The context.
+     * @return True if the context is empty.
+     */
+    private boolean isEmpty(final ParserRuleContext context) {
+        final Token stop = context.getStop();
+        return stop == null || stop.getTokenIndex() < context.getStart().getTokenIndex();
+    }
+
     /**
      * We use this to add new lines with appropriate indentations.
      *
      * @param text We will append the new lines and indentations into this.
      * @param newLines Number of new lines before appending indentations.
      */
-    private void appendNewLinesAndIndent(final StringBuilder text, final int newLines) {
-        text.append("\n".repeat(newLines))
-            .append(INDENT_UNIT.repeat(this.currentIndentLevel));
+    private void appendNewLinesAndIndent(final DocBuilder text, final int newLines) {
+        text.append(Doc.line(newLines, this.currentIndentLevel));
     }
 
 }
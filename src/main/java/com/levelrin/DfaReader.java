@@ -0,0 +1,433 @@
+package com.levelrin;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.ATNType;
+import org.antlr.v4.runtime.atn.ArrayPredictionContext;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.LexerATNConfig;
+import org.antlr.v4.runtime.atn.LexerAction;
+import org.antlr.v4.runtime.atn.LexerActionExecutor;
+import org.antlr.v4.runtime.atn.LexerIndexedCustomAction;
+import org.antlr.v4.runtime.atn.OrderedATNConfigSet;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.atn.SingletonPredictionContext;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+/**
+ * Reads the DFA that {@link DfaWriter} wrote.
+ * We check every reference against the ATN, so a broken file fails with {@link IOException} instead of a broken DFA.
+ * It builds new DFA objects, so nothing changes until the caller installs them.
+ */
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+// We need the fields of ATNConfigSet that are not in the Set interface.
+@SuppressWarnings({"PMD.TooManyMethods", "PMD.LooseCoupling"})
+final class DfaReader {
+
+    /**
+     * The first bytes of the snapshot.
+     */
+    static final int MAGIC = 0x44464131;
+
+    /**
+     * We read the snapshot from this.
+     */
+    private final DataInputStream input;
+
+    /**
+     * Prediction contexts of the current recognizer by their positions in the table.
+     */
+    private final List<PredictionContext> contexts;
+
+    /**
+     * Constructor.
+     *
+     * @param input We read the snapshot from this.
+     */
+    DfaReader(final InputStream input) {
+        this.input = new DataInputStream(new BufferedInputStream(input));
+        this.contexts = new ArrayList<>();
+    }
+
+    /**
+     * As is.
+     *
+     * @return The key of the grammar. See {@link DfaSnapshot#key()}.
+     * @throws IOException If the input fails, or if it's not a snapshot.
+     */
+    String readKey() throws IOException {
+        check(this.input.readInt() == MAGIC, "It's not a DFA snapshot.");
+        return this.input.readUTF();
+    }
+
+    /**
+     * Read the DFA of all decisions of a recognizer.
+     *
+     * @param atn The ATN of the recognizer.
+     * @return New DFA of each decision.
+     * @throws IOException If the input fails, or if the snapshot doesn't match the ATN.
+     */
+    DFA[] read(final ATN atn) throws IOException {
+        this.contexts.clear();
+        final int count = this.input.readInt();
+        for (int index = 0; index < count; index++) {
+            this.contexts.add(this.readContext());
+        }
+        final int decisions = this.input.readInt();
+        check(decisions == atn.getNumberOfDecisions(), "The number of decisions is different.");
+        final DFA[] result = new DFA[decisions];
+        for (int decision = 0; decision < decisions; decision++) {
+            result[decision] = this.readDfa(atn, new DFA(atn.getDecisionState(decision), decision));
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @return A context whose parents are already in {@link DfaReader#contexts}.
+     * @throws IOException If the input fails, or if the parents are not in the table yet.
+     */
+    private PredictionContext readContext() throws IOException {
+        final int size = this.input.readInt();
+        check(size > 0, "A context should have a return state.");
+        final PredictionContext[] parents = new PredictionContext[size];
+        final int[] returnStates = new int[size];
+        for (int index = 0; index < size; index++) {
+            parents[index] = this.context(this.input.readInt());
+            returnStates[index] = this.input.readInt();
+        }
+        final PredictionContext result;
+        if (size == 1) {
+            // It gives the shared empty context for the empty return state.
+            result = SingletonPredictionContext.create(parents[0], returnStates[0]);
+        } else {
+            result = new ArrayPredictionContext(parents, returnStates);
+        }
+        return result;
+    }
+
+    /**
+     * Read the states and edges into the DFA.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param dfa An empty DFA of the decision.
+     * @return The DFA.
+     * @throws IOException If the input fails, or if the snapshot doesn't match the ATN.
+     */
+    private DFA readDfa(final ATN atn, final DFA dfa) throws IOException {
+        check(this.input.readBoolean() == dfa.isPrecedenceDfa(), "The kind of the decision is different.");
+        final int count = this.input.readInt();
+        check(count >= 0, "The number of states should not be negative.");
+        final DFAState[] states = new DFAState[count];
+        for (int index = 0; index < count; index++) {
+            states[index] = this.readState(atn);
+            states[index].stateNumber = index;
+            dfa.states.put(states[index], states[index]);
+        }
+        for (final DFAState state : states) {
+            state.edges = this.readEdges(states);
+        }
+        if (dfa.isPrecedenceDfa()) {
+            setStartStates(dfa, this.readEdges(states));
+        } else {
+            dfa.s0 = this.target(states, this.input.readInt());
+        }
+        return dfa;
+    }
+
+    /**
+     * Read the state without its edges.
+     *
+     * @param atn The ATN of the recognizer.
+     * @return The state.
+     * @throws IOException If the input fails, or if the snapshot doesn't match the ATN.
+     */
+    private DFAState readState(final ATN atn) throws IOException {
+        final boolean lexer = atn.grammarType == ATNType.LEXER;
+        final boolean fullCtx = this.input.readBoolean();
+        final ATNConfigSet configs;
+        ConflictingConfigSet parserConfigs = null;
+        if (lexer) {
+            configs = new OrderedATNConfigSet();
+        } else {
+            parserConfigs = new ConflictingConfigSet(fullCtx);
+            configs = parserConfigs;
+        }
+        configs.uniqueAlt = this.input.readInt();
+        final boolean hasSemanticContext = this.input.readBoolean();
+        final boolean dipsIntoOuterContext = this.input.readBoolean();
+        final int count = this.input.readInt();
+        for (int index = 0; index < count; index++) {
+            configs.add(this.readConfig(atn, lexer));
+        }
+        configs.hasSemanticContext = hasSemanticContext;
+        configs.dipsIntoOuterContext = dipsIntoOuterContext;
+        final DFAState result = new DFAState(configs);
+        result.isAcceptState = this.input.readBoolean();
+        result.prediction = this.input.readInt();
+        result.requiresFullContext = this.input.readBoolean();
+        if (result.requiresFullContext && parserConfigs != null) {
+            parserConfigs.conflict();
+        }
+        configs.setReadonly(true);
+        result.lexerActionExecutor = this.readExecutor(atn);
+        final int predicates = this.input.readInt();
+        if (predicates != DfaWriter.ABSENT) {
+            check(predicates >= 0, "The number of predicates should not be negative.");
+            result.predicates = new DFAState.PredPrediction[predicates];
+            for (int index = 0; index < predicates; index++) {
+                final SemanticContext predicate = this.readSemantic();
+                result.predicates[index] = new DFAState.PredPrediction(predicate, this.input.readInt());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param lexer Whether it's a configuration of the lexer.
+     * @return The configuration.
+     * @throws IOException If the input fails, or if the snapshot doesn't match the ATN.
+     */
+    private ATNConfig readConfig(final ATN atn, final boolean lexer) throws IOException {
+        final ATNState state = state(atn, this.input.readInt());
+        final int alt = this.input.readInt();
+        final PredictionContext context = this.context(this.input.readInt());
+        final int reachesIntoOuterContext = this.input.readInt();
+        final SemanticContext semanticContext = this.readSemantic();
+        final ATNConfig result;
+        if (lexer) {
+            final boolean nonGreedy = this.input.readBoolean();
+            final LexerActionExecutor executor = this.readExecutor(atn);
+            if (nonGreedy) {
+                // The flag has no setter. It's set when the configuration comes from a non-greedy decision.
+                final ATNState decision = nonGreedyDecision(atn);
+                result = new LexerATNConfig(new LexerATNConfig(new LexerATNConfig(decision, alt, context), decision), state, executor);
+            } else {
+                result = new LexerATNConfig(state, alt, context, executor);
+            }
+        } else {
+            result = new ATNConfig(state, alt, context, semanticContext);
+        }
+        result.reachesIntoOuterContext = reachesIntoOuterContext;
+        return result;
+    }
+
+    /**
+     * Read the edges that were computed.
+     *
+     * @param states States of the DFA.
+     * @return The edges, or null if they were not computed at all.
+     * @throws IOException If the input fails, or if the target is not in the DFA.
+     */
+    private DFAState[] readEdges(final DFAState... states) throws IOException {
+        final int length = this.input.readInt();
+        DFAState[] result = null;
+        if (length != DfaWriter.ABSENT) {
+            check(length >= 0, "The number of edges should not be negative.");
+            result = new DFAState[length];
+            final int count = this.input.readInt();
+            for (int edge = 0; edge < count; edge++) {
+                final int index = this.input.readInt();
+                check(index >= 0 && index < length, "The edge is out of range.");
+                result[index] = this.target(states, this.input.readInt());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @return The semantic context.
+     * @throws IOException If the input fails, or if the tag is unknown.
+     */
+    private SemanticContext readSemantic() throws IOException {
+        final byte tag = this.input.readByte();
+        SemanticContext result = SemanticContext.Empty.Instance;
+        if (tag == DfaWriter.PREDICATE) {
+            final int ruleIndex = this.input.readInt();
+            final int predIndex = this.input.readInt();
+            result = new SemanticContext.Predicate(ruleIndex, predIndex, this.input.readBoolean());
+        } else if (tag == DfaWriter.PRECEDENCE) {
+            result = new SemanticContext.PrecedencePredicate(this.input.readInt());
+        } else if (tag == DfaWriter.CONJUNCTION || tag == DfaWriter.DISJUNCTION) {
+            final int count = this.input.readInt();
+            check(count > 1, "An operator should have two operands at least.");
+            result = this.readSemantic();
+            for (int index = 1; index < count; index++) {
+                if (tag == DfaWriter.CONJUNCTION) {
+                    result = SemanticContext.and(result, this.readSemantic());
+                } else {
+                    result = SemanticContext.or(result, this.readSemantic());
+                }
+            }
+        } else {
+            check(tag == DfaWriter.NONE, "Unknown semantic context.");
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param atn The ATN of the lexer.
+     * @return The lexer actions, or null if there is none.
+     * @throws IOException If the input fails, or if the action is not in the ATN.
+     */
+    private LexerActionExecutor readExecutor(final ATN atn) throws IOException {
+        final int count = this.input.readInt();
+        LexerActionExecutor result = null;
+        if (count != DfaWriter.ABSENT) {
+            check(count >= 0 && atn.lexerActions != null, "The lexer actions are not in the ATN.");
+            final LexerAction[] actions = new LexerAction[count];
+            for (int index = 0; index < count; index++) {
+                final int position = this.input.readInt();
+                final int offset = this.input.readInt();
+                check(position >= 0 && position < atn.lexerActions.length, "The lexer action is out of range.");
+                actions[index] = atn.lexerActions[position];
+                if (offset != DfaWriter.ABSENT) {
+                    actions[index] = new LexerIndexedCustomAction(offset, actions[index]);
+                }
+            }
+            result = new LexerActionExecutor(actions);
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param reference Position in {@link DfaReader#contexts} or {@link DfaWriter#ABSENT}.
+     * @return The context, or null.
+     * @throws IOException If the context is not in the table yet.
+     */
+    private PredictionContext context(final int reference) throws IOException {
+        PredictionContext result = null;
+        if (reference != DfaWriter.ABSENT) {
+            check(reference >= 0 && reference < this.contexts.size(), "The context is out of range.");
+            result = this.contexts.get(reference);
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param states States of the DFA.
+     * @param reference Position of the state, {@link DfaWriter#ERROR}, or {@link DfaWriter#ABSENT}.
+     * @return The state, or null.
+     * @throws IOException If the state is not in the DFA.
+     */
+    private DFAState target(final DFAState[] states, final int reference) throws IOException {
+        DFAState result = null;
+        if (reference == DfaWriter.ERROR) {
+            result = ATNSimulator.ERROR;
+        } else if (reference != DfaWriter.ABSENT) {
+            check(reference >= 0 && reference < states.length, "The state is out of range.");
+            result = states[reference];
+        }
+        return result;
+    }
+
+    /**
+     * Set the start state for each precedence of a precedence DFA.
+     *
+     * @param dfa The DFA of a precedence decision.
+     * @param starts The start state for each precedence, or null if there is none.
+     */
+    private static void setStartStates(final DFA dfa, final DFAState... starts) {
+        if (starts != null) {
+            for (int precedence = 0; precedence < starts.length; precedence++) {
+                if (starts[precedence] != null && starts[precedence] != ATNSimulator.ERROR) {
+                    dfa.setPrecedenceStartState(precedence, starts[precedence]);
+                }
+            }
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param number State number.
+     * @return The state of the ATN.
+     * @throws IOException If the number is out of range.
+     */
+    private static ATNState state(final ATN atn, final int number) throws IOException {
+        check(number >= 0 && number < atn.states.size(), "The ATN state is out of range.");
+        return atn.states.get(number);
+    }
+
+    /**
+     * Find a non-greedy decision of the lexer. Ex: `'${' StringContentDQ*? '}'`.
+     *
+     * @param atn The ATN of the lexer.
+     * @return The decision state.
+     * @throws IOException If the lexer has no non-greedy decision.
+     */
+    private static ATNState nonGreedyDecision(final ATN atn) throws IOException {
+        ATNState result = null;
+        for (final ATNState state : atn.states) {
+            if (result == null && state instanceof DecisionState && ((DecisionState) state).nonGreedy) {
+                result = state;
+            }
+        }
+        check(result != null, "The lexer has no non-greedy decision.");
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param condition It should be true for a valid snapshot.
+     * @param message The reason if it's false.
+     * @throws IOException If the condition is false.
+     */
+    private static void check(final boolean condition, final String message) throws IOException {
+        if (!condition) {
+            throw new IOException(message);
+        }
+    }
+
+    /**
+     * Configurations of the parser that can tell their conflicting alternatives again.
+     * They are not public, but the parser sets them exactly when the state requires the full context.
+     * It compares them by reference, so without them, a state would be the same as another one that only differs by them.
+     */
+    private static final class ConflictingConfigSet extends ATNConfigSet {
+
+        /**
+         * Constructor.
+         *
+         * @param fullCtx See {@link ATNConfigSet#fullCtx}.
+         */
+        ConflictingConfigSet(final boolean fullCtx) {
+            super(fullCtx);
+        }
+
+        /**
+         * Set the conflicting alternatives like {@link org.antlr.v4.runtime.atn.ParserATNSimulator} does.
+         */
+        void conflict() {
+            this.conflictingAlts = PredictionMode.getAlts(PredictionMode.getConflictingAltSubsets(this));
+        }
+
+    }
+
+}
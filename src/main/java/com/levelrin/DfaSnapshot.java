@@ -0,0 +1,220 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The DFA that the lexer and the parser learned, saved in a file for the next runs.
+ * ANTLR starts with an empty DFA in every JVM and fills it while it parses, so a short run spends most of the time on it.
+ * The file name has {@link DfaSnapshot#key()}, so we never load the snapshot of another grammar or version.
+ * Load it before formatting and save it after formatting. It must not run while a parser is parsing.
+ */
+public final class DfaSnapshot {
+
+    /**
+     * For logging.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DfaSnapshot.class);
+
+    /**
+     * Beginning of the file names of the snapshots.
+     */
+    private static final String PREFIX = "dfa-";
+
+    /**
+     * Number of bytes of the hash we use in the key.
+     */
+    private static final int KEY_BYTES = 16;
+
+    /**
+     * Radix of the key.
+     */
+    private static final int HEX = 16;
+
+    /**
+     * Number of bits in a hex digit.
+     */
+    private static final int HEX_BITS = 4;
+
+    /**
+     * Mask of a hex digit.
+     */
+    private static final int HEX_MASK = 0xF;
+
+    /**
+     * The snapshot file.
+     */
+    private final Path file;
+
+    /**
+     * Number of the DFA states after loading, so we don't save the same snapshot again.
+     */
+    private int loaded;
+
+    /**
+     * Constructor.
+     *
+     * @param file See {@link DfaSnapshot#file}.
+     */
+    public DfaSnapshot(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * The snapshot in the user cache directory. Ex: `~/.cache/dart-stylerin/dfa-{key}.bin`.
+     * We use `$XDG_CACHE_HOME` instead of `~/.cache` if it's set.
+     *
+     * @return The snapshot.
+     */
+    public static DfaSnapshot inCacheDirectory() {
+        final String home = System.getenv("XDG_CACHE_HOME");
+        final Path directory;
+        if (home == null || home.isBlank()) {
+            directory = Paths.get(System.getProperty("user.home"), ".cache");
+        } else {
+            directory = Paths.get(home);
+        }
+        return new DfaSnapshot(directory.resolve("dart-stylerin").resolve(PREFIX + key() + ".bin"));
+    }
+
+    /**
+     * Replace the DFA of the lexer and the parser with the snapshot.
+     * We read the whole snapshot before replacing anything, so a broken file leaves the DFA as it was.
+     *
+     * @return True if we loaded the snapshot. False if it doesn't exist or it's broken.
+     */
+    public boolean load() {
+        boolean result = false;
+        if (Files.isRegularFile(this.file)) {
+            final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(""));
+            final Dart2Parser parser = new Dart2Parser(new CommonTokenStream(lexer));
+            try (InputStream input = Files.newInputStream(this.file)) {
+                final DfaReader reader = new DfaReader(input);
+                if (key().equals(reader.readKey())) {
+                    final DFA[] lexerDfas = reader.read(lexer.getATN());
+                    final DFA[] parserDfas = reader.read(parser.getATN());
+                    System.arraycopy(lexerDfas, 0, lexer.getInterpreter().decisionToDFA, 0, lexerDfas.length);
+                    System.arraycopy(parserDfas, 0, parser.getInterpreter().decisionToDFA, 0, parserDfas.length);
+                    result = true;
+                }
+            } catch (final IOException ex) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Ignoring the broken DFA snapshot `{}`. cause: {}", this.file, ex.getMessage());
+                }
+            }
+        }
+        this.loaded = states();
+        if (result && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Loaded {} DFA states from `{}`.", this.loaded, this.file);
+        }
+        return result;
+    }
+
+    /**
+     * Save the DFA of the lexer and the parser if they learned something since {@link DfaSnapshot#load()}.
+     * We write a temporary file and move it, so another run never reads a half-written snapshot.
+     *
+     * @return True if we saved the snapshot.
+     * @throws IOException If we fail to write the file.
+     */
+    public boolean save() throws IOException {
+        final int count = states();
+        boolean result = false;
+        if (count > this.loaded) {
+            final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(""));
+            final Dart2Parser parser = new Dart2Parser(new CommonTokenStream(lexer));
+            final Path directory = Objects.requireNonNull(this.file.toAbsolutePath().getParent(), "The snapshot should be in a directory.");
+            Files.createDirectories(directory);
+            final Path temporary = Files.createTempFile(directory, PREFIX, ".tmp");
+            try {
+                try (OutputStream output = Files.newOutputStream(temporary)) {
+                    final DfaWriter writer = new DfaWriter(output);
+                    writer.writeKey(key());
+                    writer.write(lexer.getATN(), lexer.getInterpreter().decisionToDFA);
+                    writer.write(parser.getATN(), parser.getInterpreter().decisionToDFA);
+                    writer.flush();
+                }
+                Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            this.loaded = count;
+            result = true;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Saved {} DFA states into `{}`.", count, this.file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Identity of the grammar and the versions.
+     * We hash the serialized ATN of the generated lexer and parser, which changes whenever the grammar files change.
+     * The ANTLR version is also there because the DFA is made of the classes of its runtime.
+     *
+     * @return Hex string of the hash.
+     */
+    static String key() {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Every Java platform should support SHA-256.", ex);
+        }
+        for (final String part : new String[] {Dart2Lexer._serializedATN, Dart2Parser._serializedATN, Formatter.VERSION, RuntimeMetaData.VERSION}) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        final byte[] hash = digest.digest();
+        final StringBuilder result = new StringBuilder();
+        for (int index = 0; index < KEY_BYTES; index++) {
+            result.append(Character.forDigit(hash[index] >> HEX_BITS & HEX_MASK, HEX))
+                .append(Character.forDigit(hash[index] & HEX_MASK, HEX));
+        }
+        return result.toString();
+    }
+
+    /**
+     * As is.
+     *
+     * @return Number of the DFA states of the lexer and the parser.
+     */
+    static int states() {
+        final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(""));
+        final Dart2Parser parser = new Dart2Parser(new CommonTokenStream(lexer));
+        return states(lexer.getInterpreter().decisionToDFA) + states(parser.getInterpreter().decisionToDFA);
+    }
+
+    /**
+     * As is.
+     *
+     * @param dfas The DFA of each decision.
+     * @return Number of their states.
+     */
+    private static int states(final DFA... dfas) {
+        int result = 0;
+        for (final DFA dfa : dfas) {
+            synchronized (dfa.states) {
+                result += dfa.states.size();
+            }
+        }
+        return result;
+    }
+
+}
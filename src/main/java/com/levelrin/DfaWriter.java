@@ -0,0 +1,401 @@
+package com.levelrin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.LexerATNConfig;
+import org.antlr.v4.runtime.atn.LexerAction;
+import org.antlr.v4.runtime.atn.LexerActionExecutor;
+import org.antlr.v4.runtime.atn.LexerIndexedCustomAction;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+/**
+ * Writes the DFA of a recognizer for {@link DfaReader}.
+ * The DFA states refer to each other by their position in the DFA.
+ * The prediction contexts are shared by many configurations, so we write them once in a table first.
+ * Their parents come before them in the table.
+ */
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
+final class DfaWriter {
+
+    /**
+     * Tag of {@link SemanticContext.Empty}.
+     */
+    static final byte NONE = 0;
+
+    /**
+     * Tag of {@link SemanticContext.Predicate}.
+     */
+    static final byte PREDICATE = 1;
+
+    /**
+     * Tag of {@link SemanticContext.PrecedencePredicate}.
+     */
+    static final byte PRECEDENCE = 2;
+
+    /**
+     * Tag of {@link SemanticContext.AND}.
+     */
+    static final byte CONJUNCTION = 3;
+
+    /**
+     * Tag of {@link SemanticContext.OR}.
+     */
+    static final byte DISJUNCTION = 4;
+
+    /**
+     * Reference to nothing. Ex: the parent of the empty context, or no lexer actions.
+     */
+    static final int ABSENT = -1;
+
+    /**
+     * Reference to {@link ATNSimulator#ERROR}, which is not in the DFA.
+     */
+    static final int ERROR = -2;
+
+    /**
+     * We write the snapshot into this.
+     */
+    private final DataOutputStream output;
+
+    /**
+     * Key - Prediction context of the current recognizer.
+     * Value - Its position in the table.
+     */
+    private final Map<PredictionContext, Integer> contexts;
+
+    /**
+     * Constructor.
+     *
+     * @param output We write the snapshot into this.
+     */
+    DfaWriter(final OutputStream output) {
+        this.output = new DataOutputStream(new BufferedOutputStream(output));
+        this.contexts = new IdentityHashMap<>();
+    }
+
+    /**
+     * Write the key of the grammar, so we don't read the snapshot of another grammar.
+     *
+     * @param key See {@link DfaSnapshot#key()}.
+     * @throws IOException If the output fails.
+     */
+    void writeKey(final String key) throws IOException {
+        this.output.writeInt(DfaReader.MAGIC);
+        this.output.writeUTF(key);
+    }
+
+    /**
+     * Write the DFA of all decisions of a recognizer.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param dfas The DFA of each decision. Ex: {@link org.antlr.v4.runtime.atn.ParserATNSimulator#decisionToDFA}.
+     * @throws IOException If the output fails.
+     */
+    void write(final ATN atn, final DFA... dfas) throws IOException {
+        final List<List<DFAState>> states = new ArrayList<>(dfas.length);
+        for (final DFA dfa : dfas) {
+            synchronized (dfa.states) {
+                states.add(new ArrayList<>(dfa.states.values()));
+            }
+        }
+        this.contexts.clear();
+        final List<PredictionContext> table = new ArrayList<>();
+        for (final List<DFAState> decision : states) {
+            this.collect(decision, table);
+        }
+        this.output.writeInt(table.size());
+        for (final PredictionContext context : table) {
+            this.writeContext(context);
+        }
+        this.output.writeInt(dfas.length);
+        for (int decision = 0; decision < dfas.length; decision++) {
+            this.writeDfa(atn, dfas[decision], states.get(decision));
+        }
+    }
+
+    /**
+     * Write the buffered bytes into the output.
+     *
+     * @throws IOException If the output fails.
+     */
+    void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * Add the contexts of the configurations to the table.
+     *
+     * @param states States of a DFA.
+     * @param table We add the contexts that are not in {@link DfaWriter#contexts} yet into this.
+     */
+    private void collect(final List<DFAState> states, final List<PredictionContext> table) {
+        for (final DFAState state : states) {
+            for (final ATNConfig config : state.configs) {
+                this.collect(config.context, table);
+            }
+        }
+    }
+
+    /**
+     * Add the context and its ancestors to the table, the parents first.
+     * We don't use recursion because the contexts can be as deep as the rule invocations.
+     *
+     * @param root The context of a configuration.
+     * @param table We add the contexts that are not in {@link DfaWriter#contexts} yet into this.
+     */
+    private void collect(final PredictionContext root, final List<PredictionContext> table) {
+        final Deque<PredictionContext> stack = new ArrayDeque<>();
+        if (root != null && !this.contexts.containsKey(root)) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            final PredictionContext context = stack.peek();
+            boolean ready = true;
+            for (int index = 0; index < context.size(); index++) {
+                final PredictionContext parent = context.getParent(index);
+                if (parent != null && !this.contexts.containsKey(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                if (!this.contexts.containsKey(context)) {
+                    this.contexts.put(context, table.size());
+                    table.add(context);
+                }
+            }
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param context A context whose parents are already in the table.
+     * @throws IOException If the output fails.
+     */
+    private void writeContext(final PredictionContext context) throws IOException {
+        this.output.writeInt(context.size());
+        for (int index = 0; index < context.size(); index++) {
+            this.output.writeInt(this.reference(context.getParent(index)));
+            this.output.writeInt(context.getReturnState(index));
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param dfa The DFA of a decision.
+     * @param states States of the DFA.
+     * @throws IOException If the output fails.
+     */
+    private void writeDfa(final ATN atn, final DFA dfa, final List<DFAState> states) throws IOException {
+        final Map<DFAState, Integer> positions = new IdentityHashMap<>();
+        for (final DFAState state : states) {
+            positions.put(state, positions.size());
+        }
+        this.output.writeBoolean(dfa.isPrecedenceDfa());
+        this.output.writeInt(states.size());
+        for (final DFAState state : states) {
+            this.writeState(atn, state);
+        }
+        for (final DFAState state : states) {
+            this.writeEdges(state, positions);
+        }
+        if (dfa.isPrecedenceDfa()) {
+            // The start state for each precedence is an edge of the dummy start state.
+            this.writeEdges(dfa.s0, positions);
+        } else {
+            this.output.writeInt(positions.getOrDefault(dfa.s0, ABSENT));
+        }
+    }
+
+    /**
+     * Write the state without its edges.
+     *
+     * @param atn The ATN of the recognizer.
+     * @param state A state of the DFA.
+     * @throws IOException If the output fails.
+     */
+    private void writeState(final ATN atn, final DFAState state) throws IOException {
+        this.output.writeBoolean(state.configs.fullCtx);
+        this.output.writeInt(state.configs.uniqueAlt);
+        this.output.writeBoolean(state.configs.hasSemanticContext);
+        this.output.writeBoolean(state.configs.dipsIntoOuterContext);
+        this.output.writeInt(state.configs.size());
+        for (final ATNConfig config : state.configs) {
+            this.output.writeInt(config.state.stateNumber);
+            this.output.writeInt(config.alt);
+            this.output.writeInt(this.reference(config.context));
+            this.output.writeInt(config.reachesIntoOuterContext);
+            this.writeSemantic(config.semanticContext);
+            if (config instanceof LexerATNConfig) {
+                final LexerATNConfig lexerConfig = (LexerATNConfig) config;
+                this.output.writeBoolean(lexerConfig.hasPassedThroughNonGreedyDecision());
+                this.writeExecutor(atn, lexerConfig.getLexerActionExecutor());
+            }
+        }
+        this.output.writeBoolean(state.isAcceptState);
+        this.output.writeInt(state.prediction);
+        this.output.writeBoolean(state.requiresFullContext);
+        this.writeExecutor(atn, state.lexerActionExecutor);
+        if (state.predicates == null) {
+            this.output.writeInt(ABSENT);
+        } else {
+            this.output.writeInt(state.predicates.length);
+            for (final DFAState.PredPrediction predicate : state.predicates) {
+                this.writeSemantic(predicate.pred);
+                this.output.writeInt(predicate.alt);
+            }
+        }
+    }
+
+    /**
+     * Write the edges that are already computed.
+     *
+     * @param state A state of the DFA.
+     * @param positions Key - A state of the DFA. Value - Its position in the DFA.
+     * @throws IOException If the output fails.
+     */
+    private void writeEdges(final DFAState state, final Map<DFAState, Integer> positions) throws IOException {
+        final DFAState[] edges = state.edges;
+        if (edges == null) {
+            this.output.writeInt(ABSENT);
+        } else {
+            this.output.writeInt(edges.length);
+            int count = 0;
+            for (final DFAState target : edges) {
+                if (target != null) {
+                    count++;
+                }
+            }
+            this.output.writeInt(count);
+            for (int index = 0; index < edges.length; index++) {
+                final DFAState target = edges[index];
+                if (target != null) {
+                    this.output.writeInt(index);
+                    this.output.writeInt(reference(target, positions));
+                }
+            }
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param context A semantic context of the parser.
+     * @throws IOException If the output fails, or if it's not from the generated parser.
+     */
+    private void writeSemantic(final SemanticContext context) throws IOException {
+        if (context instanceof SemanticContext.Predicate) {
+            final SemanticContext.Predicate predicate = (SemanticContext.Predicate) context;
+            this.output.writeByte(PREDICATE);
+            this.output.writeInt(predicate.ruleIndex);
+            this.output.writeInt(predicate.predIndex);
+            this.output.writeBoolean(predicate.isCtxDependent);
+        } else if (context instanceof SemanticContext.PrecedencePredicate) {
+            this.output.writeByte(PRECEDENCE);
+            this.output.writeInt(((SemanticContext.PrecedencePredicate) context).precedence);
+        } else if (context instanceof SemanticContext.AND) {
+            this.output.writeByte(CONJUNCTION);
+            this.writeOperands(((SemanticContext.AND) context).opnds);
+        } else if (context instanceof SemanticContext.OR) {
+            this.output.writeByte(DISJUNCTION);
+            this.writeOperands(((SemanticContext.OR) context).opnds);
+        } else if (SemanticContext.Empty.Instance.equals(context)) {
+            this.output.writeByte(NONE);
+        } else {
+            throw new IOException("Unknown semantic context: " + context);
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param operands Operands of {@link SemanticContext.AND} or {@link SemanticContext.OR}.
+     * @throws IOException If the output fails.
+     */
+    private void writeOperands(final SemanticContext... operands) throws IOException {
+        this.output.writeInt(operands.length);
+        for (final SemanticContext operand : operands) {
+            this.writeSemantic(operand);
+        }
+    }
+
+    /**
+     * Write the lexer actions by their positions in {@link ATN#lexerActions}.
+     *
+     * @param atn The ATN of the lexer.
+     * @param executor The lexer actions, or null if there is none.
+     * @throws IOException If the output fails, or if the action is not from the generated lexer.
+     */
+    private void writeExecutor(final ATN atn, final LexerActionExecutor executor) throws IOException {
+        if (executor == null) {
+            this.output.writeInt(ABSENT);
+        } else {
+            final List<LexerAction> actions = Arrays.asList(atn.lexerActions);
+            this.output.writeInt(executor.getLexerActions().length);
+            for (final LexerAction action : executor.getLexerActions()) {
+                LexerAction origin = action;
+                int offset = ABSENT;
+                if (action instanceof LexerIndexedCustomAction) {
+                    origin = ((LexerIndexedCustomAction) action).getAction();
+                    offset = ((LexerIndexedCustomAction) action).getOffset();
+                }
+                final int position = actions.indexOf(origin);
+                if (position < 0) {
+                    throw new IOException("Unknown lexer action: " + action);
+                }
+                this.output.writeInt(position);
+                this.output.writeInt(offset);
+            }
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param target The target of an edge.
+     * @param positions Key - A state of the DFA. Value - Its position in the DFA.
+     * @return Its position, {@link DfaWriter#ERROR}, or {@link DfaWriter#ABSENT} if it's not in the DFA.
+     */
+    private static int reference(final DFAState target, final Map<DFAState, Integer> positions) {
+        int result = ERROR;
+        if (target != ATNSimulator.ERROR) {
+            result = positions.getOrDefault(target, ABSENT);
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param context A context in the table, or null.
+     * @return Its position in the table, or {@link DfaWriter#ABSENT} if it's null.
+     */
+    private int reference(final PredictionContext context) {
+        int result = ABSENT;
+        if (context != null) {
+            result = this.contexts.get(context);
+        }
+        return result;
+    }
+
+}
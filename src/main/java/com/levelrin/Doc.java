@@ -0,0 +1,542 @@
+package com.levelrin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Formatted code before we lay it out as text.
+ * The visitor builds a tree of these instead of concatenating strings at every level.
+ * Use {@link DocPrinter} to get the text.
+ * Note that lines carry the absolute indentation level because the visitor keeps track of it.
+ */
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
+public final class Doc {
+
+    /**
+     * Document that prints nothing.
+     */
+    public static final Doc EMPTY = new Doc(DocKind.TEXT, "", 0, 0, Collections.emptyList());
+
+    /**
+     * Type of the node.
+     */
+    private final DocKind kind;
+
+    /**
+     * Text to print for {@link DocKind#TEXT}.
+     * Text to print instead of the line break for {@link DocKind#SOFT_LINE} when it's flat.
+     */
+    private final String content;
+
+    /**
+     * Number of new lines for {@link DocKind#LINE} and {@link DocKind#SOFT_LINE}.
+     */
+    private final int newLines;
+
+    /**
+     * Indentation level after the new lines for {@link DocKind#LINE} and {@link DocKind#SOFT_LINE}.
+     */
+    private final int indentLevel;
+
+    /**
+     * Children of {@link DocKind#CONCAT} and {@link DocKind#GROUP}.
+     */
+    private final List<Doc> children;
+
+    /**
+     * Code that has the text for {@link DocKind#TOKEN}.
+     * It's null for the other kinds.
+     */
+    private final SourceStream source;
+
+    /**
+     * Index of the first code point of {@link DocKind#TOKEN}, inclusive.
+     */
+    private final int start;
+
+    /**
+     * Index of the last code point of {@link DocKind#TOKEN}, inclusive.
+     */
+    private final int stop;
+
+    /**
+     * Whether it prints nothing.
+     */
+    private final boolean empty;
+
+    /**
+     * Width of the flat layout until the first line break in a text or a token, or the first hard line.
+     * We compute it from the children once, so checking if a group fits takes constant time.
+     */
+    private final int flatWidth;
+
+    /**
+     * Width of the flat layout until the first line of any kind, or the first line break in a text or a token.
+     * It's how much the document adds to the current line if it comes after a group and its soft lines break.
+     */
+    private final int breakWidth;
+
+    /**
+     * Whether it has a {@link DocKind#LINE} anywhere.
+     * It never fits in a line then, even if a line break in a text or a token comes first.
+     */
+    private final boolean hardBreak;
+
+    /**
+     * Whether it has a line break in a text or a token anywhere.
+     * We don't measure the width after the first one.
+     */
+    private final boolean lineEnd;
+
+    /**
+     * Whether it prints in one line in any layout.
+     * It has no lines and no line breaks in texts or tokens.
+     */
+    private final boolean singleLine;
+
+    /**
+     * Constructor.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param newLines See {@link Doc#newLines}.
+     * @param indentLevel See {@link Doc#indentLevel}.
+     * @param children See {@link Doc#children}.
+     */
+    private Doc(final DocKind kind, final String content, final int newLines, final int indentLevel, final List<Doc> children) {
+        this.kind = kind;
+        this.content = content;
+        this.newLines = newLines;
+        this.indentLevel = indentLevel;
+        this.children = children;
+        this.source = null;
+        this.start = 0;
+        this.stop = -1;
+        this.empty = computeEmpty(kind, content, children);
+        this.flatWidth = computeFlatWidth(kind, content, children);
+        this.breakWidth = computeBreakWidth(kind, content, children);
+        this.hardBreak = computeHardBreak(kind, children);
+        this.lineEnd = computeLineEnd(kind, content, children);
+        this.singleLine = computeSingleLine(kind, content, children);
+    }
+
+    /**
+     * Constructor for {@link DocKind#TOKEN}.
+     *
+     * @param source See {@link Doc#source}.
+     * @param start See {@link Doc#start}.
+     * @param stop See {@link Doc#stop}.
+     */
+    private Doc(final SourceStream source, final int start, final int stop) {
+        this.kind = DocKind.TOKEN;
+        this.content = "";
+        this.newLines = 0;
+        this.indentLevel = 0;
+        this.children = Collections.emptyList();
+        this.source = source;
+        this.start = start;
+        this.stop = stop;
+        this.empty = stop < start;
+        final int newLine = source.indexOf('\n', start, stop);
+        this.lineEnd = newLine >= 0;
+        if (this.lineEnd) {
+            this.flatWidth = newLine - start;
+        } else {
+            this.flatWidth = stop - start + 1;
+        }
+        this.breakWidth = this.flatWidth;
+        this.hardBreak = false;
+        this.singleLine = !this.lineEnd;
+    }
+
+    /**
+     * Text as is.
+     * It may contain new lines if it comes from multi-line strings or comments.
+     *
+     * @param text The text.
+     * @return Document.
+     */
+    public static Doc text(final String text) {
+        return new Doc(DocKind.TEXT, text, 0, 0, Collections.emptyList());
+    }
+
+    /**
+     * Text of a token that we copy from the code when we print it.
+     * It's the same as {@link Doc#text(String)} with the token's text, but we don't create the string.
+     *
+     * @param source See {@link Doc#source}.
+     * @param start See {@link Doc#start}.
+     * @param stop See {@link Doc#stop}.
+     * @return Document.
+     */
+    public static Doc token(final SourceStream source, final int start, final int stop) {
+        return new Doc(source, start, stop);
+    }
+
+    /**
+     * Line breaks followed by the indentation.
+     *
+     * @param newLines Number of new lines.
+     * @param indentLevel Indentation level of the next line.
+     * @return Document.
+     */
+    public static Doc line(final int newLines, final int indentLevel) {
+        return new Doc(DocKind.LINE, "", newLines, indentLevel, Collections.emptyList());
+    }
+
+    /**
+     * Line breaks that become the flat text if the enclosing group fits in the line.
+     *
+     * @param flat Text to print instead of the line break. Ex: " " or "".
+     * @param newLines Number of new lines when it breaks.
+     * @param indentLevel Indentation level of the next line when it breaks.
+     * @return Document.
+     */
+    public static Doc softLine(final String flat, final int newLines, final int indentLevel) {
+        return new Doc(DocKind.SOFT_LINE, flat, newLines, indentLevel, Collections.emptyList());
+    }
+
+    /**
+     * Documents printed one after another.
+     *
+     * @param parts The documents.
+     * @return Document.
+     */
+    public static Doc concat(final List<Doc> parts) {
+        return new Doc(DocKind.CONCAT, "", 0, 0, parts);
+    }
+
+    /**
+     * Print the soft lines inside flat if the content fits in the line.
+     *
+     * @param content The document.
+     * @return Document.
+     */
+    public static Doc group(final Doc content) {
+        return new Doc(DocKind.GROUP, "", 0, 0, Collections.singletonList(content));
+    }
+
+    /**
+     * Copy the document with the tokens turned into texts.
+     * The copy doesn't refer to {@link SourceStream}, so it doesn't keep the code of the file alive.
+     * We walk the document without recursion because it may be deep.
+     *
+     * @param doc The document.
+     * @return The copy that prints the same.
+     */
+    static Doc detach(final Doc doc) {
+        // Key - Document.
+        // Value - Its copy.
+        // A document may appear in many places, so we copy it once.
+        final Map<Doc, Doc> copies = new IdentityHashMap<>();
+        final Deque<Doc> docs = new ArrayDeque<>();
+        // Whether we have pushed the children of the document already.
+        final Deque<Boolean> expanded = new ArrayDeque<>();
+        docs.push(doc);
+        expanded.push(false);
+        while (!docs.isEmpty()) {
+            final Doc current = docs.pop();
+            if (expanded.pop()) {
+                copies.put(current, current.detachNode(copies));
+            } else if (!copies.containsKey(current)) {
+                docs.push(current);
+                expanded.push(true);
+                for (final Doc child : current.children) {
+                    docs.push(child);
+                    expanded.push(false);
+                }
+            }
+        }
+        return copies.get(doc);
+    }
+
+    /**
+     * As is.
+     *
+     * @return True if it prints nothing.
+     */
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#singleLine}.
+     */
+    public boolean isSingleLine() {
+        return this.singleLine;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#kind}.
+     */
+    DocKind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#content}.
+     */
+    String getContent() {
+        return this.content;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#newLines}.
+     */
+    int getNewLines() {
+        return this.newLines;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#indentLevel}.
+     */
+    int getIndentLevel() {
+        return this.indentLevel;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#children}.
+     */
+    List<Doc> getChildren() {
+        return this.children;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#flatWidth}.
+     */
+    int getFlatWidth() {
+        return this.flatWidth;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#breakWidth}.
+     */
+    int getBreakWidth() {
+        return this.breakWidth;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#hardBreak}.
+     */
+    boolean hasHardBreak() {
+        return this.hardBreak;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#lineEnd}.
+     */
+    boolean hasLineEnd() {
+        return this.lineEnd;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#source}.
+     */
+    SourceStream getSource() {
+        return this.source;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#start}.
+     */
+    int getStart() {
+        return this.start;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Doc#stop}.
+     */
+    int getStop() {
+        return this.stop;
+    }
+
+    /**
+     * Copy this node for {@link Doc#detach(Doc)}.
+     *
+     * @param copies Key - Document. Value - Its copy. It has the copies of the children already.
+     * @return The copy.
+     */
+    private Doc detachNode(final Map<Doc, Doc> copies) {
+        final Doc result;
+        if (this.kind == DocKind.TOKEN) {
+            result = text(this.source.getText(Interval.of(this.start, this.stop)));
+        } else if (this.children.isEmpty()) {
+            result = this;
+        } else {
+            final List<Doc> detached = new ArrayList<>(this.children.size());
+            for (final Doc child : this.children) {
+                detached.add(copies.get(child));
+            }
+            result = new Doc(this.kind, this.content, this.newLines, this.indentLevel, detached);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the document prints nothing.
+     * The children are already built, so we only look at their flags.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param children See {@link Doc#children}.
+     * @return True if it prints nothing.
+     */
+    private static boolean computeEmpty(final DocKind kind, final String content, final List<Doc> children) {
+        boolean result = true;
+        if (kind == DocKind.TEXT) {
+            result = content.isEmpty();
+        } else if (kind == DocKind.LINE || kind == DocKind.SOFT_LINE) {
+            result = false;
+        } else {
+            for (final Doc child : children) {
+                if (!child.isEmpty()) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Measure the flat layout until the first line break in a text or a token.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param children See {@link Doc#children}.
+     * @return See {@link Doc#flatWidth}.
+     */
+    private static int computeFlatWidth(final DocKind kind, final String content, final List<Doc> children) {
+        int result = 0;
+        if (kind == DocKind.TEXT || kind == DocKind.SOFT_LINE) {
+            final int newLine = content.indexOf('\n');
+            if (newLine < 0) {
+                result = content.length();
+            } else {
+                result = newLine;
+            }
+        } else {
+            for (final Doc child : children) {
+                result += child.flatWidth;
+                if (child.hardBreak || child.lineEnd) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Measure the layout with the broken lines until the first line of any kind, or the first line break in a text or a token.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param children See {@link Doc#children}.
+     * @return See {@link Doc#breakWidth}.
+     */
+    private static int computeBreakWidth(final DocKind kind, final String content, final List<Doc> children) {
+        int result = 0;
+        if (kind == DocKind.TEXT) {
+            result = computeFlatWidth(kind, content, children);
+        } else {
+            for (final Doc child : children) {
+                result += child.breakWidth;
+                if (!child.singleLine) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the document has a hard line anywhere.
+     * We don't stop at a line break in a text or a token because the hard lines after it must break too.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param children See {@link Doc#children}.
+     * @return See {@link Doc#hardBreak}.
+     */
+    private static boolean computeHardBreak(final DocKind kind, final List<Doc> children) {
+        boolean result = kind == DocKind.LINE;
+        for (final Doc child : children) {
+            if (child.hardBreak) {
+                result = true;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the document has a line break in a text or a token anywhere.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param children See {@link Doc#children}.
+     * @return See {@link Doc#lineEnd}.
+     */
+    private static boolean computeLineEnd(final DocKind kind, final String content, final List<Doc> children) {
+        boolean result = kind == DocKind.TEXT && content.indexOf('\n') >= 0;
+        for (final Doc child : children) {
+            if (child.lineEnd) {
+                result = true;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the document prints in one line in any layout.
+     *
+     * @param kind See {@link Doc#kind}.
+     * @param content See {@link Doc#content}.
+     * @param children See {@link Doc#children}.
+     * @return See {@link Doc#singleLine}.
+     */
+    private static boolean computeSingleLine(final DocKind kind, final String content, final List<Doc> children) {
+        boolean result = kind != DocKind.LINE && kind != DocKind.SOFT_LINE && content.indexOf('\n') < 0;
+        for (final Doc child : children) {
+            if (!child.singleLine) {
+                result = false;
+                break;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.levelrin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the parts of a {@link Doc} like {@link StringBuilder}.
+ * Child documents are kept as they are, so we don't copy their text.
+ * Consecutive literal texts are merged into one node.
+ */
+final class DocBuilder {
+
+    /**
+     * Documents we have collected so far.
+     */
+    private final List<Doc> parts;
+
+    /**
+     * Literal text that is not added to the parts yet.
+     */
+    private String pending;
+
+    /**
+     * Constructor.
+     */
+    DocBuilder() {
+        this.parts = new ArrayList<>();
+        this.pending = "";
+    }
+
+    /**
+     * Add a document.
+     * Empty ones are ignored.
+     *
+     * @param doc The document.
+     * @return Itself.
+     */
+    DocBuilder append(final Doc doc) {
+        if (!doc.isEmpty()) {
+            this.flush();
+            this.parts.add(doc);
+        }
+        return this;
+    }
+
+    /**
+     * Add a literal text.
+     *
+     * @param text The text.
+     * @return Itself.
+     */
+    DocBuilder append(final String text) {
+        this.pending = this.pending.concat(text);
+        return this;
+    }
+
+    /**
+     * Add a literal character.
+     *
+     * @param character The character.
+     * @return Itself.
+     */
+    DocBuilder append(final char character) {
+        this.pending = this.pending.concat(String.valueOf(character));
+        return this;
+    }
+
+    /**
+     * As is.
+     *
+     * @return The document with all the parts.
+     */
+    Doc build() {
+        this.flush();
+        final Doc result;
+        if (this.parts.isEmpty()) {
+            result = Doc.EMPTY;
+        } else if (this.parts.size() == 1) {
+            result = this.parts.get(0);
+        } else {
+            result = Doc.concat(List.copyOf(this.parts));
+        }
+        return result;
+    }
+
+    /**
+     * Move the pending literal text to the parts.
+     */
+    private void flush() {
+        if (!this.pending.isEmpty()) {
+            this.parts.add(Doc.text(this.pending));
+            this.pending = "";
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.levelrin;
+
+import java.util.List;
+
+/**
+ * Types of the {@link Doc} nodes.
+ */
+enum DocKind {
+
+    /**
+     * See {@link Doc#text(String)}.
+     */
+    TEXT,
+
+    /**
+     * See {@link Doc#token(SourceStream, int, int)}.
+     */
+    TOKEN,
+
+    /**
+     * See {@link Doc#line(int, int)}.
+     */
+    LINE,
+
+    /**
+     * See {@link Doc#softLine(String, int, int)}.
+     */
+    SOFT_LINE,
+
+    /**
+     * See {@link Doc#concat(List)}.
+     */
+    CONCAT,
+
+    /**
+     * See {@link Doc#group(Doc)}.
+     */
+    GROUP
+
+}
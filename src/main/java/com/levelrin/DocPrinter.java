@@ -0,0 +1,190 @@
+package com.levelrin;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lays out a {@link Doc} as text.
+ * It walks the document once without recursion.
+ * A group checks if it fits with the width its content has measured, and the width of what follows it in the line.
+ */
+public final class DocPrinter {
+
+    /**
+     * Line width without the limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Number of spaces for an indentation.
+     */
+    private static final String INDENT_UNIT = "  ";
+
+    /**
+     * Maximum line width for the groups.
+     */
+    private final int width;
+
+    /**
+     * Constructor without the line width limit.
+     */
+    public DocPrinter() {
+        this(UNLIMITED);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param width See {@link DocPrinter#width}.
+     */
+    public DocPrinter(final int width) {
+        this.width = width;
+    }
+
+    /**
+     * Print the document into a string.
+     *
+     * @param doc The document.
+     * @return Formatted code.
+     */
+    public String print(final Doc doc) {
+        final StringBuilder text = new StringBuilder();
+        try {
+            this.print(doc, text);
+        } catch (final IOException ex) {
+            throw new IllegalStateException("StringBuilder should not throw IOException.", ex);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Print the document into the sink as we go.
+     * We don't build the whole text in memory.
+     *
+     * @param doc The document.
+     * @param text We will append the formatted code into this. Ex: {@link java.io.Writer}.
+     * @throws IOException If the sink fails.
+     */
+    public void print(final Doc doc, final Appendable text) throws IOException {
+        final Deque<Doc> docs = new ArrayDeque<>();
+        // Whether the document is in a group that fits in the line.
+        final Deque<Boolean> flats = new ArrayDeque<>();
+        docs.push(doc);
+        flats.push(false);
+        int column = 0;
+        while (!docs.isEmpty()) {
+            final Doc current = docs.pop();
+            final boolean flat = flats.pop();
+            final DocKind kind = current.getKind();
+            if (kind == DocKind.CONCAT) {
+                final List<Doc> children = current.getChildren();
+                for (int index = children.size() - 1; index >= 0; index--) {
+                    docs.push(children.get(index));
+                    flats.push(flat);
+                }
+            } else if (kind == DocKind.GROUP) {
+                final Doc content = current.getChildren().get(0);
+                final boolean fits = flat || this.fits(content, this.width - column, docs, flats);
+                docs.push(content);
+                flats.push(fits);
+            } else {
+                column = this.emit(current, flat, text, column);
+            }
+        }
+    }
+
+    /**
+     * Print a text or a line.
+     * A hard line breaks even in a flat group.
+     *
+     * @param doc The document.
+     * @param flat Whether the document is in a group that fits in the line.
+     * @param text We will append the result into this.
+     * @param column The current column.
+     * @return The column after printing.
+     * @throws IOException If the sink fails.
+     */
+    private int emit(final Doc doc, final boolean flat, final Appendable text, final int column) throws IOException {
+        final int result;
+        if (doc.getKind() == DocKind.TOKEN) {
+            result = this.emitToken(doc, text, column);
+        } else if (doc.getKind() == DocKind.TEXT || flat && doc.getKind() == DocKind.SOFT_LINE) {
+            final String content = doc.getContent();
+            text.append(content);
+            final int lastNewLine = content.lastIndexOf('\n');
+            if (lastNewLine < 0) {
+                result = column + content.length();
+            } else {
+                result = content.length() - lastNewLine - 1;
+            }
+        } else {
+            for (int count = 0; count < doc.getNewLines(); count++) {
+                text.append('\n');
+            }
+            for (int count = 0; count < doc.getIndentLevel(); count++) {
+                text.append(INDENT_UNIT);
+            }
+            result = doc.getIndentLevel() * INDENT_UNIT.length();
+        }
+        return result;
+    }
+
+    /**
+     * Copy the token from the code into the sink.
+     *
+     * @param doc The document of {@link DocKind#TOKEN}.
+     * @param text We will append the result into this.
+     * @param column The current column.
+     * @return The column after printing.
+     * @throws IOException If the sink fails.
+     */
+    private int emitToken(final Doc doc, final Appendable text, final int column) throws IOException {
+        final SourceStream source = doc.getSource();
+        source.copy(doc.getStart(), doc.getStop(), text);
+        final int lastNewLine = source.lastIndexOf('\n', doc.getStart(), doc.getStop());
+        final int result;
+        if (lastNewLine < 0) {
+            result = column + doc.getStop() - doc.getStart() + 1;
+        } else {
+            result = doc.getStop() - lastNewLine;
+        }
+        return result;
+    }
+
+    /**
+     * Check if the document fits in the rest of the line when it's flat.
+     * A hard line anywhere in the document means it doesn't fit.
+     * The code after the document until the next line also needs to fit. Ex: `) + b;` after the arguments.
+     * The documents measured themselves when they were built, so we only add up the widths until the line is full.
+     *
+     * @param doc The document.
+     * @param available Number of columns left in the line.
+     * @param rest Documents we print after it.
+     * @param restFlats Whether each of {@code rest} is in a group that fits in the line.
+     * @return True if it fits.
+     */
+    private boolean fits(final Doc doc, final int available, final Deque<Doc> rest, final Deque<Boolean> restFlats) {
+        int remaining = available - doc.getFlatWidth();
+        boolean result = !doc.hasHardBreak() && remaining >= 0;
+        // Nothing follows in the same line if the document ends it, and there is nothing to fill without a limit.
+        boolean open = !doc.hasLineEnd() && this.width < UNLIMITED;
+        final Iterator<Doc> docs = rest.iterator();
+        final Iterator<Boolean> flats = restFlats.iterator();
+        while (result && open && docs.hasNext()) {
+            final Doc next = docs.next();
+            if (flats.next()) {
+                remaining -= next.getFlatWidth();
+                open = !next.hasHardBreak() && !next.hasLineEnd();
+            } else {
+                remaining -= next.getBreakWidth();
+                open = next.isSingleLine();
+            }
+            result = remaining >= 0;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Formatting session that we reuse for many files.
+ * It keeps one lexer, token stream, parser, and visitor, and resets them for each file,
+ * so formatting thousands of small files doesn't spend most of the time creating them.
+ * It's not thread-safe. Use one session per thread. Ex: {@link ThreadLocal#withInitial(java.util.function.Supplier)}.
+ */
+public final class Formatter {
+
+    /**
+     * Version of the formatter.
+     */
+    public static final String VERSION = "0.0.2";
+
+    /**
+     * For logging.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Formatter.class);
+
+    /**
+     * Resource of the code we format in {@link Formatter#warmUp()}.
+     */
+    private static final String WARM_UP_CODE = "/warm-up.dart";
+
+    /**
+     * Minimum number of tokens of a file we parse in chunks.
+     * Creating the parsers and the tasks costs more than parsing a smaller file on one thread.
+     */
+    private static final int CHUNKED_TOKENS = 20_000;
+
+    /**
+     * We give it the code of each file.
+     */
+    private final Dart2Lexer lexer;
+
+    /**
+     * We point it to the lexer again for each file, and it keeps its token list.
+     */
+    private final CommonTokenStream tokens;
+
+    /**
+     * We give it the tokens of each file.
+     */
+    private final Dart2Parser parser;
+
+    /**
+     * We reset it for each file.
+     */
+    private final DartVisitor visitor;
+
+    /**
+     * Parses a large file in parallel. It's null if we don't have a pool.
+     */
+    private final ChunkedParser chunked;
+
+    /**
+     * For printing the result.
+     */
+    private final DocPrinter printer;
+
+    /**
+     * Gives up at the first syntax error in the fast parsing.
+     */
+    private final ANTLRErrorStrategy bail;
+
+    /**
+     * Reports the syntax error in the full parsing. It's the default one of the parser.
+     */
+    private final ANTLRErrorStrategy recovery;
+
+    /**
+     * Throws the syntax error in the full parsing.
+     * The fast parsing has no listeners, so the error reaches {@link Formatter#bail} and we fall back.
+     */
+    private final ANTLRErrorListener listener;
+
+    /**
+     * Number of files we had to parse again with the full LL prediction.
+     */
+    private int fallbacks;
+
+    /**
+     * Constructor.
+     *
+     * @param pool See {@link DartVisitor#DartVisitor(CommonTokenStream, ForkJoinPool, int)}.
+     * @param lineWidth See {@link DartVisitor#DartVisitor(CommonTokenStream, ForkJoinPool, int)}.
+     */
+    public Formatter(final ForkJoinPool pool, final int lineWidth) {
+        this(pool, lineWidth, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pool See {@link DartVisitor#DartVisitor(CommonTokenStream, ForkJoinPool, int, Memo)}.
+     * @param lineWidth See {@link DartVisitor#DartVisitor(CommonTokenStream, ForkJoinPool, int, Memo)}.
+     * @param memo See {@link DartVisitor#DartVisitor(CommonTokenStream, ForkJoinPool, int, Memo)}. The sessions of other threads can share it.
+     */
+    public Formatter(final ForkJoinPool pool, final int lineWidth, final Memo memo) {
+        this.lexer = new Dart2Lexer(SourceStream.fromString(""));
+        this.tokens = new CommonTokenStream(this.lexer);
+        this.parser = new Dart2Parser(this.tokens);
+        this.visitor = new DartVisitor(this.tokens, pool, lineWidth, memo);
+        if (pool == null) {
+            this.chunked = null;
+        } else {
+            this.chunked = new ChunkedParser(pool);
+        }
+        this.printer = new DocPrinter(lineWidth);
+        this.bail = new BailErrorStrategy();
+        this.recovery = this.parser.getErrorHandler();
+        this.listener = new ThrowableErrorListener();
+    }
+
+    /**
+     * Format the code into a string.
+     *
+     * @param code Code before formatting.
+     * @return Formatted code.
+     */
+    public String format(final CharStream code) {
+        return this.printer.print(this.document(code));
+    }
+
+    /**
+     * Parse the code and build the document.
+     * Setting the input resets the lexer, the token stream, and the parser.
+     * It works even if the previous file failed in the middle.
+     * Build it before opening the output, so a syntax error doesn't leave the file empty.
+     *
+     * @param code Code before formatting.
+     * @return The document.
+     */
+    public Doc document(final CharStream code) {
+        this.lexer.setInputStream(code);
+        this.tokens.setTokenSource(this.lexer);
+        this.parser.setTokenStream(this.tokens);
+        final ParseTree tree = this.parse();
+        this.visitor.reset(this.tokens);
+        return this.visitor.visit(tree);
+    }
+
+    /**
+     * Format the code shipped with the formatter and throw away the result.
+     * ANTLR starts with an empty DFA cache in every JVM, so the first files are parsed slowly.
+     * The cache is shared by all parsers, so the files we format after this are parsed faster in every session.
+     * It's worth it only if we format many files or care about the latency of each file. Ex: a daemon.
+     */
+    public static void warmUp() {
+        try (InputStream input = Formatter.class.getResourceAsStream(WARM_UP_CODE)) {
+            final String code = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            new Formatter(null, DocPrinter.UNLIMITED).document(SourceStream.fromString(code, WARM_UP_CODE));
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Failed to read the code for the warm-up.", ex);
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Formatter#fallbacks}.
+     */
+    public int getFallbacks() {
+        return this.fallbacks;
+    }
+
+    /**
+     * Parse the tokens.
+     * If we have a pool and the file is large, we parse the top-level declarations in parallel with {@link ChunkedParser}.
+     * Otherwise, or if it can't cut the file, we parse the whole file.
+     *
+     * @return The parse tree.
+     */
+    private ParseTree parse() {
+        ParseTree result = null;
+        if (this.chunked != null) {
+            this.tokens.fill();
+            if (this.tokens.size() >= CHUNKED_TOKENS) {
+                result = this.chunked.parse(this.tokens.getTokens());
+            }
+        }
+        if (result == null) {
+            result = this.parseWhole();
+        }
+        return result;
+    }
+
+    /**
+     * Parse the tokens in two stages.
+     * First, we use the SLL prediction that doesn't look at the full context, and give up at the first syntax error.
+     * It's enough for most code and much faster.
+     * If it fails, we parse again with the full LL prediction, which reports the actual syntax error if there is one.
+     *
+     * @return The parse tree.
+     */
+    private ParseTree parseWhole() {
+        this.parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        this.parser.setErrorHandler(this.bail);
+        this.parser.removeErrorListeners();
+        ParseTree result;
+        try {
+            result = this.parser.compilationUnit();
+        } catch (final ParseCancellationException ex) {
+            this.fallbacks++;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Parsing `{}` again with the full LL prediction.", this.tokens.getSourceName(), ex);
+            }
+            this.tokens.seek(0);
+            this.parser.reset();
+            this.parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            this.parser.setErrorHandler(this.recovery);
+            this.parser.addErrorListener(this.listener);
+            result = this.parser.compilationUnit();
+        }
+        return result;
+    }
+
+    /**
+     * Print the document into the sink as we go.
+     *
+     * @param doc The document from {@link Formatter#document(CharStream)}.
+     * @param output We will append the formatted code into this. Ex: {@link java.io.Writer}.
+     * @throws IOException If the sink fails.
+     */
+    public void print(final Doc doc, final Appendable output) throws IOException {
+        this.printer.print(doc, output);
+    }
+
+}
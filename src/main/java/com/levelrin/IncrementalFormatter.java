@@ -0,0 +1,534 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Formatting session for one document that we format again after every small edit. Ex: a file open in an editor.
+ * It keeps the tokens of the document and the formatted top-level declarations, cut like {@link ChunkedParser} does.
+ * For each edit, we lex again from the declaration where the edit starts until a declaration starts at the same code as before.
+ * Then, we parse and format only the declarations in between, and keep the formatted results of the others.
+ * The lexer has no modes, so lexing from the start of a token gives the same tokens as lexing the whole document.
+ * If we can't cut the document into declarations, we format the whole document with {@link Formatter}.
+ * Ex: a part file, or a syntax error.
+ * It's not thread-safe.
+ */
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
+public final class IncrementalFormatter {
+
+    /**
+     * We lex the changed code with it.
+     */
+    private final Dart2Lexer lexer;
+
+    /**
+     * We reset it for each edit, and it formats the changed declarations.
+     */
+    private final DartVisitor visitor;
+
+    /**
+     * For printing the result.
+     */
+    private final DocPrinter printer;
+
+    /**
+     * It formats the whole document if we can't cut it into declarations.
+     */
+    private final Formatter whole;
+
+    /**
+     * The current code.
+     */
+    private String code;
+
+    /**
+     * Tokens of the current code, ending with EOF.
+     */
+    private List<Token> tokens;
+
+    /**
+     * Top-level declarations of the current code in order, and the end of the file as the last one.
+     * It's empty if we formatted the whole document.
+     */
+    private List<Declaration> declarations;
+
+    /**
+     * Number of declarations we parsed and formatted in the last call.
+     */
+    private int reparsed;
+
+    /**
+     * Constructor.
+     *
+     * @param lineWidth See {@link DartVisitor#DartVisitor(CommonTokenStream, java.util.concurrent.ForkJoinPool, int)}.
+     */
+    public IncrementalFormatter(final int lineWidth) {
+        this.lexer = new Dart2Lexer(SourceStream.fromString(""));
+        this.visitor = new DartVisitor(new CommonTokenStream(this.lexer), null, lineWidth);
+        this.printer = new DocPrinter(lineWidth);
+        this.whole = new Formatter(null, lineWidth);
+        this.code = "";
+        this.tokens = Collections.emptyList();
+        this.declarations = Collections.emptyList();
+    }
+
+    /**
+     * Forget the previous document and format the new one.
+     *
+     * @param text Code before formatting.
+     * @return Formatted code.
+     */
+    public String format(final String text) {
+        this.code = "";
+        this.tokens = Collections.emptyList();
+        this.declarations = Collections.emptyList();
+        return this.edit(0, 0, text);
+    }
+
+    /**
+     * Replace a range of the code and format the result.
+     * The offsets are the indices of the characters in the code we have. Ex: {@link String#substring(int, int)}.
+     *
+     * @param offset Index of the first character we replace.
+     * @param length Number of characters we replace.
+     * @param replacement The new text of the range.
+     * @return The formatted code after the edit.
+     */
+    public String edit(final int offset, final int length, final String replacement) {
+        final String previous = this.code;
+        final String text = previous.substring(0, offset) + replacement + previous.substring(offset + length);
+        // The tokens have the indices of the code points.
+        final int start = previous.codePointCount(0, offset);
+        final int stop = start + previous.codePointCount(offset, offset + length);
+        final int shift = replacement.codePointCount(0, replacement.length()) - (stop - start);
+        final SourceStream stream = SourceStream.fromString(text);
+        this.code = text;
+        this.reparsed = 0;
+        final String result;
+        if (this.update(stream, start, stop, shift)) {
+            result = this.printer.print(this.join());
+        } else {
+            this.tokens = Collections.emptyList();
+            this.declarations = Collections.emptyList();
+            // Setting the input doesn't rewind it.
+            stream.seek(0);
+            result = this.whole.format(stream);
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link IncrementalFormatter#reparsed}.
+     */
+    public int getReparsed() {
+        return this.reparsed;
+    }
+
+    /**
+     * Lex the changed code, and parse and format the changed declarations.
+     *
+     * @param stream The code after the edit.
+     * @param start Index of the first code point of the edit.
+     * @param stop Index of the code point after the edit in the code before the edit.
+     * @param shift Number of code points the edit added. It's negative if it removed them.
+     * @return True if we could cut the code into declarations.
+     */
+    private boolean update(final SourceStream stream, final int start, final int stop, final int shift) {
+        final int first = this.firstChanged(start);
+        final int from;
+        if (first == 0) {
+            // The edit may add code before the first token.
+            from = 0;
+            this.lexer.setInputStream(stream);
+        } else {
+            from = this.declarations.get(first).start;
+            final Token restart = this.tokens.get(from);
+            this.lexer.setInputStream(stream);
+            stream.seek(restart.getStartIndex());
+            this.lexer.setLine(restart.getLine());
+            this.lexer.setCharPositionInLine(restart.getCharPositionInLine());
+        }
+        final Pair<TokenSource, CharStream> source = new Pair<>(this.lexer, stream);
+        final List<Token> next = new ArrayList<>(this.tokens.size() + 1);
+        for (int index = 0; index < from; index++) {
+            next.add(moved(this.tokens.get(index), source, 0, 0, 0));
+        }
+        final List<Integer> starts = this.relex(next, first, stop, shift);
+        final int reused = this.reused(next, starts, shift);
+        if (reused >= 0) {
+            final Token origin = this.tokens.get(this.declarations.get(reused).start);
+            final Token target = next.remove(next.size() - 1);
+            final int columnShift = target.getCharPositionInLine() - origin.getCharPositionInLine();
+            final int lineShift = target.getLine() - origin.getLine();
+            for (int index = this.declarations.get(reused).start; index < this.tokens.size(); index++) {
+                final Token token = this.tokens.get(index);
+                int column = 0;
+                if (token.getLine() == origin.getLine()) {
+                    column = columnShift;
+                }
+                next.add(moved(token, source, shift, lineShift, column));
+            }
+        }
+        return this.reparse(next, first, starts, reused);
+    }
+
+    /**
+     * Lex from the start of the declaration until a declaration starts at the code after the edit that started a declaration before.
+     * We find the declarations like {@link ChunkedParser}.
+     *
+     * @param next Tokens after the edit. We append the new tokens to it.
+     * @param first Index of the first changed declaration.
+     * @param stop See {@link IncrementalFormatter#update(SourceStream, int, int, int)}.
+     * @param shift See {@link IncrementalFormatter#update(SourceStream, int, int, int)}.
+     * @return Index of the first token of each new declaration in {@code next}, and the start of the next one at the end.
+     *         Or an empty list if the brackets are not balanced.
+     */
+    private List<Integer> relex(final List<Token> next, final int first, final int stop, final int shift) {
+        final List<Integer> result = new ArrayList<>();
+        result.add(next.size());
+        int depth = 0;
+        int lowest = 0;
+        int previous = Token.INVALID_TYPE;
+        int previousIndex = next.size() - 1;
+        boolean done = false;
+        while (!done) {
+            final Token token = this.lexer.nextToken();
+            next.add(token);
+            if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+                final int type = token.getType();
+                if (depth == 0 && ChunkedParser.endsDeclaration(previous, type)) {
+                    result.add(previousIndex + 1);
+                    done = this.lineUp(next.get(previousIndex + 1), first, stop, shift) >= 0;
+                }
+                depth += ChunkedParser.depth(type);
+                lowest = Math.min(lowest, depth);
+                previous = type;
+                previousIndex = next.size() - 1;
+                done = done || type == Token.EOF;
+            }
+        }
+        if (lowest < 0 || depth != 0 && previous == Token.EOF) {
+            result.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Drop the tokens we lexed after the start of the declaration that we keep.
+     *
+     * @param next Tokens after the edit.
+     * @param starts See {@link IncrementalFormatter#relex(List, int, int, int)}.
+     * @param shift See {@link IncrementalFormatter#update(SourceStream, int, int, int)}.
+     * @return Index of the declaration we keep from there, or -1 if we lexed until the end of the file.
+     *         The first token of the declaration stays at the end of {@code next}, so we can compare the lines.
+     */
+    private int reused(final List<Token> next, final List<Integer> starts, final int shift) {
+        int result = -1;
+        if (!starts.isEmpty() && next.get(next.size() - 1).getType() != Token.EOF) {
+            final int start = starts.get(starts.size() - 1);
+            result = this.lineUp(next.get(start), -1, Integer.MIN_VALUE, shift);
+            next.subList(start + 1, next.size()).clear();
+        }
+        return result;
+    }
+
+    /**
+     * Find the declaration that started at the same code before the edit.
+     *
+     * @param token The first token of a new declaration.
+     * @param first Index of the first changed declaration. We only look after it.
+     * @param stop See {@link IncrementalFormatter#update(SourceStream, int, int, int)}. The code before it may be different.
+     * @param shift See {@link IncrementalFormatter#update(SourceStream, int, int, int)}.
+     * @return Index of the declaration, or -1 if there is none.
+     */
+    private int lineUp(final Token token, final int first, final int stop, final int shift) {
+        final int offset = token.getStartIndex() - shift;
+        int result = -1;
+        if (offset >= stop) {
+            int low = first + 1;
+            int high = this.declarations.size() - 1;
+            while (low <= high && result < 0) {
+                final int middle = low + high >>> 1;
+                final int current = this.tokens.get(this.declarations.get(middle).start).getStartIndex();
+                if (current < offset) {
+                    low = middle + 1;
+                } else if (current > offset) {
+                    high = middle - 1;
+                } else {
+                    result = middle;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the first declaration that the edit may change.
+     * It's the one with the last token on the default channel before the edit,
+     * because the edit may change whether the token ends the declaration. Ex: adding `;` after `}`.
+     *
+     * @param start See {@link IncrementalFormatter#update(SourceStream, int, int, int)}.
+     * @return Index of the declaration.
+     */
+    private int firstChanged(final int start) {
+        int low = 0;
+        int high = this.declarations.size() - 1;
+        while (low < high) {
+            final int middle = low + high + 1 >>> 1;
+            if (this.firstCode(this.declarations.get(middle)).getStartIndex() < start) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * As is.
+     *
+     * @param declaration A declaration before the edit.
+     * @return Its first token on the default channel, or EOF.
+     */
+    private Token firstCode(final Declaration declaration) {
+        int index = declaration.start;
+        while (this.tokens.get(index).getChannel() != Token.DEFAULT_CHANNEL) {
+            index++;
+        }
+        return this.tokens.get(index);
+    }
+
+    /**
+     * Parse and format the new declarations, and keep the others.
+     *
+     * @param next All tokens after the edit.
+     * @param first Index of the first changed declaration.
+     * @param starts See {@link IncrementalFormatter#relex(List, int, int, int)}.
+     * @param reused See {@link IncrementalFormatter#reused(List, List, int)}.
+     * @return True if all new declarations parse and they are in the order of {@link Dart2Parser.LibraryDeclarationContext}.
+     */
+    private boolean reparse(final List<Token> next, final int first, final List<Integer> starts, final int reused) {
+        boolean result = !starts.isEmpty();
+        if (result) {
+            final CommonTokenStream stream = new CommonTokenStream(new ListTokenSource(next));
+            stream.fill();
+            this.visitor.reset(stream);
+            final List<Declaration> updated = new ArrayList<>(this.declarations.subList(0, first));
+            for (int index = 1; result && index < starts.size(); index++) {
+                final Declaration declaration = this.declaration(next, starts.get(index - 1), starts.get(index));
+                result = declaration != null;
+                updated.add(declaration);
+            }
+            if (reused < 0) {
+                updated.add(new Declaration(starts.get(starts.size() - 1)));
+                result = result && this.endOfFile(next, starts.get(starts.size() - 1));
+            } else {
+                final int move = starts.get(starts.size() - 1) - this.declarations.get(reused).start;
+                for (final Declaration declaration : this.declarations.subList(reused, this.declarations.size())) {
+                    updated.add(declaration.moved(move));
+                }
+            }
+            this.tokens = next;
+            this.declarations = updated;
+            result = result && inOrder(updated);
+        }
+        return result;
+    }
+
+    /**
+     * Parse and format a new declaration.
+     *
+     * @param next All tokens after the edit.
+     * @param start Index of the first token of the declaration, inclusive.
+     * @param end Index of the last token of the declaration, exclusive.
+     * @return The declaration, or null if it doesn't parse.
+     */
+    private Declaration declaration(final List<Token> next, final int start, final int end) {
+        final Dart2Parser.LibraryDeclarationContext chunk = ChunkedParser.parseChunk(next, start, end);
+        Declaration result = null;
+        if (chunk != null) {
+            this.reparsed++;
+            result = new Declaration(start);
+            if (chunk.libraryName() != null) {
+                result.add(Dart2Parser.RULE_libraryName, this.visitor.visit(chunk.libraryName()));
+            }
+            for (final Dart2Parser.ImportOrExportContext importOrExportContext : chunk.importOrExport()) {
+                result.add(Dart2Parser.RULE_importOrExport, this.visitor.visit(importOrExportContext));
+            }
+            for (final Dart2Parser.PartDirectiveContext partDirectiveContext : chunk.partDirective()) {
+                result.add(Dart2Parser.RULE_partDirective, this.visitor.visit(partDirectiveContext));
+            }
+            final List<Dart2Parser.TopLevelDeclarationContext> topLevelDeclarationContexts = chunk.topLevelDeclaration();
+            for (final Doc doc : this.visitor.visitDeclarations(chunk.metadata(), topLevelDeclarationContexts, 0, topLevelDeclarationContexts.size())) {
+                result.add(Dart2Parser.RULE_topLevelDeclaration, doc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if only comments are left after the last declaration.
+     *
+     * @param next All tokens after the edit.
+     * @param start Index of the token after the last declaration.
+     * @return True if the next token on the default channel is EOF.
+     */
+    private boolean endOfFile(final List<Token> next, final int start) {
+        int index = start;
+        while (next.get(index).getChannel() != Token.DEFAULT_CHANNEL) {
+            index++;
+        }
+        return next.get(index).getType() == Token.EOF;
+    }
+
+    /**
+     * Put the formatted declarations together like {@link DartVisitor#visitCompilationUnit(Dart2Parser.CompilationUnitContext)}.
+     *
+     * @return The document.
+     */
+    private Doc join() {
+        Doc libraryNameText = null;
+        final List<Doc> importOrExportTexts = new ArrayList<>();
+        final List<Doc> partDirectiveTexts = new ArrayList<>();
+        final List<Doc> topLevelDeclarationTexts = new ArrayList<>(this.declarations.size());
+        for (final Declaration declaration : this.declarations) {
+            for (int index = 0; index < declaration.rules.size(); index++) {
+                final int rule = declaration.rules.get(index);
+                final Doc doc = declaration.docs.get(index);
+                if (rule == Dart2Parser.RULE_libraryName) {
+                    libraryNameText = doc;
+                } else if (rule == Dart2Parser.RULE_importOrExport) {
+                    importOrExportTexts.add(doc);
+                } else if (rule == Dart2Parser.RULE_partDirective) {
+                    partDirectiveTexts.add(doc);
+                } else {
+                    topLevelDeclarationTexts.add(doc);
+                }
+            }
+        }
+        return this.visitor.joinUnit(this.visitor.joinLibrary(libraryNameText, importOrExportTexts, partDirectiveTexts, topLevelDeclarationTexts));
+    }
+
+    /**
+     * Check if the parts of the declarations come in the order of {@link Dart2Parser.LibraryDeclarationContext}.
+     * Otherwise, the whole code is not a library declaration. Ex: an import after a class.
+     *
+     * @param declarations All declarations.
+     * @return True if they are in order.
+     */
+    private static boolean inOrder(final List<Declaration> declarations) {
+        boolean result = true;
+        int previous = 0;
+        int count = 0;
+        for (final Declaration declaration : declarations) {
+            for (final int rule : declaration.rules) {
+                final int current = ChunkedParser.position(rule);
+                // The library name must be the first one, and only once.
+                result = result && current >= previous && (current > 0 || count == 0);
+                previous = current;
+                count++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copy the token into the code after the edit.
+     *
+     * @param token A token before the edit.
+     * @param source The lexer and the code after the edit.
+     * @param shift Number of code points the token moves.
+     * @param lineShift Number of lines the token moves.
+     * @param columnShift Number of code points the token moves in its line.
+     * @return The token after the edit.
+     */
+    private static Token moved(final Token token, final Pair<TokenSource, CharStream> source, final int shift, final int lineShift, final int columnShift) {
+        final CommonToken result = new CommonToken(source, token.getType(), token.getChannel(), token.getStartIndex() + shift, token.getStopIndex() + shift);
+        result.setLine(token.getLine() + lineShift);
+        result.setCharPositionInLine(token.getCharPositionInLine() + columnShift);
+        return result;
+    }
+
+    /**
+     * Tokens from the end of the previous declaration until the end of this one, and their formatted parts.
+     * The comments before a declaration belong to it, because we print them with its first token.
+     */
+    private static final class Declaration {
+
+        /**
+         * Index of the first token.
+         */
+        private final int start;
+
+        /**
+         * Rule index of each part. Ex: {@link Dart2Parser#RULE_importOrExport}.
+         */
+        private final List<Integer> rules;
+
+        /**
+         * Formatted parts in the same order as {@link Declaration#rules}.
+         * Metadata is a part of the declaration after it.
+         * They have texts instead of tokens, so the declarations we keep don't refer to the code of a previous edit.
+         */
+        private final List<Doc> docs;
+
+        /**
+         * Constructor for a new declaration.
+         *
+         * @param start See {@link Declaration#start}.
+         */
+        Declaration(final int start) {
+            this(start, new ArrayList<>(1), new ArrayList<>(1));
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param start See {@link Declaration#start}.
+         * @param rules See {@link Declaration#rules}.
+         * @param docs See {@link Declaration#docs}.
+         */
+        private Declaration(final int start, final List<Integer> rules, final List<Doc> docs) {
+            this.start = start;
+            this.rules = rules;
+            this.docs = docs;
+        }
+
+        /**
+         * Remember the formatted part without the code of the current edit.
+         * See {@link Doc#detach(Doc)}.
+         *
+         * @param rule Rule index of the part.
+         * @param doc The formatted part.
+         */
+        void add(final int rule, final Doc doc) {
+            this.rules.add(rule);
+            this.docs.add(Doc.detach(doc));
+        }
+
+        /**
+         * As is.
+         *
+         * @param move Number of tokens the declaration moves.
+         * @return The same declaration that starts at another token.
+         */
+        Declaration moved(final int move) {
+            return new Declaration(this.start + move, this.rules, this.docs);
+        }
+
+    }
+
+}
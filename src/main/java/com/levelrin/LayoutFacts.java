@@ -0,0 +1,236 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Facts about a subtree that we need to decide the layout before formatting it.
+ * Each subtree is inspected only once, no matter how deep the nested calls are.
+ */
+final class LayoutFacts {
+
+    /**
+     * Index of the number of {@link Dart2Parser.ArgumentsContext} in a fact array.
+     */
+    private static final int ARGUMENTS = 0;
+
+    /**
+     * Index of the number of {@link Dart2Parser.IdentifierContext} in a fact array.
+     */
+    private static final int IDENTIFIERS = 1;
+
+    /**
+     * Index of the number of {@link Dart2Parser.UnconditionalAssignableSelectorContext} in a fact array.
+     */
+    private static final int SELECTORS = 2;
+
+    /**
+     * Index of the number of cascade sections in a fact array. See {@link Dart2Parser.CascadeContext#cascadeSection()}.
+     */
+    private static final int CASCADES = 3;
+
+    /**
+     * Index of the number of expression statements with method chaining in a fact array.
+     */
+    private static final int CHAINED_STATEMENTS = 4;
+
+    /**
+     * Length of a fact array.
+     */
+    private static final int FACT_COUNT = 5;
+
+    /**
+     * Facts of the subtrees we have inspected so far.
+     * Key - Root of the subtree.
+     * Value - Fact array. Each element is the number of descendants for the index constants above.
+     */
+    private final Map<ParseTree, int[]> cache;
+
+    /**
+     * For checking the existence of descendants.
+     */
+    private final RuleIndex ruleIndex;
+
+    /**
+     * Constructor.
+     *
+     * @param ruleIndex See {@link LayoutFacts#ruleIndex}.
+     */
+    LayoutFacts(final RuleIndex ruleIndex) {
+        this.cache = new IdentityHashMap<>();
+        this.ruleIndex = ruleIndex;
+    }
+
+    /**
+     * Check if the argument list should put each argument on its own line.
+     * We assume nested constructor calls or named arguments require that.
+     * Ex: User(User('Rin')) or User(name: 'Rin').
+     *
+     * @param context The argument list.
+     * @return True if we should indent the arguments.
+     */
+    boolean indentsArguments(final Dart2Parser.ArgumentListContext context) {
+        return this.ruleIndex.hasDescendant(context, Dart2Parser.RULE_arguments)
+            || this.ruleIndex.hasDescendant(context, Dart2Parser.RULE_namedArgument);
+    }
+
+    /**
+     * Check if the subtree has an expression statement that is formatted with method chaining.
+     * Such a statement turns off the method chaining when it's done.
+     *
+     * @param context The root of the subtree.
+     * @return True if the method chaining is turned off after formatting the subtree.
+     */
+    boolean resetsChaining(final ParserRuleContext context) {
+        return this.facts(context)[CHAINED_STATEMENTS] > 0;
+    }
+
+    /**
+     * Check if the expression chains method calls or cascades.
+     * We format such an expression statement with method chaining.
+     *
+     * @param context The expression.
+     * @return True if it's chained. Ex: a.b().c(), a..b()..c(), or a.b()..c().
+     */
+    boolean chains(final Dart2Parser.ExprContext context) {
+        return chained(this.facts(context));
+    }
+
+    /**
+     * Forget the facts of the tree we have inspected so far.
+     * The cache keeps its capacity for the next tree.
+     */
+    void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * Compute the facts of the subtree.
+     * We walk the tree without recursion and sum up the children after visiting all of them.
+     * The facts of the nested argument lists and expression statements are cached along the way.
+     *
+     * @param subject The root of the subtree.
+     * @return Fact array.
+     */
+    private int[] facts(final ParserRuleContext subject) {
+        int[] result = this.cache.get(subject);
+        if (result == null) {
+            final Map<ParseTree, int[]> sums = new IdentityHashMap<>();
+            final List<ParserRuleContext> order = this.preOrder(subject, sums);
+            // Parents always come before their children in the order, so we can sum up in reverse.
+            for (int index = order.size() - 1; index >= 0; index--) {
+                final ParserRuleContext node = order.get(index);
+                final int[] sum = sums.get(node);
+                if (!this.cache.containsKey(node)) {
+                    this.count(sum, node);
+                    this.remember(sum, subject, node);
+                }
+                if (!node.equals(subject)) {
+                    final int[] parentSum = sums.get(node.getParent());
+                    for (int fact = 0; fact < FACT_COUNT; fact++) {
+                        parentSum[fact] += sum[fact];
+                    }
+                }
+            }
+            result = sums.get(subject);
+        }
+        return result;
+    }
+
+    /**
+     * List the nodes of the subtree in pre-order.
+     * We don't go into the nodes that we already know the facts.
+     *
+     * @param subject The root of the subtree.
+     * @param sums We will put an empty fact array or the cached one for each node.
+     * @return Nodes in pre-order.
+     */
+    private List<ParserRuleContext> preOrder(final ParserRuleContext subject, final Map<ParseTree, int[]> sums) {
+        final List<ParserRuleContext> order = new ArrayList<>();
+        final Deque<ParserRuleContext> stack = new ArrayDeque<>();
+        stack.push(subject);
+        while (!stack.isEmpty()) {
+            final ParserRuleContext node = stack.pop();
+            order.add(node);
+            final int[] cached = this.cache.get(node);
+            if (cached == null) {
+                sums.put(node, new int[FACT_COUNT]);
+                for (int index = 0; index < node.getChildCount(); index++) {
+                    final ParseTree child = node.getChild(index);
+                    if (child instanceof ParserRuleContext) {
+                        stack.push((ParserRuleContext) child);
+                    }
+                }
+            } else {
+                sums.put(node, cached);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Cache the facts if the visitor will ask about the node.
+     *
+     * @param sum Fact array of the node.
+     * @param subject The root of the subtree we are inspecting.
+     * @param node The node.
+     */
+    private void remember(final int[] sum, final ParserRuleContext subject, final ParserRuleContext node) {
+        final boolean expressionStatement = node instanceof Dart2Parser.ExprContext && node.getParent() instanceof Dart2Parser.ExpressionStatementContext;
+        if (node.equals(subject) || node instanceof Dart2Parser.ArgumentListContext || expressionStatement) {
+            this.cache.put(node, sum);
+        }
+    }
+
+    /**
+     * Add the node itself to the facts of its subtree.
+     * The facts of the children must be added already.
+     *
+     * @param sum Fact array of the subtree.
+     * @param node The node.
+     */
+    private void count(final int[] sum, final ParserRuleContext node) {
+        switch (node.getRuleIndex()) {
+            case Dart2Parser.RULE_arguments:
+                sum[ARGUMENTS]++;
+                break;
+            case Dart2Parser.RULE_identifier:
+                sum[IDENTIFIERS]++;
+                break;
+            case Dart2Parser.RULE_unconditionalAssignableSelector:
+                sum[SELECTORS]++;
+                break;
+            case Dart2Parser.RULE_cascade:
+                sum[CASCADES] += node.getRuleContexts(Dart2Parser.CascadeSectionContext.class).size();
+                break;
+            default:
+                break;
+        }
+        if (node instanceof Dart2Parser.ExpressionStatementContext) {
+            final Dart2Parser.ExprContext exprContext = ((Dart2Parser.ExpressionStatementContext) node).expr();
+            if (exprContext != null && chained(this.cache.get(exprContext))) {
+                sum[CHAINED_STATEMENTS]++;
+            }
+        }
+    }
+
+    /**
+     * Check if an expression chains method calls or cascades from its facts.
+     *
+     * @param facts Fact array of the expression.
+     * @return True if it's chained.
+     */
+    private static boolean chained(final int... facts) {
+        final boolean mixed = facts[SELECTORS] > 0 && facts[IDENTIFIERS] > 0 && facts[CASCADES] > 0;
+        final boolean methods = facts[SELECTORS] > 1 && facts[IDENTIFIERS] > 1 && facts[ARGUMENTS] > 1;
+        return mixed || methods || facts[CASCADES] > 1;
+    }
+
+}
@@ -1,17 +1,17 @@
 package com.levelrin;
 
-import com.levelrin.antlr.generated.Dart2Lexer;
-import com.levelrin.antlr.generated.Dart2Parser;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -24,8 +24,20 @@ import org.slf4j.LoggerFactory;
 /**
  * Entrypoint of the formatter via command line.
  */
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
 public final class Main {
 
+    /**
+     * Number of decisions in the report of {@link Profiler}.
+     */
+    private static final int PROFILED_DECISIONS = 20;
+
+    /**
+     * Message of the exception when we fail to read a file in a directory.
+     */
+    private static final String READ_FAILURE = "Failed to read the file. path: ";
+
     /**
      * As is.
      *
@@ -36,7 +48,15 @@ public final class Main {
         options.addOption("h", "help", false, "Show help messages.")
             .addOption("v", "version", false, "Print the version.")
             .addOption("q", "quiet", false, "Do not print debug logs.")
-            .addOption("r", "recursive", true, "Format files in the directory recursively.");
+            .addOption("r", "recursive", true, "Format files in the directory recursively.")
+            .addOption("p", "parallel", false, "Format top-level declarations and class members of each file in parallel. Large files are also parsed in chunks of top-level declarations.")
+            .addOption("w", "width", true, "Break arguments, cascades, and list literals only if they don't fit in the line width.")
+            .addOption("m", "memo", true, "Reuse the formatted code of up to the given number of repeated subtrees across the files. Ex: 10000.")
+            .addOption("W", "warm-up", false, "Parse the built-in code before formatting, so each file is parsed faster.")
+            .addOption("d", "dfa-cache", false, "Load what the parser learned in the previous runs from the user cache directory, and save it after formatting.")
+            .addOption("M", "map-threshold", true, "Memory-map the files larger than the given number of bytes instead of reading them into the heap. Ex: 67108864.")
+            .addOption("P", "profile", false, "Parse the files without formatting them, and log the decisions of the parser that look ahead the most.")
+            .addOption("t", "trace", false, "Log the visits of the rules. Use the system properties dart-stylerin.trace.rules and dart-stylerin.trace.sample to filter them.");
         final CommandLineParser parser = new DefaultParser();
         final CommandLine cmd = parser.parse(options, args);
         if (cmd.hasOption('h')) {
@@ -45,62 +65,227 @@ public final class Main {
         } else if (cmd.hasOption('v')) {
             final Logger logger = LoggerFactory.getLogger(Main.class);
             if (logger.isInfoEnabled()) {
-                logger.info("dart-stylerin 0.0.2");
+                logger.info("dart-stylerin {}", Formatter.VERSION);
             }
         } else {
             if (cmd.hasOption('q')) {
                 System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "INFO");
             }
-            if (cmd.hasOption('r')) {
-                formatDirectory(cmd.getOptionValue('r'));
+            if (cmd.hasOption('t')) {
+                // It must be set before the formatter reads it for the first time.
+                System.setProperty("dart-stylerin.trace", "true");
             }
-            for (final String arg : cmd.getArgs()) {
-                formatDirectory(arg);
+            if (cmd.hasOption('P')) {
+                profileAll(cmd);
+            } else if (cmd.hasOption('d')) {
+                final DfaSnapshot snapshot = DfaSnapshot.inCacheDirectory();
+                snapshot.load();
+                formatAll(cmd);
+                snapshot.save();
+            } else {
+                formatAll(cmd);
             }
         }
     }
 
+    /**
+     * Format the files in the arguments.
+     *
+     * @param cmd Command line options.
+     * @throws IOException As is.
+     */
+    private static void formatAll(final CommandLine cmd) throws IOException {
+        if (cmd.hasOption('W')) {
+            Formatter.warmUp();
+        }
+        final ForkJoinPool pool = pool(cmd);
+        final int lineWidth = lineWidth(cmd);
+        final Memo memo = memo(cmd);
+        final long mapThreshold = mapThreshold(cmd);
+        if (cmd.hasOption('r')) {
+            formatDirectory(cmd.getOptionValue('r'), pool, lineWidth, memo, mapThreshold);
+        }
+        for (final String arg : cmd.getArgs()) {
+            formatDirectory(arg, pool, lineWidth, memo, mapThreshold);
+        }
+    }
+
+    /**
+     * Parse the files in the arguments with {@link Profiler} and log its report.
+     *
+     * @param cmd Command line options.
+     * @throws IOException As is.
+     */
+    private static void profileAll(final CommandLine cmd) throws IOException {
+        final Profiler profiler = new Profiler();
+        if (cmd.hasOption('r')) {
+            profileDirectory(cmd.getOptionValue('r'), profiler);
+        }
+        for (final String arg : cmd.getArgs()) {
+            profileDirectory(arg, profiler);
+        }
+        final Logger logger = LoggerFactory.getLogger(Main.class);
+        if (logger.isInfoEnabled()) {
+            logger.info(profiler.report(PROFILED_DECISIONS));
+        }
+    }
+
+    /**
+     * Choose the pool for formatting the declarations in parallel.
+     *
+     * @param cmd Command line options.
+     * @return The common pool, or null if we format one declaration after another.
+     */
+    private static ForkJoinPool pool(final CommandLine cmd) {
+        ForkJoinPool result = null;
+        if (cmd.hasOption('p')) {
+            result = ForkJoinPool.commonPool();
+        }
+        return result;
+    }
+
+    /**
+     * Read the line width option.
+     *
+     * @param cmd Command line options.
+     * @return The line width, or {@link DocPrinter#UNLIMITED} if it's not set.
+     */
+    private static int lineWidth(final CommandLine cmd) {
+        int result = DocPrinter.UNLIMITED;
+        if (cmd.hasOption('w')) {
+            result = Integer.parseInt(cmd.getOptionValue('w'));
+        }
+        return result;
+    }
+
+    /**
+     * Create the memo if the option is set.
+     *
+     * @param cmd Command line options.
+     * @return The memo shared by all files, or null if we format every subtree.
+     */
+    private static Memo memo(final CommandLine cmd) {
+        Memo result = null;
+        if (cmd.hasOption('m')) {
+            result = new Memo(Integer.parseInt(cmd.getOptionValue('m')));
+        }
+        return result;
+    }
+
+    /**
+     * Read the option of the size from which we memory-map the files.
+     *
+     * @param cmd Command line options.
+     * @return Number of bytes, or {@link Long#MAX_VALUE} if we never memory-map the files.
+     */
+    private static long mapThreshold(final CommandLine cmd) {
+        long result = Long.MAX_VALUE;
+        if (cmd.hasOption('M')) {
+            result = Long.parseLong(cmd.getOptionValue('M'));
+        }
+        return result;
+    }
+
     /**
      * As is.
      *
      * @param rawPath File path.
+     * @param formatter The session of the current thread.
+     * @param mapThreshold We memory-map the file if it's larger than this number of bytes.
      * @throws IOException As is.
      */
-    private static void formatFile(final String rawPath) throws IOException {
+    private static void formatFile(final String rawPath, final Formatter formatter, final long mapThreshold) throws IOException {
         final Path path = Paths.get(rawPath);
-        final String content = Files.readString(path, StandardCharsets.UTF_8);
-        final CharStream charStream = CharStreams.fromString(content);
-        final Dart2Lexer lexer = new Dart2Lexer(charStream);
-        final CommonTokenStream tokens = new CommonTokenStream(lexer);
-        final Dart2Parser parser = new Dart2Parser(tokens);
-        final ThrowableErrorListener errorListener = new ThrowableErrorListener();
-        parser.removeErrorListeners();
-        parser.addErrorListener(errorListener);
-        final ParseTree tree = parser.compilationUnit();
-        final DartVisitor visitor = new DartVisitor(tokens);
-        final String result = visitor.visit(tree);
-        Files.writeString(path, result);
+        if (Files.size(path) > mapThreshold) {
+            replaceFile(path, formatter.document(SourceStream.map(path)), formatter);
+        } else {
+            final CharStream charStream = SourceStream.fromFile(path);
+            final Doc result = formatter.document(charStream);
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                formatter.print(result, writer);
+            }
+        }
+    }
+
+    /**
+     * Print the document into a temporary file and move it to the file.
+     * The document of a memory-mapped file reads the file while we print it, so we must not truncate the file.
+     * Also, the memo may keep the documents of the file after that, and moving keeps the mapped file as it was.
+     *
+     * @param path The file.
+     * @param doc Its formatted document.
+     * @param formatter The session of the current thread.
+     * @throws IOException As is.
+     */
+    private static void replaceFile(final Path path, final Doc doc, final Formatter formatter) throws IOException {
+        final Path directory = Objects.requireNonNull(path.toAbsolutePath().getParent(), "The file should be in a directory.");
+        final Path temporary = Files.createTempFile(directory, ".dart-stylerin-", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                formatter.print(doc, writer);
+            }
+            if (Files.getFileAttributeView(path, PosixFileAttributeView.class) != null) {
+                Files.setPosixFilePermissions(temporary, Files.getPosixFilePermissions(path));
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
     }
 
     /**
      * As is.
+     * Each thread formats its files with its own {@link Formatter}, so we don't create the parser for every file.
+     *
+     * @param rawPath Directory path.
+     * @param pool See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     * @param lineWidth See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     * @param memo See {@link Formatter#Formatter(ForkJoinPool, int, Memo)}.
+     * @param mapThreshold See {@link Main#formatFile(String, Formatter, long)}.
+     * @throws IOException As is.
+     */
+    private static void formatDirectory(final String rawPath, final ForkJoinPool pool, final int lineWidth, final Memo memo, final long mapThreshold) throws IOException {
+        final ThreadLocal<Formatter> formatters = ThreadLocal.withInitial(() -> new Formatter(pool, lineWidth, memo));
+        try (Stream<Path> stream = dartFiles(rawPath)) {
+            stream.forEach(path -> {
+                try {
+                    formatFile(path.toString(), formatters.get(), mapThreshold);
+                } catch (final IOException ex) {
+                    throw new IllegalStateException(READ_FAILURE + path, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Parse the Dart files in the directory without changing them.
      *
      * @param rawPath Directory path.
+     * @param profiler It adds up the numbers of the decisions.
      * @throws IOException As is.
      */
-    private static void formatDirectory(final String rawPath) throws IOException {
-        try (
-            Stream<Path> stream = Files.walk(Paths.get(rawPath))
-                .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".dart"))
-        ) {
+    private static void profileDirectory(final String rawPath, final Profiler profiler) throws IOException {
+        try (Stream<Path> stream = dartFiles(rawPath)) {
             stream.forEach(path -> {
                 try {
-                    formatFile(path.toString());
+                    profiler.parse(SourceStream.fromFile(path));
                 } catch (final IOException ex) {
-                    throw new IllegalStateException("Failed to read the file. path: " + path, ex);
+                    throw new IllegalStateException(READ_FAILURE + path, ex);
                 }
             });
         }
     }
 
+    /**
+     * As is.
+     *
+     * @param rawPath Directory path.
+     * @return The Dart files in the directory and its subdirectories. The caller must close it.
+     * @throws IOException As is.
+     */
+    private static Stream<Path> dartFiles(final String rawPath) throws IOException {
+        return Files.walk(Paths.get(rawPath))
+            .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".dart"));
+    }
+
 }
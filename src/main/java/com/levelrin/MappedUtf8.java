@@ -0,0 +1,256 @@
+package com.levelrin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+/**
+ * UTF-8 code in a memory-mapped file, decoded only when we read it.
+ * If the code is ASCII, the index of a code point is the index of its byte.
+ * Otherwise, we remember the byte offset of every {@link MappedUtf8#STEP}-th code point,
+ * and decode from the nearest one before the index.
+ * We only use the absolute methods of the buffer, so many threads can read it at the same time.
+ */
+final class MappedUtf8 {
+
+    /**
+     * Number of code points between the remembered byte offsets.
+     */
+    private static final int STEP = 64;
+
+    /**
+     * Bits of a byte.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * The first byte that is not ASCII.
+     */
+    private static final int NON_ASCII = 0x80;
+
+    /**
+     * Mask of the first two bits of a byte.
+     */
+    private static final int CONTINUATION_MASK = 0xC0;
+
+    /**
+     * First two bits of a continuation byte.
+     */
+    private static final int CONTINUATION = 0x80;
+
+    /**
+     * Bits of the code point in a continuation byte.
+     */
+    private static final int CONTINUATION_BITS = 0x3F;
+
+    /**
+     * Number of the bits of the code point in a continuation byte.
+     */
+    private static final int CONTINUATION_SHIFT = 6;
+
+    /**
+     * The first byte of a sequence of two bytes.
+     */
+    private static final int TWO_BYTES = 0xC2;
+
+    /**
+     * The first byte of a sequence of three bytes.
+     */
+    private static final int THREE_BYTES = 0xE0;
+
+    /**
+     * The first byte of a sequence of four bytes.
+     */
+    private static final int FOUR_BYTES = 0xF0;
+
+    /**
+     * The first byte that never starts a sequence.
+     */
+    private static final int INVALID = 0xF5;
+
+    /**
+     * Number of bytes of the longest sequence.
+     */
+    private static final int LONGEST = 4;
+
+    /**
+     * The smallest code point that needs three bytes.
+     */
+    private static final int THREE_BYTES_MINIMUM = 0x800;
+
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * Byte offset of every {@link MappedUtf8#STEP}-th code point.
+     * It's empty if the code is ASCII.
+     */
+    private final int[] offsets;
+
+    /**
+     * Number of code points.
+     */
+    private final int length;
+
+    /**
+     * Scan the bytes once to count the code points.
+     *
+     * @param bytes See {@link MappedUtf8#bytes}.
+     * @throws CharacterCodingException If the bytes are not UTF-8.
+     */
+    MappedUtf8(final ByteBuffer bytes) throws CharacterCodingException {
+        this.bytes = bytes;
+        final int limit = bytes.limit();
+        int[] steps = new int[limit / STEP + 1];
+        int count = 0;
+        boolean ascii = true;
+        int offset = 0;
+        while (offset < limit) {
+            if (count % STEP == 0) {
+                steps[count / STEP] = offset;
+            }
+            final int size = this.sequenceLength(offset);
+            ascii = ascii && size == 1;
+            offset += size;
+            count++;
+        }
+        if (ascii) {
+            steps = new int[0];
+        } else {
+            steps = Arrays.copyOf(steps, (count + STEP - 1) / STEP);
+        }
+        this.offsets = steps;
+        this.length = count;
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link MappedUtf8#length}.
+     */
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * As is.
+     *
+     * @param index Index of the code point.
+     * @return The code point.
+     */
+    int codePointAt(final int index) {
+        final int result;
+        if (this.offsets.length == 0) {
+            result = this.bytes.get(index) & BYTE_MASK;
+        } else {
+            int offset = this.offsets[index / STEP];
+            for (int skip = index % STEP; skip > 0; skip--) {
+                offset += this.lengthOf(this.bytes.get(offset) & BYTE_MASK);
+            }
+            result = this.decode(offset);
+        }
+        return result;
+    }
+
+    /**
+     * Check the sequence at the offset.
+     *
+     * @param offset Byte offset of the first byte of the sequence.
+     * @return Number of bytes of the sequence.
+     * @throws CharacterCodingException If it's not a valid sequence.
+     */
+    private int sequenceLength(final int offset) throws CharacterCodingException {
+        final int size = this.lengthOf(this.bytes.get(offset) & BYTE_MASK);
+        if (size == 0 || offset + size > this.bytes.limit()) {
+            throw new MalformedInputException(1);
+        }
+        for (int next = offset + 1; next < offset + size; next++) {
+            if ((this.bytes.get(next) & CONTINUATION_MASK) != CONTINUATION) {
+                throw new MalformedInputException(next - offset);
+            }
+        }
+        if (!valid(this.decode(offset), size)) {
+            throw new MalformedInputException(size);
+        }
+        return size;
+    }
+
+    /**
+     * Check if the code point may be encoded in the number of bytes.
+     * It rejects the overlong sequences, the surrogates, and the code points after {@link Character#MAX_CODE_POINT}.
+     *
+     * @param codePoint The decoded code point.
+     * @param size Number of bytes of the sequence.
+     * @return True if it's valid.
+     */
+    private static boolean valid(final int codePoint, final int size) {
+        final boolean surrogate = codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE;
+        return size == 1 || !surrogate && codePoint >= minimum(size) && codePoint <= Character.MAX_CODE_POINT;
+    }
+
+    /**
+     * As is.
+     *
+     * @param first The first byte of a sequence.
+     * @return Number of bytes of the sequence, or 0 if the byte can't start a sequence.
+     */
+    private int lengthOf(final int first) {
+        final int result;
+        if (first < NON_ASCII) {
+            result = 1;
+        } else if (first < TWO_BYTES) {
+            result = 0;
+        } else if (first < THREE_BYTES) {
+            result = 2;
+        } else if (first < FOUR_BYTES) {
+            result = LONGEST - 1;
+        } else if (first < INVALID) {
+            result = LONGEST;
+        } else {
+            result = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Decode the sequence at the offset. It must be a valid sequence.
+     *
+     * @param offset Byte offset of the first byte of the sequence.
+     * @return The code point.
+     */
+    private int decode(final int offset) {
+        final int first = this.bytes.get(offset) & BYTE_MASK;
+        final int size = this.lengthOf(first);
+        int result = first;
+        if (size > 1) {
+            // The first byte of a sequence has 5, 4, or 3 bits of the code point.
+            result = first & BYTE_MASK >> size + 1;
+            for (int next = offset + 1; next < offset + size; next++) {
+                result = result << CONTINUATION_SHIFT | this.bytes.get(next) & CONTINUATION_BITS;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The smallest code point of the sequence length, so we reject the overlong sequences.
+     *
+     * @param size Number of bytes of the sequence.
+     * @return The code point.
+     */
+    private static int minimum(final int size) {
+        final int result;
+        if (size == 2) {
+            result = NON_ASCII;
+        } else if (size == LONGEST - 1) {
+            result = THREE_BYTES_MINIMUM;
+        } else {
+            result = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        }
+        return result;
+    }
+
+}
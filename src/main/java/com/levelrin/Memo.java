@@ -0,0 +1,426 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Formatted subtrees we have seen so far, so we don't format the same code again.
+ * Generated code repeats the same argument lists, collection literals, and function bodies many times.
+ * A subtree is identified by its tokens, the indentation level, and whether we are chaining methods.
+ * It keeps the most recently used subtrees up to the capacity, and the files in a run can share it from many threads.
+ * What we remember doesn't refer to the tokens or the code of the file, so the capacity also bounds the memory.
+ * Share it only between the formatters with the same line width.
+ */
+public final class Memo {
+
+    /**
+     * Initial capacity of {@link Memo#entries}. It's the default of {@link LinkedHashMap}.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Load factor of {@link Memo#entries}. It's the default of {@link LinkedHashMap}.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Minimum number of tokens of a subtree we remember.
+     * Formatting a smaller subtree is cheaper than looking it up.
+     */
+    private static final int MIN_TOKENS = 8;
+
+    /**
+     * Key - Rule index.
+     * Value - True if we remember the subtrees of the rule.
+     */
+    private static final boolean[] RULES = coveredRules();
+
+    /**
+     * Maximum number of subtrees.
+     */
+    private final int capacity;
+
+    /**
+     * Key - Identity of the subtree.
+     * Value - The result of formatting it.
+     * It's in the access order, so the eldest entry is the least recently used.
+     */
+    private final Map<Key, Entry> entries;
+
+    /**
+     * Number of lookups that found the subtree.
+     */
+    private int hits;
+
+    /**
+     * Number of lookups that didn't find the subtree.
+     */
+    private int misses;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity See {@link Memo#capacity}.
+     */
+    public Memo(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity should be positive. capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+
+            /**
+             * Please do not use the @Serial annotation because it is not supported in JDK 11.
+             */
+            private static final long serialVersionUID = -5107434207281366452L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return super.size() > Memo.this.capacity;
+            }
+
+        };
+    }
+
+    /**
+     * Check if we remember the subtree.
+     * We only remember the rules that don't depend on their parents, and the subtree should be large enough.
+     *
+     * @param tree The root of the subtree.
+     * @return True if we look it up before formatting it.
+     */
+    boolean covers(final ParseTree tree) {
+        boolean result = false;
+        if (tree instanceof ParserRuleContext) {
+            final ParserRuleContext context = (ParserRuleContext) tree;
+            result = RULES[context.getRuleIndex()]
+                && context.getStop() != null
+                && context.getStop().getTokenIndex() - context.getStart().getTokenIndex() + 1 >= MIN_TOKENS;
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param key Identity of the subtree.
+     * @return The result of formatting the same subtree, or null if we haven't seen it.
+     */
+    Entry get(final Key key) {
+        synchronized (this) {
+            final Entry result = this.entries.get(key);
+            if (result == null) {
+                this.misses++;
+            } else {
+                this.hits++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Remember the result of formatting the subtree.
+     * We copy the token types and texts of the key, and turn the tokens of the document into texts.
+     * So, the entry stays valid after we move on to the next file, and it doesn't keep the file alive.
+     *
+     * @param key Identity of the subtree for looking up.
+     * @param doc Formatted subtree.
+     * @param chaining See {@link Entry#chaining}.
+     */
+    void put(final Key key, final Doc doc, final boolean chaining) {
+        final Key detached = new Key(key);
+        final Entry entry = new Entry(Doc.detach(doc), chaining);
+        synchronized (this) {
+            this.entries.put(detached, entry);
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @return Number of subtrees we remember.
+     */
+    int size() {
+        synchronized (this) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Memo#hits}.
+     */
+    int getHits() {
+        synchronized (this) {
+            return this.hits;
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @return See {@link Memo#misses}.
+     */
+    int getMisses() {
+        synchronized (this) {
+            return this.misses;
+        }
+    }
+
+    /**
+     * Build {@link Memo#RULES}.
+     * Generated code repeats these subtrees most.
+     *
+     * @return Rules we remember.
+     */
+    private static boolean[] coveredRules() {
+        final boolean[] result = new boolean[Dart2Parser.ruleNames.length];
+        result[Dart2Parser.RULE_arguments] = true;
+        result[Dart2Parser.RULE_element] = true;
+        result[Dart2Parser.RULE_listLiteral] = true;
+        result[Dart2Parser.RULE_setOrMapLiteral] = true;
+        result[Dart2Parser.RULE_functionBody] = true;
+        return result;
+    }
+
+    /**
+     * Identity of a subtree.
+     * The one for looking up refers to the tokens of the current file.
+     * The one we remember has its own copy of the token types and texts.
+     */
+    static final class Key {
+
+        /**
+         * Hash of the tokens. See {@link TokenHashes#hash(int, int)}.
+         */
+        private final long hash;
+
+        /**
+         * Rule index of the root. Ex: {@link com.levelrin.antlr.generated.Dart2Parser#RULE_arguments}.
+         */
+        private final int rule;
+
+        /**
+         * Indentation level before formatting the subtree.
+         */
+        private final int indentLevel;
+
+        /**
+         * Whether we are chaining methods before formatting the subtree.
+         */
+        private final boolean chaining;
+
+        /**
+         * Hashes of the current file, or null if we have {@link Key#types}.
+         */
+        private final TokenHashes hashes;
+
+        /**
+         * Index of the first token in {@link Key#hashes}.
+         */
+        private final int start;
+
+        /**
+         * Index of the last token in {@link Key#hashes}.
+         */
+        private final int stop;
+
+        /**
+         * Types of the tokens, or null if we have {@link Key#hashes}.
+         */
+        private final int[] types;
+
+        /**
+         * Key - Position of the token in the subtree.
+         * Value - Index after its text in {@link Key#text}.
+         * It's null if we have {@link Key#hashes}.
+         */
+        private final int[] ends;
+
+        /**
+         * Texts of the tokens one after another, or null if we have {@link Key#hashes}.
+         */
+        private final String text;
+
+        /**
+         * Constructor for looking up.
+         *
+         * @param hashes See {@link Key#hashes}.
+         * @param start See {@link Key#start}.
+         * @param stop See {@link Key#stop}.
+         * @param rule See {@link Key#rule}.
+         * @param indentLevel See {@link Key#indentLevel}.
+         * @param chaining See {@link Key#chaining}.
+         */
+        private Key(final TokenHashes hashes, final int start, final int stop, final int rule, final int indentLevel, final boolean chaining) {
+            this.hash = hashes.hash(start, stop);
+            this.rule = rule;
+            this.indentLevel = indentLevel;
+            this.chaining = chaining;
+            this.hashes = hashes;
+            this.start = start;
+            this.stop = stop;
+            this.types = null;
+            this.ends = null;
+            this.text = null;
+        }
+
+        /**
+         * Constructor for remembering.
+         *
+         * @param origin The key for looking up.
+         */
+        private Key(final Key origin) {
+            this.hash = origin.hash;
+            this.rule = origin.rule;
+            this.indentLevel = origin.indentLevel;
+            this.chaining = origin.chaining;
+            this.hashes = null;
+            this.start = 0;
+            this.stop = origin.stop - origin.start;
+            this.types = new int[this.stop + 1];
+            this.ends = new int[this.stop + 1];
+            final StringBuilder texts = new StringBuilder();
+            for (int offset = 0; offset <= this.stop; offset++) {
+                final Token token = origin.hashes.token(origin.start + offset);
+                this.types[offset] = token.getType();
+                texts.append(token.getText());
+                this.ends[offset] = texts.length();
+            }
+            this.text = texts.toString();
+        }
+
+        /**
+         * As is.
+         *
+         * @param hashes Hashes of the current file.
+         * @param start Index of the first token of the subtree, including the comments on its left.
+         * @param stop Index of the last token of the subtree.
+         * @param rule See {@link Key#rule}.
+         * @param indentLevel See {@link Key#indentLevel}.
+         * @param chaining See {@link Key#chaining}.
+         * @return The key for looking up.
+         */
+        static Key lookup(final TokenHashes hashes, final int start, final int stop, final int rule, final int indentLevel, final boolean chaining) {
+            return new Key(hashes, start, stop, rule, indentLevel, chaining);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            boolean result = false;
+            if (other instanceof Key) {
+                final Key key = (Key) other;
+                result = this.hash == key.hash
+                    && this.rule == key.rule
+                    && this.indentLevel == key.indentLevel
+                    && this.chaining == key.chaining
+                    && this.stop - this.start == key.stop - key.start
+                    && this.sameTokens(key);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.hash);
+        }
+
+        /**
+         * Compare the tokens in case different tokens have the same hash.
+         *
+         * @param other The other key with the same number of tokens.
+         * @return True if the tokens are the same.
+         */
+        private boolean sameTokens(final Key other) {
+            boolean result = true;
+            if (this.hashes == null && other.hashes == null) {
+                result = Arrays.equals(this.types, other.types)
+                    && Arrays.equals(this.ends, other.ends)
+                    && this.text.equals(other.text);
+            } else if (this.hashes == null) {
+                result = other.sameTokens(this);
+            } else {
+                for (int offset = 0; result && offset <= this.stop - this.start; offset++) {
+                    result = other.matches(offset, this.hashes.token(this.start + offset));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Check if the token at the position is the same as the given one.
+         *
+         * @param offset Position of the token in the subtree.
+         * @param token The token of the current file.
+         * @return True if they have the same type and text.
+         */
+        private boolean matches(final int offset, final Token token) {
+            final boolean result;
+            if (this.hashes == null) {
+                int from = 0;
+                if (offset > 0) {
+                    from = this.ends[offset - 1];
+                }
+                result = TokenHashes.same(token, this.types[offset], this.text, from, this.ends[offset]);
+            } else {
+                result = TokenHashes.same(this.hashes.token(this.start + offset), token);
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * The result of formatting a subtree.
+     */
+    static final class Entry {
+
+        /**
+         * Formatted subtree.
+         */
+        private final Doc doc;
+
+        /**
+         * Whether we are chaining methods after formatting the subtree.
+         * A chained expression statement in the subtree turns it off.
+         */
+        private final boolean chaining;
+
+        /**
+         * Constructor.
+         *
+         * @param doc See {@link Entry#doc}.
+         * @param chaining See {@link Entry#chaining}.
+         */
+        private Entry(final Doc doc, final boolean chaining) {
+            this.doc = doc;
+            this.chaining = chaining;
+        }
+
+        /**
+         * As is.
+         *
+         * @return See {@link Entry#doc}.
+         */
+        Doc getDoc() {
+            return this.doc;
+        }
+
+        /**
+         * As is.
+         *
+         * @return See {@link Entry#chaining}.
+         */
+        boolean isChaining() {
+            return this.chaining;
+        }
+
+    }
+
+}
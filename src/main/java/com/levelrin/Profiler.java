@@ -0,0 +1,125 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+
+/**
+ * Finds the decisions of the parser that cost the most on real code.
+ * It parses the files with ANTLR's profiling simulator and the full LL prediction, and adds up the numbers of each decision.
+ * A decision that falls back to the full context is the one that makes {@link Formatter} parse the file again.
+ * It only parses, so it doesn't change the files.
+ */
+public final class Profiler {
+
+    /**
+     * Columns of the report.
+     */
+    private static final String HEADER = "decision rule invocations time-ms sll-total sll-max ll-fallback ll-total ll-max ambiguities errors";
+
+    /**
+     * We give it the code of each file.
+     */
+    private final Dart2Lexer lexer;
+
+    /**
+     * We point it to the lexer again for each file.
+     */
+    private final CommonTokenStream tokens;
+
+    /**
+     * It keeps adding up the numbers of each decision while we reuse it.
+     */
+    private final Dart2Parser parser;
+
+    /**
+     * Number of files we parsed.
+     */
+    private int files;
+
+    /**
+     * Constructor.
+     */
+    public Profiler() {
+        this.lexer = new Dart2Lexer(SourceStream.fromString(""));
+        this.tokens = new CommonTokenStream(this.lexer);
+        this.parser = new Dart2Parser(this.tokens);
+        this.parser.removeErrorListeners();
+        this.parser.addErrorListener(new ThrowableErrorListener());
+        this.parser.setProfile(true);
+        this.parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    }
+
+    /**
+     * Parse the code and add up the numbers of the decisions.
+     *
+     * @param code Code of a file.
+     */
+    public void parse(final CharStream code) {
+        this.lexer.setInputStream(code);
+        this.tokens.setTokenSource(this.lexer);
+        this.parser.setTokenStream(this.tokens);
+        this.parser.compilationUnit();
+        this.files++;
+    }
+
+    /**
+     * The decisions that looked ahead the most tokens so far, one per line.
+     * Ex: `123 cascade 40 1.5 300 9 2 120 30 0 0`.
+     * We sort them by the lookahead because the time depends on the order of the files and the JIT.
+     *
+     * @param limit Maximum number of decisions.
+     * @return The report with the columns in {@link Profiler#HEADER}.
+     */
+    public String report(final int limit) {
+        final StringJoiner result = new StringJoiner("\n");
+        result.add("Decisions of " + this.files + " files:").add(HEADER);
+        Arrays.stream(this.parser.getParseInfo().getDecisionInfo())
+            .filter(info -> info.invocations > 0)
+            .sorted(Comparator.comparingLong(Profiler::lookahead).reversed().thenComparingInt(info -> info.decision))
+            .limit(limit)
+            .forEach(info -> result.add(this.row(info)));
+        return result.toString();
+    }
+
+    /**
+     * As is.
+     *
+     * @param info Numbers of a decision.
+     * @return Number of tokens it looked ahead with both SLL and LL prediction.
+     */
+    private static long lookahead(final DecisionInfo info) {
+        return info.SLL_TotalLook + info.LL_TotalLook;
+    }
+
+    /**
+     * As is.
+     *
+     * @param info Numbers of a decision.
+     * @return A line of the report.
+     */
+    private String row(final DecisionInfo info) {
+        final int rule = this.parser.getATN().getDecisionState(info.decision).ruleIndex;
+        return new StringJoiner(" ")
+            .add(String.valueOf(info.decision))
+            .add(Dart2Parser.ruleNames[rule])
+            .add(String.valueOf(info.invocations))
+            .add(String.valueOf(TimeUnit.NANOSECONDS.toMillis(info.timeInPrediction)))
+            .add(String.valueOf(info.SLL_TotalLook))
+            .add(String.valueOf(info.SLL_MaxLook))
+            .add(String.valueOf(info.LL_Fallback))
+            .add(String.valueOf(info.LL_TotalLook))
+            .add(String.valueOf(info.LL_MaxLook))
+            .add(String.valueOf(info.ambiguities.size()))
+            .add(String.valueOf(info.errors.size()))
+            .toString();
+    }
+
+}
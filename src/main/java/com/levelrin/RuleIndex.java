@@ -0,0 +1,122 @@
+package com.levelrin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Index of the rules each subtree contains.
+ * We index the whole subtree when we get the first question about it, and skip the parts we have indexed already.
+ * After that, checking if a subtree contains a rule takes constant time.
+ * We don't index the subtrees nobody asks about. Ex: the ones {@link Memo} has formatted already.
+ */
+final class RuleIndex {
+
+    /**
+     * Shared by the nodes that don't have any rule as a descendant.
+     * We never modify it.
+     */
+    private static final BitSet NONE = new BitSet();
+
+    /**
+     * Key - Node of the parse tree.
+     * Value - Rule indices of its descendants. Ex: {@link com.levelrin.antlr.generated.Dart2Parser#RULE_arguments}.
+     */
+    private final Map<ParserRuleContext, BitSet> descendants;
+
+    /**
+     * Constructor.
+     */
+    RuleIndex() {
+        this.descendants = new IdentityHashMap<>();
+    }
+
+    /**
+     * Check if the subject has a descendant of the rule.
+     * The subject itself is not included.
+     *
+     * @param subject We will check its descendants.
+     * @param ruleIndex Rule index. Ex: {@link com.levelrin.antlr.generated.Dart2Parser#RULE_arguments}.
+     * @return True if the subject has the descendant.
+     */
+    boolean hasDescendant(final ParserRuleContext subject, final int ruleIndex) {
+        this.prepare(subject);
+        return this.descendants.get(subject).get(ruleIndex);
+    }
+
+    /**
+     * Make sure the subtree of the node is indexed.
+     * Call this before sharing the index between threads because it's read-only for the subtree after that.
+     *
+     * @param node The root of the subtree.
+     */
+    void prepare(final ParserRuleContext node) {
+        if (!this.descendants.containsKey(node)) {
+            this.build(node);
+        }
+    }
+
+    /**
+     * Forget the tree we have indexed so far.
+     * The map keeps its capacity for the next tree.
+     */
+    void clear() {
+        this.descendants.clear();
+    }
+
+    /**
+     * Index all subtrees of the tree in one post-order pass without recursion.
+     * The subtrees we have indexed already are skipped.
+     *
+     * @param root The root of the tree.
+     */
+    private void build(final ParserRuleContext root) {
+        final List<ParserRuleContext> order = new ArrayList<>();
+        final Deque<ParserRuleContext> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParserRuleContext node = stack.pop();
+            order.add(node);
+            for (int index = 0; index < node.getChildCount(); index++) {
+                final ParseTree child = node.getChild(index);
+                if (child instanceof ParserRuleContext && !this.descendants.containsKey(child)) {
+                    stack.push((ParserRuleContext) child);
+                }
+            }
+        }
+        // Parents always come before their children in the order, so children are indexed first in reverse.
+        for (int index = order.size() - 1; index >= 0; index--) {
+            final ParserRuleContext node = order.get(index);
+            this.descendants.put(node, this.collect(node));
+        }
+    }
+
+    /**
+     * Combine the rules of the children and their descendants.
+     *
+     * @param node The node whose children are indexed already.
+     * @return Rule indices of the descendants.
+     */
+    private BitSet collect(final ParserRuleContext node) {
+        BitSet rules = new BitSet();
+        for (int index = 0; index < node.getChildCount(); index++) {
+            final ParseTree child = node.getChild(index);
+            if (child instanceof ParserRuleContext) {
+                final ParserRuleContext childContext = (ParserRuleContext) child;
+                rules.set(childContext.getRuleIndex());
+                rules.or(this.descendants.get(childContext));
+            }
+        }
+        if (rules.isEmpty()) {
+            rules = NONE;
+        }
+        return rules;
+    }
+
+}
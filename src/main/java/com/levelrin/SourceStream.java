@@ -0,0 +1,417 @@
+package com.levelrin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Source code for the lexer that can also copy the text of a token into the output.
+ * It works like {@link org.antlr.v4.runtime.CodePointCharStream}, but we own the buffer,
+ * so the printer can copy the token's interval without creating a string for each token.
+ * We keep UTF-16 characters if the code has no supplementary characters.
+ * In that case, the code point index is the same as the character index.
+ * Otherwise, we keep code points.
+ * The arrays may be longer than the code, so we can decode a file into an array sized from the file length.
+ * A very large file can be memory-mapped instead, so the code stays out of the heap. See {@link SourceStream#map(Path)}.
+ */
+// The methods and their names come from CharStream.
+@SuppressWarnings({"PMD.TooManyMethods", "PMD.ShortMethodName"})
+public final class SourceStream implements CharStream {
+
+    /**
+     * Multiplier of {@link SourceStream#hash(int, int)}. It's the same as {@link String#hashCode()}.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * UTF-16 characters of the code, followed by unused elements.
+     * It's empty if we use {@link SourceStream#codePoints}.
+     */
+    private final char[] chars;
+
+    /**
+     * Code points of the code if it has supplementary characters.
+     * It's empty if we use {@link SourceStream#chars}.
+     */
+    private final int[] codePoints;
+
+    /**
+     * Whether we use {@link SourceStream#codePoints}.
+     */
+    private final boolean wide;
+
+    /**
+     * The memory-mapped code.
+     * It's null if the code is in {@link SourceStream#chars} or {@link SourceStream#codePoints}.
+     */
+    private final MappedUtf8 mapped;
+
+    /**
+     * Number of code points.
+     */
+    private final int length;
+
+    /**
+     * Name of the source. Ex: file path.
+     */
+    private final String name;
+
+    /**
+     * Index of the next code point for the lexer.
+     */
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * @param chars UTF-16 characters of the code, followed by unused elements.
+     * @param count Number of the UTF-16 characters of the code.
+     * @param name See {@link SourceStream#name}.
+     */
+    private SourceStream(final char[] chars, final int count, final String name) {
+        this.name = name;
+        this.mapped = null;
+        this.wide = Character.codePointCount(chars, 0, count) != count;
+        if (this.wide) {
+            this.chars = new char[0];
+            this.codePoints = CharBuffer.wrap(chars, 0, count).codePoints().toArray();
+            this.length = this.codePoints.length;
+        } else {
+            this.chars = chars;
+            this.codePoints = new int[0];
+            this.length = count;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mapped See {@link SourceStream#mapped}.
+     * @param name See {@link SourceStream#name}.
+     */
+    private SourceStream(final MappedUtf8 mapped, final String name) {
+        this.name = name;
+        this.mapped = mapped;
+        this.wide = false;
+        this.chars = new char[0];
+        this.codePoints = new int[0];
+        this.length = mapped.getLength();
+    }
+
+    /**
+     * As is.
+     *
+     * @param text The code.
+     * @return Stream without the source name.
+     */
+    public static SourceStream fromString(final String text) {
+        return fromString(text, UNKNOWN_SOURCE_NAME);
+    }
+
+    /**
+     * As is.
+     *
+     * @param text The code.
+     * @param name See {@link SourceStream#name}.
+     * @return Stream.
+     */
+    public static SourceStream fromString(final String text, final String name) {
+        return new SourceStream(text.toCharArray(), text.length(), name);
+    }
+
+    /**
+     * Decode the UTF-8 file straight into the stream.
+     * Unlike {@link java.nio.file.Files#readString(Path)} with {@link SourceStream#fromString(String, String)},
+     * we don't create a string in between, so we keep only the bytes and the characters in memory.
+     * Both buffers are sized from the file length because UTF-8 never has fewer bytes than UTF-16 characters.
+     *
+     * @param path The file.
+     * @return Stream with the file path as the source name.
+     * @throws IOException If we fail to read the file or it's not valid UTF-8.
+     */
+    public static SourceStream fromFile(final Path path) throws IOException {
+        final ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            bytes = ByteBuffer.allocate(byteCount(channel, path));
+            int read = 0;
+            while (read >= 0 && bytes.hasRemaining()) {
+                read = channel.read(bytes);
+            }
+        }
+        bytes.flip();
+        final char[] chars = new char[bytes.remaining()];
+        final CharBuffer decoded = CharBuffer.wrap(chars);
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        final CoderResult decoding = decoder.decode(bytes, decoded, true);
+        if (!decoding.isUnderflow()) {
+            decoding.throwException();
+        }
+        final CoderResult flushing = decoder.flush(decoded);
+        if (!flushing.isUnderflow()) {
+            flushing.throwException();
+        }
+        return new SourceStream(chars, decoded.position(), path.toString());
+    }
+
+    /**
+     * Memory-map the UTF-8 file and decode it only when the lexer or the printer reads it.
+     * The code doesn't take the heap, but reading a code point is slower, especially if the code is not ASCII.
+     * The file must not be truncated while we use the stream, so write the formatted code into another file and move it.
+     *
+     * @param path The file.
+     * @return Stream with the file path as the source name.
+     * @throws IOException If we fail to map the file or it's not valid UTF-8.
+     */
+    public static SourceStream map(final Path path) throws IOException {
+        final ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, byteCount(channel, path));
+        }
+        return new SourceStream(new MappedUtf8(bytes), path.toString());
+    }
+
+    /**
+     * As is.
+     *
+     * @param channel The opened file.
+     * @param path The file.
+     * @return Number of bytes of the file.
+     * @throws IOException If it doesn't fit in an array.
+     */
+    private static int byteCount(final FileChannel channel, final Path path) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The file is too large. path: " + path);
+        }
+        return (int) size;
+    }
+
+    @Override
+    public void consume() {
+        if (this.position >= this.length) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        this.position++;
+    }
+
+    @Override
+    public int LA(final int offset) {
+        int result = EOF;
+        int index = -1;
+        if (offset > 0) {
+            index = this.position + offset - 1;
+        } else if (offset < 0) {
+            index = this.position + offset;
+        } else {
+            result = 0;
+        }
+        if (index >= 0 && index < this.length) {
+            result = this.codePointAt(index);
+        }
+        return result;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(final int marker) {
+        // We keep the whole code in memory, so there is nothing to release.
+    }
+
+    @Override
+    public int index() {
+        return this.position;
+    }
+
+    @Override
+    public void seek(final int index) {
+        this.position = index;
+    }
+
+    @Override
+    public int size() {
+        return this.length;
+    }
+
+    @Override
+    public String getSourceName() {
+        return this.name;
+    }
+
+    @Override
+    public String getText(final Interval interval) {
+        final int start = Math.min(interval.a, this.length);
+        final int count = Math.min(interval.b - interval.a + 1, this.length - start);
+        final String result;
+        if (this.mapped != null) {
+            final StringBuilder builder = new StringBuilder(count);
+            for (int index = start; index < start + count; index++) {
+                builder.appendCodePoint(this.mapped.codePointAt(index));
+            }
+            result = builder.toString();
+        } else if (this.wide) {
+            result = new String(this.codePoints, start, count);
+        } else {
+            result = new String(this.chars, start, count);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return this.getText(Interval.of(0, this.length - 1));
+    }
+
+    /**
+     * Copy the code between the indices into the sink without creating a string.
+     *
+     * @param start Index of the first code point, inclusive. Ex: {@link org.antlr.v4.runtime.Token#getStartIndex()}.
+     * @param stop Index of the last code point, inclusive. Ex: {@link org.antlr.v4.runtime.Token#getStopIndex()}.
+     * @param sink We will append the code into this.
+     * @throws IOException If the sink fails.
+     */
+    public void copy(final int start, final int stop, final Appendable sink) throws IOException {
+        final int count = stop - start + 1;
+        if (this.wide || this.mapped != null) {
+            for (int index = start; index <= stop; index++) {
+                final int codePoint = this.codePointAt(index);
+                if (Character.isBmpCodePoint(codePoint)) {
+                    sink.append((char) codePoint);
+                } else {
+                    sink.append(Character.highSurrogate(codePoint))
+                        .append(Character.lowSurrogate(codePoint));
+                }
+            }
+        } else if (sink instanceof Writer) {
+            ((Writer) sink).write(this.chars, start, count);
+        } else if (sink instanceof StringBuilder) {
+            ((StringBuilder) sink).append(this.chars, start, count);
+        } else {
+            sink.append(CharBuffer.wrap(this.chars, start, count));
+        }
+    }
+
+    /**
+     * Find the last code point between the indices.
+     *
+     * @param target The code point to find. Ex: '\n'.
+     * @param start Index of the first code point, inclusive.
+     * @param stop Index of the last code point, inclusive.
+     * @return Index of the code point, or -1 if there is none.
+     */
+    public int lastIndexOf(final int target, final int start, final int stop) {
+        int result = -1;
+        for (int index = stop; index >= start; index--) {
+            if (this.codePointAt(index) == target) {
+                result = index;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the first code point between the indices.
+     *
+     * @param target The code point to find. Ex: '\n'.
+     * @param start Index of the first code point, inclusive.
+     * @param stop Index of the last code point, inclusive.
+     * @return Index of the code point, or -1 if there is none.
+     */
+    public int indexOf(final int target, final int start, final int stop) {
+        int result = -1;
+        for (int index = start; index <= stop; index++) {
+            if (this.codePointAt(index) == target) {
+                result = index;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hash of the code between the indices in the same way as {@link String#hashCode()}, but over the code points.
+     *
+     * @param start Index of the first code point, inclusive.
+     * @param stop Index of the last code point, inclusive.
+     * @return The hash.
+     */
+    public int hash(final int start, final int stop) {
+        int result = 0;
+        for (int index = start; index <= stop; index++) {
+            result = HASH_MULTIPLIER * result + this.codePointAt(index);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the code between the indices is the same as the code of the other stream.
+     *
+     * @param start Index of the first code point, inclusive.
+     * @param other The other stream.
+     * @param otherStart Index of the first code point in the other stream, inclusive.
+     * @param count Number of code points to compare.
+     * @return True if they are the same.
+     */
+    public boolean regionMatches(final int start, final SourceStream other, final int otherStart, final int count) {
+        boolean result = true;
+        for (int offset = 0; offset < count; offset++) {
+            if (this.codePointAt(start + offset) != other.codePointAt(otherStart + offset)) {
+                result = false;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check if the code between the indices is the same as the part of the text.
+     *
+     * @param start Index of the first code point, inclusive.
+     * @param stop Index of the last code point, inclusive.
+     * @param text The text. Ex: Texts of the tokens we copied from another file.
+     * @param from Index of the first char in the text, inclusive.
+     * @param until Index of the last char in the text, exclusive.
+     * @return True if they are the same.
+     */
+    public boolean regionMatches(final int start, final int stop, final String text, final int from, final int until) {
+        int index = start;
+        int offset = from;
+        while (index <= stop && offset < until && this.codePointAt(index) == text.codePointAt(offset)) {
+            offset += Character.charCount(text.codePointAt(offset));
+            index++;
+        }
+        return index > stop && offset == until;
+    }
+
+    /**
+     * As is.
+     *
+     * @param index Index of the code point.
+     * @return The code point.
+     */
+    private int codePointAt(final int index) {
+        final int result;
+        if (this.mapped != null) {
+            result = this.mapped.codePointAt(index);
+        } else if (this.wide) {
+            result = this.codePoints[index];
+        } else {
+            result = this.chars[index];
+        }
+        return result;
+    }
+
+}
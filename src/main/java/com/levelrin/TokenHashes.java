@@ -0,0 +1,159 @@
+package com.levelrin;
+
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Hashes of the token sequences of a file.
+ * We compute the prefix hashes once, so the hash of any range of tokens takes constant time.
+ * The lexer skips whitespace, so the tokens are the code and the comments that we print.
+ * We can reset it for the next file, and it keeps its arrays if they are large enough.
+ */
+final class TokenHashes {
+
+    /**
+     * Base of the polynomial hash. It's odd, so it has an inverse in 64-bit arithmetic.
+     */
+    private static final long BASE = 0x100000001B3L;
+
+    /**
+     * For mixing the token type into the hash of its text.
+     */
+    private static final long TYPE_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * All tokens of the file.
+     */
+    private List<Token> tokens;
+
+    /**
+     * Key - Token index.
+     * Value - Hash of the tokens before the index.
+     * It may be longer than the number of tokens because we reuse it for the next file.
+     */
+    private long[] prefixes;
+
+    /**
+     * Key - Number of tokens.
+     * Value - {@link TokenHashes#BASE} to the power of the key.
+     */
+    private long[] powers;
+
+    /**
+     * Constructor.
+     * We read all tokens from the stream.
+     *
+     * @param stream Tokens of the file.
+     */
+    TokenHashes(final CommonTokenStream stream) {
+        this.prefixes = new long[0];
+        this.powers = new long[0];
+        this.reset(stream);
+    }
+
+    /**
+     * Forget the tokens of the previous file and hash all tokens from the stream.
+     *
+     * @param stream Tokens of the next file.
+     */
+    void reset(final CommonTokenStream stream) {
+        stream.fill();
+        this.tokens = stream.getTokens();
+        final int count = this.tokens.size();
+        if (this.prefixes.length < count + 1) {
+            this.prefixes = new long[count + 1];
+            this.powers = new long[count + 1];
+        }
+        this.powers[0] = 1;
+        for (int index = 0; index < count; index++) {
+            this.prefixes[index + 1] = this.prefixes[index] * BASE + tokenHash(this.tokens.get(index));
+            this.powers[index + 1] = this.powers[index] * BASE;
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param start Index of the first token, inclusive.
+     * @param stop Index of the last token, inclusive.
+     * @return Hash of the tokens in the range.
+     */
+    long hash(final int start, final int stop) {
+        return this.prefixes[stop + 1] - this.prefixes[start] * this.powers[stop - start + 1];
+    }
+
+    /**
+     * As is.
+     *
+     * @param index Token index.
+     * @return The token.
+     */
+    Token token(final int index) {
+        return this.tokens.get(index);
+    }
+
+    /**
+     * Hash of the token type and text.
+     *
+     * @param token The token.
+     * @return The hash.
+     */
+    private static long tokenHash(final Token token) {
+        final CharStream input = token.getInputStream();
+        final int textHash;
+        if (input instanceof SourceStream) {
+            textHash = ((SourceStream) input).hash(token.getStartIndex(), token.getStopIndex());
+        } else {
+            textHash = token.getText().hashCode();
+        }
+        return token.getType() * TYPE_MULTIPLIER + textHash;
+    }
+
+    /**
+     * Check if the tokens have the same type and text.
+     * We compare the code directly if both of them come from {@link SourceStream}.
+     *
+     * @param token The token.
+     * @param other The other token.
+     * @return True if they are the same.
+     */
+    static boolean same(final Token token, final Token other) {
+        final int length = token.getStopIndex() - token.getStartIndex() + 1;
+        final CharStream input = token.getInputStream();
+        final CharStream otherInput = other.getInputStream();
+        boolean result = token.getType() == other.getType();
+        if (result && input instanceof SourceStream && otherInput instanceof SourceStream) {
+            result = length == other.getStopIndex() - other.getStartIndex() + 1
+                && ((SourceStream) input).regionMatches(token.getStartIndex(), (SourceStream) otherInput, other.getStartIndex(), length);
+        } else if (result) {
+            result = token.getText().equals(other.getText());
+        }
+        return result;
+    }
+
+    /**
+     * Check if the token has the type and the part of the text.
+     * We compare the code directly if the token comes from {@link SourceStream}.
+     *
+     * @param token The token.
+     * @param type The other token type.
+     * @param text Texts of the other tokens.
+     * @param from Index of the first char of the other token in the text, inclusive.
+     * @param until Index of the last char of the other token in the text, exclusive.
+     * @return True if they are the same.
+     */
+    static boolean same(final Token token, final int type, final String text, final int from, final int until) {
+        final CharStream input = token.getInputStream();
+        boolean result = token.getType() == type;
+        if (result && input instanceof SourceStream) {
+            result = ((SourceStream) input).regionMatches(token.getStartIndex(), token.getStopIndex(), text, from, until);
+        } else if (result) {
+            final String tokenText = token.getText();
+            result = tokenText.length() == until - from && text.startsWith(tokenText, from);
+        }
+        return result;
+    }
+
+}
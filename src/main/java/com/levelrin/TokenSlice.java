@@ -0,0 +1,176 @@
+package com.levelrin;
+
+import java.util.List;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Tokens of the default channel in a range of the file, followed by EOF, for parsing a part of the file.
+ * Unlike {@link org.antlr.v4.runtime.CommonTokenStream}, it never changes the tokens,
+ * so the parsers of other ranges can read the same token list at the same time,
+ * and the tokens keep their indices in the whole file.
+ * The indices of {@link TokenSlice#index()} and {@link TokenSlice#seek(int)} are the positions in the slice,
+ * but {@link TokenSlice#getText(Interval)} takes the token indices in the whole file like the other token streams.
+ */
+// The methods and their names come from TokenStream.
+@SuppressWarnings({"PMD.TooManyMethods", "PMD.ShortMethodName"})
+final class TokenSlice implements TokenStream {
+
+    /**
+     * All tokens of the file.
+     */
+    private final List<Token> tokens;
+
+    /**
+     * Indices of the tokens of the default channel in the range.
+     */
+    private final int[] visible;
+
+    /**
+     * It comes after the last token of the range.
+     */
+    private final Token eof;
+
+    /**
+     * Position of the next token in {@link TokenSlice#visible}.
+     */
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * @param tokens See {@link TokenSlice#tokens}.
+     * @param start Index of the first token of the range, inclusive.
+     * @param end Index of the last token of the range, exclusive.
+     */
+    TokenSlice(final List<Token> tokens, final int start, final int end) {
+        this.tokens = tokens;
+        this.visible = tokens.subList(start, end).stream()
+            .filter(token -> token.getChannel() == Token.DEFAULT_CHANNEL)
+            .mapToInt(Token::getTokenIndex)
+            .toArray();
+        final CommonToken last = new CommonToken(Token.EOF, "<EOF>");
+        last.setTokenIndex(end);
+        last.setLine(tokens.get(end).getLine());
+        last.setCharPositionInLine(tokens.get(end).getCharPositionInLine());
+        this.eof = last;
+    }
+
+    @Override
+    public Token LT(final int offset) {
+        Token result = null;
+        if (offset < 0 && this.position + offset >= 0) {
+            result = this.get(this.position + offset);
+        } else if (offset > 0) {
+            result = this.get(Math.min(this.position + offset - 1, this.visible.length));
+        }
+        return result;
+    }
+
+    @Override
+    public Token get(final int index) {
+        final Token result;
+        if (index < this.visible.length) {
+            result = this.tokens.get(this.visible[index]);
+        } else {
+            result = this.eof;
+        }
+        return result;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return this.tokens.get(0).getTokenSource();
+    }
+
+    @Override
+    public String getText(final Interval interval) {
+        final StringBuilder result = new StringBuilder();
+        final int stop = Math.min(interval.b, this.tokens.size() - 1);
+        for (int index = Math.max(interval.a, 0); index <= stop; index++) {
+            final Token token = this.tokens.get(index);
+            if (token.getType() != Token.EOF) {
+                result.append(token.getText());
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String getText() {
+        final String result;
+        if (this.visible.length == 0) {
+            result = "";
+        } else {
+            result = this.getText(Interval.of(this.visible[0], this.visible[this.visible.length - 1]));
+        }
+        return result;
+    }
+
+    @Override
+    public String getText(final RuleContext context) {
+        return this.getText(context.getSourceInterval());
+    }
+
+    @Override
+    public String getText(final Token start, final Token stop) {
+        String result = "";
+        if (start != null && stop != null) {
+            result = this.getText(Interval.of(start.getTokenIndex(), stop.getTokenIndex()));
+        }
+        return result;
+    }
+
+    @Override
+    public void consume() {
+        if (this.LA(1) == EOF) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        this.position++;
+    }
+
+    @Override
+    public int LA(final int offset) {
+        final Token token = this.LT(offset);
+        int result = 0;
+        if (token != null) {
+            result = token.getType();
+        }
+        return result;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(final int marker) {
+        // We keep all tokens in memory, so there is nothing to release.
+    }
+
+    @Override
+    public int index() {
+        return this.position;
+    }
+
+    @Override
+    public void seek(final int index) {
+        this.position = index;
+    }
+
+    @Override
+    public int size() {
+        return this.visible.length + 1;
+    }
+
+    @Override
+    public String getSourceName() {
+        return this.getTokenSource().getSourceName();
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.Arrays;
+import java.util.StringJoiner;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Traces the nodes the visitor enters.
+ * It's turned on by the system property `dart-stylerin.trace=true` before the class is loaded.
+ * The visitor checks {@link Trace#ENABLED} first, so the JIT removes the tracing when it's off.
+ * When it's on, we count the visits of each rule in an array and log a sample of the visits:
+ * - `dart-stylerin.trace.rules` Comma-separated rule names to log. Ex: `cascade,arguments`. Use `terminal` for the tokens. All rules if it's not set.
+ * - `dart-stylerin.trace.sample` Log one of that many visits of the rules above. Ex: `100`. Every visit if it's not set.
+ */
+final class Trace {
+
+    /**
+     * Whether the visitor traces the nodes.
+     */
+    static final boolean ENABLED = Boolean.getBoolean("dart-stylerin.trace");
+
+    /**
+     * For logging.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Trace.class);
+
+    /**
+     * Index of the terminal nodes in the arrays. The rule indices come before it.
+     */
+    private static final int TERMINAL = Dart2Parser.ruleNames.length;
+
+    /**
+     * Name of the terminal nodes in the rule filter and the summary.
+     */
+    private static final String TERMINAL_NAME = "terminal";
+
+    /**
+     * Maximum number of characters of the source code in a log.
+     */
+    private static final int PREVIEW_LENGTH = 80;
+
+    /**
+     * We log one of this many visits of the rules in {@link Trace#rules}.
+     */
+    private final int sample;
+
+    /**
+     * Key - Rule index or {@link Trace#TERMINAL}.
+     * Value - True if we log the visits of the rule.
+     */
+    private final boolean[] rules;
+
+    /**
+     * Key - Rule index or {@link Trace#TERMINAL}.
+     * Value - Number of visits.
+     */
+    private final int[] counts;
+
+    /**
+     * Number of visits of the rules in {@link Trace#rules} so far. We use it for sampling.
+     */
+    private long matches;
+
+    /**
+     * Constructor with the settings from the system properties.
+     */
+    Trace() {
+        this(Integer.getInteger("dart-stylerin.trace.sample", 1), System.getProperty("dart-stylerin.trace.rules", ""));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sample See {@link Trace#sample}.
+     * @param rules Comma-separated rule names. Ex: `cascade,arguments,terminal`. All rules if it's empty.
+     */
+    Trace(final int sample, final String rules) {
+        if (sample < 1) {
+            throw new IllegalArgumentException("The sample should be positive. sample: " + sample);
+        }
+        this.sample = sample;
+        this.rules = new boolean[TERMINAL + 1];
+        this.counts = new int[TERMINAL + 1];
+        if (rules.isBlank()) {
+            Arrays.fill(this.rules, true);
+        } else {
+            for (final String name : rules.split(",")) {
+                this.rules[index(name.trim())] = true;
+            }
+        }
+    }
+
+    /**
+     * Count the visit and log it if it's sampled.
+     *
+     * @param tree The node the visitor enters.
+     * @return True if the visit is sampled.
+     */
+    boolean enter(final ParseTree tree) {
+        int index = TERMINAL;
+        if (tree instanceof ParserRuleContext) {
+            index = ((ParserRuleContext) tree).getRuleIndex();
+        }
+        this.counts[index]++;
+        boolean result = false;
+        if (this.rules[index]) {
+            result = this.matches % this.sample == 0;
+            this.matches++;
+        }
+        if (result && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Enter `{}` text: {}", tree.getClass().getSimpleName(), preview(tree));
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param name Rule name. Ex: `cascade` or `terminal`.
+     * @return Number of visits of the rule.
+     */
+    int count(final String name) {
+        return this.counts[index(name)];
+    }
+
+    /**
+     * Add the visits of the other trace into this.
+     * Ex: The visitor that formatted a part of the tree on another thread.
+     *
+     * @param other The other trace.
+     */
+    void merge(final Trace other) {
+        for (int index = 0; index < this.counts.length; index++) {
+            this.counts[index] += other.counts[index];
+        }
+    }
+
+    /**
+     * Forget the visits of the previous file.
+     */
+    void clear() {
+        Arrays.fill(this.counts, 0);
+        this.matches = 0;
+    }
+
+    /**
+     * Log the number of visits of each rule.
+     *
+     * @param sourceName Name of the file. Ex: {@link org.antlr.v4.runtime.CharStream#getSourceName()}.
+     */
+    void report(final String sourceName) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Visits in `{}`: {}", sourceName, this.summary());
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @return Rules that were visited with the number of visits. Ex: `identifier=3, terminal=5`.
+     */
+    String summary() {
+        final StringJoiner result = new StringJoiner(", ");
+        for (int index = 0; index < this.counts.length; index++) {
+            if (this.counts[index] > 0) {
+                result.add(name(index) + "=" + this.counts[index]);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * As is.
+     *
+     * @param name Rule name. Ex: `cascade` or `terminal`.
+     * @return Rule index or {@link Trace#TERMINAL}.
+     */
+    private static int index(final String name) {
+        int result = TERMINAL;
+        if (!TERMINAL_NAME.equals(name)) {
+            result = Arrays.asList(Dart2Parser.ruleNames).indexOf(name);
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("There is no such rule. name: " + name);
+        }
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param index Rule index or {@link Trace#TERMINAL}.
+     * @return Rule name.
+     */
+    private static String name(final int index) {
+        String result = TERMINAL_NAME;
+        if (index < TERMINAL) {
+            result = Dart2Parser.ruleNames[index];
+        }
+        return result;
+    }
+
+    /**
+     * Beginning of the source code of the node for the log.
+     * We don't use {@link ParseTree#getText()} because it recursively copies the whole subtree.
+     *
+     * @param tree The node.
+     * @return Source code up to {@link Trace#PREVIEW_LENGTH} characters.
+     */
+    private static String preview(final ParseTree tree) {
+        String result = "";
+        if (tree instanceof TerminalNode) {
+            result = tree.getText();
+        } else if (tree instanceof ParserRuleContext) {
+            final ParserRuleContext context = (ParserRuleContext) tree;
+            final Token start = context.getStart();
+            final Token stop = context.getStop();
+            if (stop != null && stop.getStopIndex() >= start.getStartIndex()) {
+                result = start.getInputStream().getText(
+                    Interval.of(start.getStartIndex(), Math.min(stop.getStopIndex(), start.getStartIndex() + PREVIEW_LENGTH - 1))
+                );
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,659 @@
+// Code for filling the parser's cache before formatting. It's a collection of the examples in src/test/resources.
+import 'dart:async';
+import 'dart:io';
+import 'dart:math';
+export'dart:math';
+export'dart:convert'show json,utf8;
+export'dart:core'hide print;
+import 'dart:math';import 'dart:async' as async_util;import 'dart:convert' show json, utf8;import 'dart:core' hide print;
+import 'package:flutter/foundation.dart' show immutable;
+import 'dart:math';
+
+void main() {
+final String a = 'one';
+assert(a == 'one', 'a should be one.');
+}
+
+void main() {
+  Map<String, int>? map={'one':1};
+  int num=map?['one']??0;
+}
+
+class User {
+  var items=Items();
+}
+class Items {
+  var map={};
+}
+void main(){
+  var user=User();
+  user.items.map['one']='uno';
+}
+
+class Basket{
+  Future<String> Function()? onFetch;
+  Basket({
+    this.onFetch
+  });
+}
+Future<String>fetchData()async{
+  await Future.delayed(Duration(seconds:1));
+  return'apple';
+}
+Future<void>sendMessage(final String url,{final Map<String, String>?options})async{
+  print('yoi');
+}
+void main()async{
+  final String fruit = await fetchData();
+  print(fruit);
+  Basket(
+      onFetch:()async{
+        await Future.delayed(
+            Duration(
+                seconds: 1
+            )
+        );
+        return 'banana';
+      }
+  );
+  await sendMessage(
+      'http://www.google.com',
+      options: <String, String>{
+        'abc': 'def',
+      }
+  );
+  await Future<void>.delayed(const Duration(milliseconds:200));
+}
+
+void main() {
+// Binary: 00000110
+int a = 6;
+// Binary: 00000011
+int b = 3;
+// If both bits are 1, the resulting bit is 1.
+// Otherwise, the resulting bit is 0.
+int result = a & b;
+// Output: 2 (Binary: 00000010)
+print(result);
+}
+
+class RussianDoll{
+  final String _name;
+  final RussianDoll? _child;
+  const RussianDoll(this._name,[this._child]);
+  RussianDoll? child(){return this._child;}
+  void unwrap(){
+    print(this._name);
+    if(this._child!=null){this._child.unwrap();}
+  }
+}
+void main(){
+  final RussianDoll doll=RussianDoll('Rin',RussianDoll(
+    'Revomin',RussianDoll('Ian')));
+  doll.unwrap();
+}
+
+void main() {
+String a = '1';
+a *= 2;
+print(a);
+double b = 8;
+b /= 2;
+print(b);
+int c = 10;
+c ~/= 3;
+c %= 3;
+c += 4;
+c -= 1;
+c <<= 1;
+c >>>= 1;
+c >>= 1;
+c &= 1;
+c ^= 1;
+c |= 1;
+print(c);
+String? d = null;
+d ??= 'hi';
+print(d);
+}
+
+class User{
+  const User(this._name);
+  const User.withDefaultName():this._name='Anonymous';
+  User.withNumber(final int number):this._name=number.toString();
+  final String _name;
+  void introduce(){print('Hi, my name is '+_name+'!');}
+}
+class Person{
+  final String _name;
+  Person.primary( this._name );
+}
+class Child extends Person {
+  Child():super.primary('Rin'){
+    print("Child constructor executed.");}
+}
+class Animal{
+  final String _name;
+  Animal(this._name);
+}
+class Cat extends Animal{
+  Cat():super('Chipi'){
+    String message(){return 'Cat constructor executed.';}
+    print(message());
+  }
+}
+void main(){
+  const User user=const User('Rin');
+  user.introduce();
+  const User user2 = const User.withDefaultName();
+  user2.introduce();
+}
+
+class Animal {
+  final Bird child;
+  Animal({
+    required this.child
+  });
+}
+class Bird<T> {
+  const Bird.stuff();
+}
+void main() {
+    Animal(
+        child: const Bird<int>.stuff(),
+    );
+}
+
+class Food {
+  @override
+  String toString() {
+    return 'food';
+  }
+}
+class Fish extends Food {
+  @override
+  String toString() {
+    return 'fish';
+  }
+}
+class Animal {
+  void eat(covariant Food food) {
+    print('Eat $food');
+  }
+}
+class Cat extends Animal {
+  @override
+  void eat(Fish food) {
+    print('Eat $food');
+  }
+}
+void main() {
+  final Animal cat = Cat();
+  final Food fish = Fish();
+  cat.eat(fish);
+}
+
+// Greeting for the user.
+class Greeter{
+  final String name;
+  Greeter(this.name);
+  // Say hello.
+  @override
+  String toString()=>'Hello, $name!';
+  void greet(){
+    stdout
+      ..write(toString())..write('\n')..flush();
+  }
+}
+/// Counts the calls.
+class Counter{
+  int count=0;
+  void increase(){count++;}
+  @deprecated
+  void decrease(){count--;}
+}
+int sum(final int a,final int b){return a+b;}
+@deprecated
+void oldMain(){print(sum(1,2));}
+void main(){
+  // Start.
+  Greeter('Rin').greet();
+  final Counter counter=Counter();
+  counter.increase();
+  print(counter.count);
+}
+
+var list1 = [1,2,3,4,];
+var list2 = [
+0,
+{},
+...list1,
+if (true) {
+  5
+},
+for (int index = 6; index < 9; index++) {
+  index,
+}
+];
+void main() {
+  print(list2);
+}
+
+enum Color{red,green,blue}
+
+void riskyOperation(){
+  var random=Random();
+  var choice=random.nextInt(4);
+  if (choice==0){
+    throw FormatException('Invalid format encountered');
+  }else if(choice == 1){
+    throw RangeError.value(100,'Input value','Value is out of acceptable range');
+  } else if (choice == 2) {
+    throw Exception('General exception occurred');
+  } else {
+    print('Risky operation completed successfully');
+  }
+}
+void main(){
+  try{
+    print('Attempting to execute risky operation');
+    riskyOperation();
+  }on FormatException catch(e){
+    print('Caught FormatException');
+    print('Error message: ${e.message}');}on RangeError catch(e){
+    rethrow;
+  }on Exception catch(e){
+    print('Caught Exception');
+    print('Error: ${e.toString()}');
+  }catch(e,stackTrace){
+    print('Caught unknown error');
+    print('Error: ${e.toString()}');
+    print('StackTrace: ${stackTrace.toString()}');
+  }finally{print('Finally block executed');}
+}
+
+void main() {}
+
+extension StringExtension on String{
+  String withPrefix(final String prefix) {
+    return '$prefix$this';
+  }
+}
+void main() {
+  print(
+      'World!'.withPrefix('Hello, ')
+  );
+}
+
+class User {
+  /// Secondary constructor.
+  /// It's for production.
+  factory User.withDefault(){return User.withRaw('Rin');}
+  /// Primary constructor.
+  /// It's for testing.
+  const User.withRaw(this._name);
+  final String _name;
+  void introduce(){print('Hi, my name is '+_name+'!');}
+}
+
+class MyClass{
+  final regex=new RegExp(r'''[a-zA-Z0-9]*]''');
+  final String _name='Rin';
+  final String Function(String name)withName=(final String name){return 'Hello, $name!';};
+  static final tag='TAG';
+  late     int   statusCode;
+  final bool checked=false;
+  static const String a='';
+}
+
+void main() {
+// LATE_? FINAL_ type?
+late final int a=0;
+// CONST_ type?
+const String b='';
+// LATE_? varOrType
+late var c=false;
+}
+
+class MyClass{
+  void count(final int from,final int to){for(int x=from;x<to;x++){print(x);}}
+}
+void main() {
+  for (int index=0;index<3;++index) {
+    print(index);
+  }
+}
+
+class Key<T>{
+  Key();
+}
+class User{
+  static final Key<int>key=Key();
+}
+T genericMethod<T>(final T value){return value;}
+void main() {
+  print(genericMethod<String>("Yoi Yoi"));
+}
+
+String toFruit(final int index) {
+  String fruit;
+  if(index == 0){
+    fruit = 'apple';}else if(index==1){fruit='banana';} else if (index==2||index==3){
+    fruit = 'kiwi';} else if (index>3&&index<7){fruit = 'grape';}else{
+    fruit = 'orange';
+  }return fruit;
+}
+void checkType(final dynamic object){
+  if(object is String){print('String detected!');}else{print('Unknown type detected.');}
+}
+
+void main(){ }
+
+class Parent{int money(){return 3;}
+String familyName() {
+return'yoi';
+}}
+
+class Child extends Parent {
+  static final tag='TAG';
+  @override
+  int money(){return super.money()+1;}
+  @override
+  String familyName(){return 'yo';}
+}
+
+class Example {
+  int x,y;
+  Example():x=10,y=20;
+}
+
+abstract class Animal{
+  String get name;
+  void move();
+}
+class Cat implements Animal{
+  @override
+  void move() {
+print("cat moved!");
+  }
+  @override
+  String get name   =>throw UnimplementedError('No name given.');
+}
+void main(){
+  final Animal animal = Cat();
+animal.move();
+}
+
+void main() {
+myLabel:print("Yoi");
+}
+
+class Count {
+  int _num = 0;
+  final List<void Function(int num)>_events=<void Function(int num)> [ ];
+  void increment(){
+    this._num++;
+    for(final void Function(int num)event in this._events){event(this._num);}
+  }
+  void addEvent(final void Function(int num)event){this._events.add(event);}
+}
+void run(void Function() func){func();}
+void main(){
+  final Count count=Count();
+  count.addEvent((n)=>print(n));
+  count.increment();
+  bool flag=true;
+  run((){flag=false;});
+  void Function < int > ()t;
+}
+
+class User{
+  String? name;
+  User? child;
+  User({this.name, this.child});
+}
+
+class MyClass{
+  final List<dynamic> list = <dynamic>[
+    'one','two',
+    'three',
+    'four',
+    'five',
+    User(
+        name: 'Rin',
+        child: User(
+            name: 'Revomin'
+        )
+    ),
+  ];
+}
+
+var list = const <int>[0,1,2,3,];
+
+void main() {
+  final Map<String,String>map=const<String,String>{
+    'one':'uno',
+    'two':'dos',
+    'three':'tres',
+  };
+  print(map['one']);
+}
+
+@immutable
+class Animal{}
+
+class MyClass{
+  int _num = 0;
+  String greet(){return 'Yoi Yoi';}
+  int sum(final int a,final int b){return a+b;}
+  static String tag()=>'TAG';
+  int get num=>this._num;
+  set num(final int value)=>this._num=value;
+}
+void main() {
+  MyClass obj = MyClass();
+  obj.num = 3;
+  print(obj.num);
+  final int value1=(obj.num+3)*2;
+  print(value1);
+}
+
+void main() {
+  final List<String>fruits=<String>[];
+  fruits
+      ..add('apple');
+  fruits
+    ..add('banana')..add('orange');
+  fruits..add('mango')..first
+  = 'cherry';
+  fruits.sublist(0);
+  fruits.sublist(0)
+      .sublist(1);
+  fruits.
+  sublist(0)..add('kiwi');
+}
+
+abstract class GlobalLog {
+  void debug(final String message);
+}
+mixin Log<T> on Parent implements GlobalLog {
+  @override
+  void debug(final String message) {
+    print('[DEBUG]: $message');
+  }
+}
+class Parent {
+}
+class User extends Parent with Log {
+  void hello() {
+    debug('Hello');
+  }
+}
+
+class User{
+  final int id;
+  final String name;
+  final String position;
+  final String nickName;
+  const User({required this.id,required this.name,required this.position,this.nickName='nick',});
+  void introduce(){print('id: ${this.id}, name: ${this.name}, position: ${this.position}');}
+}
+void main(){
+  final User user = User(id: 0,name: 'Rin',position: 'Developer',);
+  user.introduce();
+}
+
+void main() {
+  runApp(App(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Text('deep'))))))))))))))))))))));
+  User(User('Rin'), 'Yo');
+}
+
+void main(){
+  String?nullStr=null;
+  String?solidStr=nullStr?.replaceAll('','')??'solid';
+  String confirmedStr=solidStr!;
+  print(confirmedStr);
+}
+
+void Function([
+String? a,
+double? b,
+int? c,
+]) optionalPositionalParameterTypes = ([
+String? a,
+double? b,
+int? c,
+]) => print('');
+void Function({
+required int num,
+required String name,
+required double point,
+}) namedParameterTypes = ({
+int num = 1,
+String name = 'Rin',
+double point = 3.14,
+}) => print('');
+
+// OP CP
+void Function() func1=()=>print('');
+// OP normalParameterTypes C optionalParameterTypes CP
+void Function(int,String,[double]) func2=(int a,String b,[double? c])=>print('');
+// OP normalParameterTypes C? CP
+void Function(int, String) func3=(int a,String b)=>print('');
+// OP optionalParameterTypes CP
+void Function([int,String]) func4=([int? a, String? b])=>print('');
+
+class Number {
+  static int of(final bool value){return value?1:0;}
+}
+void main() {
+  print(Number.of(true));
+}
+
+class Parent{
+  final String? lastName;
+  const Parent({this.lastName});
+}
+class Child extends Parent{
+  final String firstName;
+  const Child({required this.firstName,super.lastName,});
+}
+
+class User {
+  int toNumber(final String number){
+    int result;
+    switch(number){case'one':result=1;case'two':result=2;case'three':result=3;default:result=-1;}
+    return result;
+  }
+  String toFruit(final int index) {
+    String result;
+    switch (index) {case 0:result='apple';
+      case 1:
+      case 2:
+        result='banana';break;
+      case 3:
+        final Random random = Random();
+        if (random.nextBool()) {
+          result = 'kiwi';
+        } else {result='mango';}
+      default:
+        result='orange';
+    }
+    return result;
+  }
+}
+void main() {
+  final User user = User();
+  print(user.toFruit(3));
+}
+
+final String a='';
+const String b='';
+
+// Define return types and classes
+class ProcessedData {
+
+  final String content;
+
+  ProcessedData(this.content);
+
+}
+
+class RawData {
+
+  final String data;
+
+  RawData(this.data);
+
+}
+
+class EncodedData {
+
+  final String encoded;
+
+  EncodedData(this.encoded);
+
+}
+
+// Simulate async operation returning a Future<RawData>
+Future<RawData> fetchRawData({required String source, required int retries}) async {
+  await Future.delayed(Duration(milliseconds: 100));
+  return RawData('raw_from_$source');
+}
+
+// Top-level function that receives a callback returning a Future
+ProcessedData processData(Future<EncodedData> Function() asyncOperation) {
+  // We're using `.then` inside the function to chain and transform the Future
+  EncodedData? result;
+  asyncOperation().then((EncodedData data) {
+    result = data;
+  });
+  // In real code, you'd return a Future here,
+  // but to match the original structure, we're simplifying
+  return ProcessedData(result?.encoded ?? "default");
+}
+
+// Main function
+void main() {
+  final output = processData(
+        () async {
+      return (
+          fetchRawData(
+            source: "serverA",
+            retries: 3,
+          ) as Future<RawData>
+      ).then((final RawData raw) => EncodedData("encoded_${raw.data}"));
+    },
+  );
+  print("Processed content: ${output.content}");
+}
+
+void main() {
+  dynamic a='Yoi';
+  var b=a as    String;
+  print(b);
+}
+
+class MyClass{
+  void drawStair(){int currentHeight=1;while(currentHeight<=5){print('*'*currentHeight);currentHeight++;}}
+}
@@ -0,0 +1,100 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import java.util.concurrent.ForkJoinPool;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+final class ChunkedParserTest {
+
+    /**
+     * Code with an import and declarations that end with `;` and `}`, including a `}` followed by `;`.
+     */
+    private static final String CODE = String.join(
+        "\n",
+        "import 'dart:math';",
+        "final greet = (String name) {",
+        "  return 'Hi, ${name}!';",
+        "};",
+        "class Fruit {",
+        "  final String name;",
+        "  Fruit(this.name);",
+        "}",
+        "int square(int a) => a * a;",
+        "void main() => print(square(max(1, 2)));",
+        ""
+    );
+
+    @Test
+    void shouldFormatSameAsWholeFile() {
+        final CommonTokenStream tokens = this.tokens(CODE);
+        final ParseTree tree = new ChunkedParser(ForkJoinPool.commonPool()).parse(tokens.getTokens());
+        MatcherAssert.assertThat(
+            "The stitched tree should be formatted in the same way as the tree of the whole file.",
+            new DocPrinter(DocPrinter.UNLIMITED).print(new DartVisitor(tokens, null).visit(tree)),
+            Matchers.equalTo(new Formatter(null, DocPrinter.UNLIMITED).format(SourceStream.fromString(CODE)))
+        );
+    }
+
+    @Test
+    void shouldGiveUpOnPartFile() {
+        MatcherAssert.assertThat(
+            "A part file is not a library declaration.",
+            this.parse("part of fruits;\nclass Apple {}\nclass Banana {}\n"),
+            Matchers.nullValue()
+        );
+    }
+
+    @Test
+    void shouldGiveUpOnImportAfterDeclaration() {
+        MatcherAssert.assertThat(
+            "Each chunk parses, but the file doesn't.",
+            this.parse("class Apple {}\nimport 'dart:math';\n"),
+            Matchers.nullValue()
+        );
+    }
+
+    @Test
+    void shouldGiveUpOnCascadeAfterBrace() {
+        MatcherAssert.assertThat(
+            "The `}` doesn't end the declaration, so the next chunk doesn't parse.",
+            this.parse("final apple = () {}\n  ..call();\nclass Banana {}\n"),
+            Matchers.nullValue()
+        );
+    }
+
+    @Test
+    void shouldGiveUpOnUnbalancedBraces() {
+        MatcherAssert.assertThat(
+            "We can't find the declarations if the braces are not balanced.",
+            this.parse("class Apple {}\n}\nclass Banana {}\n"),
+            Matchers.nullValue()
+        );
+    }
+
+    /**
+     * As is.
+     *
+     * @param code The code.
+     * @return Its tokens after filling them.
+     */
+    private CommonTokenStream tokens(final String code) {
+        final CommonTokenStream result = new CommonTokenStream(new Dart2Lexer(SourceStream.fromString(code)));
+        result.fill();
+        return result;
+    }
+
+    /**
+     * As is.
+     *
+     * @param code The code.
+     * @return See {@link ChunkedParser#parse(java.util.List)}.
+     */
+    private ParseTree parse(final String code) {
+        return new ChunkedParser(ForkJoinPool.commonPool()).parse(this.tokens(code).getTokens());
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.dfa.DFAState;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+final class Dart2LexerTest {
+
+    /**
+     * Strings with interpolations, the `$` signs before the closing quotes, and the quotes in the interpolations.
+     */
+    private static final String CODE = String.join(
+        "\n",
+        "void main() {",
+        "  log.info('user $name logged in at ${time.now()} from $ip$');",
+        "  sql.add(\"SELECT * FROM t WHERE a = $a AND b = '${b[\"k\"]}' $${c}\");",
+        "}",
+        ""
+    );
+
+    @Test
+    void shouldLexInterpolationsInsideStrings() {
+        final List<String> strings = new Dart2Lexer(SourceStream.fromString(CODE)).getAllTokens().stream()
+            .filter(token -> token.getType() == Dart2Lexer.SingleLineString)
+            .map(Token::getText)
+            .collect(Collectors.toList());
+        MatcherAssert.assertThat(
+            "Each string should be a single token with its interpolations.",
+            strings,
+            Matchers.contains(
+                "'user $name logged in at ${time.now()} from $ip$'",
+                "\"SELECT * FROM t WHERE a = $a AND b = '${b[\"k\"]}' $${c}\""
+            )
+        );
+    }
+
+    @Test
+    void shouldLexStringsWithCachedDfaOnly() {
+        new Dart2Lexer(SourceStream.fromString(CODE)).getAllTokens();
+        final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(CODE));
+        final CountingSimulator simulator = new CountingSimulator(lexer);
+        lexer.setInterpreter(simulator);
+        lexer.getAllTokens();
+        // ANTLR never caches the DFA edge of the end of the file.
+        MatcherAssert.assertThat(
+            "The lexer should not simulate the ATN for the code it has already seen.",
+            simulator.getSimulations(),
+            Matchers.equalTo(1)
+        );
+    }
+
+    /**
+     * It counts how many times the lexer couldn't find the next state in the DFA.
+     * A predicate in a lexer rule prevents caching the DFA edges, so the lexer would simulate the ATN every time.
+     */
+    private static final class CountingSimulator extends LexerATNSimulator {
+
+        /**
+         * Number of the ATN simulations.
+         */
+        private int simulations;
+
+        /**
+         * Constructor.
+         *
+         * @param lexer It shares the DFA with the other lexers.
+         */
+        CountingSimulator(final Dart2Lexer lexer) {
+            super(lexer, lexer.getATN(), lexer.getInterpreter().decisionToDFA, new PredictionContextCache());
+        }
+
+        @Override
+        protected DFAState computeTargetState(final CharStream input, final DFAState state, final int symbol) {
+            this.simulations++;
+            return super.computeTargetState(input, state, symbol);
+        }
+
+        /**
+         * As is.
+         *
+         * @return See {@link CountingSimulator#simulations}.
+         */
+        int getSimulations() {
+            return this.simulations;
+        }
+
+    }
+
+}
@@ -1,25 +1,63 @@
 package com.levelrin;
 
-import com.levelrin.antlr.generated.Dart2Lexer;
-import com.levelrin.antlr.generated.Dart2Parser;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 // Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
 @SuppressWarnings({"PMD.TooManyMethods", "PMD.LinguisticNaming"})
 final class DartVisitorTest {
 
+    /**
+     * Number of cascade sections in the deep cascade test.
+     * The parser keeps the sections of a cascade as siblings, so the parse tree stays flat.
+     * It checks that the visitor and the printer don't go deeper for each section.
+     */
+    private static final int CASCADE_DEPTH = 10_000;
+
+    /**
+     * Line width of the line width test.
+     */
+    private static final int LINE_WIDTH = 40;
+
+    /**
+     * Capacity of the memo in the memo test.
+     */
+    private static final int MEMO_CAPACITY = 100;
+
+    /**
+     * Character outside the BMP. It's a surrogate pair in UTF-16.
+     */
+    private static final String EMOJI = Character.toString(0x1F600);
+
+    /**
+     * Beginning of the message of {@link ParseException}.
+     */
+    private static final String PARSE_ERROR = "Sorry, there was a parsing error.";
+
+    /**
+     * Code of the deep cascade test with a placeholder for the sections.
+     */
+    private static final String CASCADE_CODE = "void main() {\n  builder%s;\n}\n";
+
+    /**
+     * Formatter of each thread without the options.
+     * The tests share it, so it also checks that the formatter can be reused for many files.
+     */
+    private static final ThreadLocal<Formatter> FORMATTER = ThreadLocal.withInitial(() -> new Formatter(null, DocPrinter.UNLIMITED));
+
     /**
      * Assert that the formatter formats the code written in the `before` file that matches with the code written in the `after` file.
      *
@@ -27,19 +65,33 @@ final class DartVisitorTest {
      * @param after The file name that has code after formatting.
      */
     void compare(final String before, final String after) {
+        this.compare(before, after, FORMATTER.get());
+    }
+
+    /**
+     * Same as {@link DartVisitorTest#compare(String, String)} but with the options of the formatter.
+     *
+     * @param before The file name that has code before formatting.
+     * @param after The file name that has code after formatting.
+     * @param pool See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     * @param lineWidth See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     */
+    void compare(final String before, final String after, final ForkJoinPool pool, final int lineWidth) {
+        this.compare(before, after, new Formatter(pool, lineWidth));
+    }
+
+    /**
+     * Same as {@link DartVisitorTest#compare(String, String)} but with the given formatter.
+     *
+     * @param before The file name that has code before formatting.
+     * @param after The file name that has code after formatting.
+     * @param formatter The formatter.
+     */
+    void compare(final String before, final String after, final Formatter formatter) {
         try {
             final Path beforePath = Paths.get(ClassLoader.getSystemResource(before).toURI());
             final String originalText = Files.readString(beforePath, StandardCharsets.UTF_8);
-            final CharStream charStream = CharStreams.fromString(originalText);
-            final Dart2Lexer lexer = new Dart2Lexer(charStream);
-            final CommonTokenStream tokens = new CommonTokenStream(lexer);
-            final Dart2Parser parser = new Dart2Parser(tokens);
-            final ThrowableErrorListener errorListener = new ThrowableErrorListener();
-            parser.removeErrorListeners();
-            parser.addErrorListener(errorListener);
-            final ParseTree tree = parser.compilationUnit();
-            final DartVisitor visitor = new DartVisitor(tokens);
-            final String result = visitor.visit(tree);
+            final String result = formatter.format(SourceStream.fromString(originalText));
             final Path afterPath = Paths.get(ClassLoader.getSystemResource(after).toURI());
             final String expectedText = Files.readString(afterPath, StandardCharsets.UTF_8);
             MatcherAssert.assertThat(
@@ -59,6 +111,45 @@ final class DartVisitorTest {
         }
     }
 
+    /**
+     * Format the code.
+     *
+     * @param originalText Code before formatting.
+     * @return Formatted code.
+     */
+    String format(final String originalText) {
+        return FORMATTER.get().format(SourceStream.fromString(originalText));
+    }
+
+    /**
+     * Format the code with the options of the formatter.
+     *
+     * @param charStream Code before formatting.
+     * @param pool See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     * @param lineWidth See {@link Formatter#Formatter(ForkJoinPool, int)}.
+     * @return Formatted code.
+     */
+    String format(final CharStream charStream, final ForkJoinPool pool, final int lineWidth) {
+        return new Formatter(pool, lineWidth).format(charStream);
+    }
+
+    /**
+     * Format the code, or get the error message if it fails.
+     *
+     * @param formatter The formatter.
+     * @param originalText Code before formatting.
+     * @return Formatted code or the error message.
+     */
+    String attempt(final Formatter formatter, final String originalText) {
+        String result;
+        try {
+            result = formatter.format(SourceStream.fromString(originalText));
+        } catch (final ParseException | UnsupportedOperationException ex) {
+            result = ex.getMessage();
+        }
+        return result;
+    }
+
     @Test
     void shouldFormatTypeCast2() {
         this.compare("type-cast-2-before.dart", "type-cast-2-after.dart");
@@ -89,6 +180,11 @@ final class DartVisitorTest {
         this.compare("bitwise-and-expression-before.dart", "bitwise-and-expression-after.dart");
     }
 
+    @Test
+    void shouldFormatBinaryOperators() {
+        this.compare("binary-operators-before.dart", "binary-operators-after.dart");
+    }
+
     @Test
     void shouldFormatAssert() {
         this.compare("assert-before.dart", "assert-after.dart");
@@ -291,4 +387,135 @@ final class DartVisitorTest {
         this.compare("import-before.dart", "import-after.dart");
     }
 
+    @Test
+    void shouldFormatNestedArguments() {
+        this.compare("nested-arguments-before.dart", "nested-arguments-after.dart");
+    }
+
+    @Test
+    void shouldFormatDeepCascadeWithoutStackOverflow() {
+        final String result = this.format(
+            String.format(CASCADE_CODE, "..add(1)".repeat(CASCADE_DEPTH))
+        );
+        MatcherAssert.assertThat(
+            "Every cascade section should be in its own line.",
+            result,
+            Matchers.equalTo(String.format(CASCADE_CODE, "\n    ..add(1)".repeat(CASCADE_DEPTH)))
+        );
+    }
+
+    @Test
+    void shouldFormatDeclarationsInParallel() {
+        this.compare("declarations-before.dart", "declarations-after.dart", ForkJoinPool.commonPool(), DocPrinter.UNLIMITED);
+    }
+
+    @Test
+    void shouldThrowUnsupportedPathInParallel() {
+        Assertions.assertThrows(
+            UnsupportedOperationException.class,
+            () -> this.format(
+                SourceStream.fromString("class A {\n  void a() {\n    b?..c();\n  }\n  void d() {}\n}\n"),
+                ForkJoinPool.commonPool(),
+                DocPrinter.UNLIMITED
+            ),
+            "The exception from another thread should be thrown as it is."
+        );
+    }
+
+    @Test
+    void shouldFormatCodeFromOtherCharStream() {
+        MatcherAssert.assertThat(
+            "Tokens should be printed with their text if the code is not a SourceStream.",
+            this.format(CharStreams.fromString("void main(){\n// Hi.\nprint('Hi');}\n"), null, DocPrinter.UNLIMITED),
+            Matchers.equalTo("void main() {\n  // Hi.\n  print('Hi');\n}\n")
+        );
+    }
+
+    @Test
+    void shouldFormatCodeWithSupplementaryCharacters() {
+        MatcherAssert.assertThat(
+            "Code points outside the BMP should be copied as they are.",
+            this.format(String.format("void main(){print('%s Hi');}\n", EMOJI)),
+            Matchers.equalTo(String.format("void main() {\n  print('%s Hi');\n}\n", EMOJI))
+        );
+    }
+
+    @Test
+    void shouldReuseFormatterAfterFailures() {
+        final Formatter formatter = new Formatter(null, DocPrinter.UNLIMITED);
+        MatcherAssert.assertThat(
+            "The failures should not affect the next file.",
+            List.of(
+                this.attempt(formatter, "void main() {"),
+                this.attempt(formatter, "class A {\n  void a() {\n    b?..c();\n  }\n}\n"),
+                this.attempt(formatter, "void main(){print('Hi');}\n")
+            ),
+            Matchers.contains(
+                Matchers.startsWith(PARSE_ERROR),
+                Matchers.startsWith("The following parsing path is not supported yet"),
+                Matchers.equalTo("void main() {\n  print('Hi');\n}\n")
+            )
+        );
+    }
+
+    @Test
+    void shouldParseAgainWithFullPredictionOnlyIfNeeded() {
+        final Formatter formatter = new Formatter(null, DocPrinter.UNLIMITED);
+        final List<Integer> fallbacks = new ArrayList<>();
+        for (final String code : List.of("void main() {\n  print('apple');\n}\n", "void main() {\n  print('apple')\n}\n")) {
+            this.attempt(formatter, code);
+            fallbacks.add(formatter.getFallbacks());
+        }
+        MatcherAssert.assertThat(
+            "Only the code with a syntax error should need the full LL prediction.",
+            fallbacks,
+            Matchers.equalTo(List.of(0, 1))
+        );
+    }
+
+    @Test
+    void shouldReportSyntaxErrorFromFullPrediction() {
+        final Formatter formatter = new Formatter(null, DocPrinter.UNLIMITED);
+        final String result = this.attempt(formatter, "void main() {\n  var x = ;\n}\n");
+        MatcherAssert.assertThat(
+            "The SLL prediction should give up, and the full LL prediction should report the syntax error.",
+            List.of(formatter.getFallbacks(), result.startsWith(PARSE_ERROR)),
+            Matchers.equalTo(List.of(1, true))
+        );
+    }
+
+    @Test
+    void shouldParseCascadeStatementWithoutFullPrediction() {
+        final Formatter formatter = new Formatter(null, DocPrinter.UNLIMITED);
+        formatter.format(SourceStream.fromString("void main() {\n  fruits..add('apple')..add('banana');\n}\n"));
+        MatcherAssert.assertThat(
+            "The cascade statement should be predicted by SLL alone.",
+            formatter.getFallbacks(),
+            Matchers.equalTo(0)
+        );
+    }
+
+    @Test
+    void shouldReuseFormattedSubtreesAcrossFiles() {
+        final Memo memo = new Memo(MEMO_CAPACITY);
+        final List<Integer> misses = new ArrayList<>();
+        final List<Integer> hits = new ArrayList<>();
+        // The second file gets the formatted subtrees of the first file from the memo.
+        for (int file = 0; file < 2; file++) {
+            this.compare("memo-before.dart", "memo-after.dart", new Formatter(null, DocPrinter.UNLIMITED, memo));
+            misses.add(memo.getMisses());
+            hits.add(memo.getHits());
+        }
+        MatcherAssert.assertThat(
+            "The second file should get all of its formatted subtrees from the memo.",
+            List.of(misses.get(1), hits.get(1) > hits.get(0)),
+            Matchers.equalTo(List.of(misses.get(0), true))
+        );
+    }
+
+    @Test
+    void shouldFormatWithLineWidth() {
+        this.compare("line-width-before.dart", "line-width-after.dart", null, LINE_WIDTH);
+    }
+
 }
@@ -0,0 +1,133 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class DfaSnapshotTest {
+
+    /**
+     * Code that makes the parser learn the precedence decisions and the string modes of the lexer.
+     */
+    private static final String CODE = "void main() {\n  final a = b..c()..d = 'e${f}g';\n  print(a?.h ?? 1 + 2 * 3);\n}\n";
+
+    /**
+     * File name of the snapshot.
+     */
+    private static final String SNAPSHOT = "dfa.bin";
+
+    /**
+     * Code of the warm-up test.
+     * The code for the warm-up has the same constructs, so the parser should have learned all of its decisions.
+     */
+    private static final String WARM_UP_TEST_CODE = "import 'dart:math';\n\nvoid main() {\n  final list = [1, 2, 3];\n}\n";
+
+    @Test
+    void shouldRestoreLearnedStates(@TempDir final Path directory) throws IOException {
+        final DfaSnapshot snapshot = new DfaSnapshot(directory.resolve(SNAPSHOT));
+        this.format();
+        snapshot.save();
+        final int learned = DfaSnapshot.states();
+        this.clearCache();
+        snapshot.load();
+        MatcherAssert.assertThat(
+            "The parser should have the states it learned before.",
+            DfaSnapshot.states(),
+            Matchers.equalTo(learned)
+        );
+    }
+
+    @Test
+    void shouldFormatSameWithRestoredStates(@TempDir final Path directory) throws IOException {
+        final DfaSnapshot snapshot = new DfaSnapshot(directory.resolve(SNAPSHOT));
+        final String expected = this.format();
+        snapshot.save();
+        this.clearCache();
+        snapshot.load();
+        MatcherAssert.assertThat(
+            "The restored states should parse the code in the same way.",
+            this.format(),
+            Matchers.equalTo(expected)
+        );
+    }
+
+    @Test
+    void shouldNotSaveWithoutNewStates(@TempDir final Path directory) throws IOException {
+        this.format();
+        new DfaSnapshot(directory.resolve(SNAPSHOT)).save();
+        final DfaSnapshot snapshot = new DfaSnapshot(directory.resolve(SNAPSHOT));
+        snapshot.load();
+        this.format();
+        MatcherAssert.assertThat(
+            "The same code should not make the parser learn something new.",
+            snapshot.save(),
+            Matchers.equalTo(false)
+        );
+    }
+
+    @Test
+    void shouldIgnoreBrokenSnapshot(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve(SNAPSHOT);
+        Files.write(file, CODE.getBytes(StandardCharsets.UTF_8));
+        MatcherAssert.assertThat(
+            "A file that is not a snapshot should not be loaded.",
+            new DfaSnapshot(file).load(),
+            Matchers.equalTo(false)
+        );
+    }
+
+    @Test
+    void shouldLearnStatesInWarmUp() {
+        final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(""));
+        final Dart2Parser parser = new Dart2Parser(new CommonTokenStream(lexer));
+        // The other tests have filled the cache, so we start from empty DFA and put them back at the end.
+        final DFA[] lexerDfas = lexer.getInterpreter().decisionToDFA.clone();
+        final DFA[] parserDfas = parser.getInterpreter().decisionToDFA.clone();
+        final List<Boolean> learned;
+        try {
+            this.clearCache();
+            final int empty = DfaSnapshot.states();
+            Formatter.warmUp();
+            final int warm = DfaSnapshot.states();
+            new Formatter(null, DocPrinter.UNLIMITED).format(SourceStream.fromString(WARM_UP_TEST_CODE));
+            learned = List.of(warm > empty, DfaSnapshot.states() > warm);
+        } finally {
+            System.arraycopy(lexerDfas, 0, lexer.getInterpreter().decisionToDFA, 0, lexerDfas.length);
+            System.arraycopy(parserDfas, 0, parser.getInterpreter().decisionToDFA, 0, parserDfas.length);
+        }
+        MatcherAssert.assertThat(
+            "The warm-up should fill the cache, so the parser should not need to fill it again.",
+            learned,
+            Matchers.equalTo(List.of(true, false))
+        );
+    }
+
+    /**
+     * As is.
+     *
+     * @return Formatted {@link DfaSnapshotTest#CODE}.
+     */
+    private String format() {
+        return new Formatter(null, DocPrinter.UNLIMITED).format(SourceStream.fromString(CODE));
+    }
+
+    /**
+     * Clear the DFA of the lexer and the parser.
+     */
+    private void clearCache() {
+        final Dart2Lexer lexer = new Dart2Lexer(SourceStream.fromString(""));
+        lexer.getInterpreter().clearDFA();
+        new Dart2Parser(new CommonTokenStream(lexer)).getInterpreter().clearDFA();
+    }
+
+}
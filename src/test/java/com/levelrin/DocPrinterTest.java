@@ -0,0 +1,396 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
+final class DocPrinterTest {
+
+    /**
+     * Line width that fits the whole call.
+     */
+    private static final int WIDE = 20;
+
+    /**
+     * Line width that doesn't fit the whole call.
+     */
+    private static final int NARROW = 10;
+
+    /**
+     * Line width that ends right after the first line of the multi-line text.
+     */
+    private static final int TIGHT = 16;
+
+    /**
+     * Flat text of a soft line between words.
+     */
+    private static final String SPACE = " ";
+
+    /**
+     * Line width of the scaling test. The list literals don't fit in it.
+     */
+    private static final int LIST_WIDTH = 40;
+
+    /**
+     * Number of elements of the smaller list in the scaling test.
+     */
+    private static final int LIST_SIZE = 1_000;
+
+    /**
+     * How many times larger the larger list is in the scaling test.
+     */
+    private static final int SCALE = 4;
+
+    @Test
+    void shouldPrintTextsAndLines() {
+        final Doc doc = Doc.concat(
+            List.of(
+                Doc.text("void main() {"),
+                Doc.line(1, 1),
+                Doc.text("print('Hi');"),
+                Doc.line(2, 0),
+                Doc.text("}")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Lines should break with the indentation.",
+            new DocPrinter().print(doc),
+            Matchers.equalTo("void main() {\n  print('Hi');\n\n}")
+        );
+    }
+
+    @Test
+    void shouldPrintIntoWriter() throws IOException {
+        final StringWriter writer = new StringWriter();
+        new DocPrinter(NARROW).print(this.call(), writer);
+        MatcherAssert.assertThat(
+            "The writer should receive the same text as the string.",
+            writer.toString(),
+            Matchers.equalTo(new DocPrinter(NARROW).print(this.call()))
+        );
+    }
+
+    @Test
+    void shouldKeepGroupFlatIfItFits() {
+        MatcherAssert.assertThat(
+            "The group should stay in one line.",
+            new DocPrinter(WIDE).print(this.call()),
+            Matchers.equalTo("call(aaaa, bbbb)")
+        );
+    }
+
+    @Test
+    void shouldBreakGroupIfItDoesNotFit() {
+        MatcherAssert.assertThat(
+            "The soft lines should break.",
+            new DocPrinter(NARROW).print(this.call()),
+            Matchers.equalTo("call(\n  aaaa,\n  bbbb\n)")
+        );
+    }
+
+    @Test
+    void shouldBreakGroupIfTextAfterItDoesNotFit() {
+        MatcherAssert.assertThat(
+            "The text after the group until the next line should count.",
+            new DocPrinter(WIDE).print(Doc.concat(List.of(this.call(), Doc.text(" + bb")))),
+            Matchers.equalTo("call(\n  aaaa,\n  bbbb\n) + bb")
+        );
+    }
+
+    @Test
+    void shouldBreakGroupWithHardLine() {
+        final Doc doc = Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.text("a"),
+                    Doc.softLine(SPACE, 1, 1),
+                    Doc.text("b"),
+                    Doc.line(1, 0),
+                    Doc.text("c")
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "The group with a hard line should break.",
+            new DocPrinter().print(doc),
+            Matchers.equalTo("a\n  b\nc")
+        );
+    }
+
+    @Test
+    void shouldBreakHardLineAfterMultilineText() {
+        final Doc doc = Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.text("'''x\ny''',"),
+                    Doc.softLine(SPACE, 1, 0),
+                    Doc.text("{"),
+                    Doc.line(1, 1),
+                    Doc.text("foo();"),
+                    Doc.line(1, 0),
+                    Doc.text("}]")
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "The hard lines after the line break in the text should still break.",
+            new DocPrinter(WIDE).print(doc),
+            Matchers.equalTo("'''x\ny''',\n{\n  foo();\n}]")
+        );
+    }
+
+    @Test
+    void shouldMeasureMultilineTextUntilFirstLineBreak() {
+        final Doc doc = Doc.concat(
+            List.of(
+                Doc.text("x = '''\nlong long long"),
+                Doc.group(
+                    Doc.concat(
+                        List.of(
+                            Doc.softLine("", 1, 1),
+                            Doc.text("ab\ncd"),
+                            Doc.softLine("", 1, 0),
+                            Doc.text("'''")
+                        )
+                    )
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "Only the first line of the text should count.",
+            new DocPrinter(TIGHT).print(doc),
+            Matchers.equalTo("x = '''\nlong long longab\ncd'''")
+        );
+    }
+
+    @Test
+    void shouldBreakGroupOfTokensIfItDoesNotFit() {
+        final String code = "aaaaaa bbbbbb";
+        final int space = code.indexOf(' ');
+        final SourceStream source = SourceStream.fromString(code);
+        final Doc doc = Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.token(source, 0, space - 1),
+                    Doc.softLine(SPACE, 1, 0),
+                    Doc.token(source, space + 1, code.length() - 1)
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "The tokens should be measured without their text.",
+            new DocPrinter(NARROW).print(doc),
+            Matchers.equalTo("aaaaaa\nbbbbbb")
+        );
+    }
+
+    @Test
+    void shouldMeasureMultilineTokenUntilFirstLineBreak() {
+        final String code = "x = '''\nab''';";
+        final int semicolon = code.length() - 1;
+        final SourceStream source = SourceStream.fromString(code);
+        final Doc doc = Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.token(source, 0, semicolon - 1),
+                    Doc.softLine(SPACE, 1, 0),
+                    Doc.token(source, semicolon, semicolon)
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "Only the first line of the token should count, and the column should continue after its last line.",
+            new DocPrinter(NARROW).print(doc),
+            Matchers.equalTo("x = '''\nab''' ;")
+        );
+    }
+
+    @Test
+    void shouldPrintDetachedTokensInSameWay() {
+        final String code = "cccccc dddddd";
+        final SourceStream source = SourceStream.fromString(code);
+        final Doc token = Doc.token(source, 0, code.length() - 1);
+        final Doc doc = Doc.group(Doc.concat(List.of(token, Doc.softLine(SPACE, 1, 0), token)));
+        final Doc detached = Doc.detach(doc);
+        MatcherAssert.assertThat(
+            "The copy should print the same text without referring to the code.",
+            List.of(new DocPrinter(NARROW).print(detached), Doc.detach(token).getKind()),
+            Matchers.equalTo(List.of(new DocPrinter(NARROW).print(doc), DocKind.TEXT))
+        );
+    }
+
+    @Test
+    void shouldLayOutLongListInLinearSteps() {
+        final int small = this.countChildReads(LIST_SIZE);
+        final int large = this.countChildReads(LIST_SIZE * SCALE);
+        MatcherAssert.assertThat(
+            "Each element should be laid out without reading all of its siblings again.",
+            large,
+            Matchers.lessThanOrEqualTo(small * SCALE)
+        );
+    }
+
+    @Test
+    void shouldTellIfDocIsEmpty() {
+        MatcherAssert.assertThat(
+            "A group of empty texts should be empty.",
+            Doc.group(Doc.concat(List.of(Doc.EMPTY, Doc.text("")))).isEmpty(),
+            Matchers.equalTo(true)
+        );
+    }
+
+    @Test
+    void shouldTellIfDocIsNotEmpty() {
+        MatcherAssert.assertThat(
+            "A line should not be empty.",
+            Doc.concat(List.of(Doc.EMPTY, Doc.line(1, 0))).isEmpty(),
+            Matchers.equalTo(false)
+        );
+    }
+
+    /**
+     * Build a function call with two arguments that may break.
+     *
+     * @return Document.
+     */
+    private Doc call() {
+        return Doc.group(
+            Doc.concat(
+                List.of(
+                    Doc.text("call("),
+                    Doc.softLine("", 1, 1),
+                    Doc.text("aaaa,"),
+                    Doc.softLine(SPACE, 1, 1),
+                    Doc.text("bbbb"),
+                    Doc.softLine("", 1, 0),
+                    Doc.text(")")
+                )
+            )
+        );
+    }
+
+    /**
+     * Format a list literal with the line width, and count how many times the visitor and the printer read the children in the parse tree.
+     * Unlike the time, the count doesn't depend on the machine.
+     *
+     * @param size Number of the elements.
+     * @return Number of the children read.
+     */
+    private int countChildReads(final int size) {
+        final String code = String.format("void main() {%n  final list = [%s];%n}%n", String.join(", ", Collections.nCopies(size, "1")));
+        final CommonTokenStream tokens = new CommonTokenStream(new Dart2Lexer(SourceStream.fromString(code)));
+        final ParserRuleContext tree = new Dart2Parser(tokens).compilationUnit();
+        this.countChildren(tree);
+        new DocPrinter(LIST_WIDTH).print(new DartVisitor(tokens, null, LIST_WIDTH).visit(tree));
+        return this.sumReads(tree);
+    }
+
+    /**
+     * Replace the children of the node and its descendants with {@link CountingChildren}.
+     *
+     * @param node The node.
+     */
+    private void countChildren(final ParserRuleContext node) {
+        if (node.children != null) {
+            for (final ParseTree child : node.children) {
+                if (child instanceof ParserRuleContext) {
+                    this.countChildren((ParserRuleContext) child);
+                }
+            }
+            node.children = new CountingChildren(node.children);
+        }
+    }
+
+    /**
+     * As is.
+     *
+     * @param node The node after {@link DocPrinterTest#countChildren(ParserRuleContext)}.
+     * @return Number of the children read from the node and its descendants.
+     */
+    private int sumReads(final ParserRuleContext node) {
+        int result = 0;
+        if (node.children != null) {
+            result = ((CountingChildren) node.children).getReads();
+            for (final ParseTree child : node.children) {
+                if (child instanceof ParserRuleContext) {
+                    result += this.sumReads((ParserRuleContext) child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Children of a node that count how many times they are read.
+     */
+    private static final class CountingChildren extends ArrayList<ParseTree> {
+
+        /**
+         * Please do not use the @Serial annotation because it is not supported in JDK 11.
+         */
+        private static final long serialVersionUID = 4_530_127_771_903_682_115L;
+
+        /**
+         * Number of the children read.
+         */
+        private int reads;
+
+        /**
+         * Constructor.
+         *
+         * @param children The original children.
+         */
+        CountingChildren(final List<ParseTree> children) {
+            super(children);
+        }
+
+        @Override
+        public ParseTree get(final int index) {
+            this.reads++;
+            return super.get(index);
+        }
+
+        @Override
+        public Iterator<ParseTree> iterator() {
+            final Iterator<ParseTree> origin = super.iterator();
+            return new Iterator<>() {
+
+                @Override
+                public boolean hasNext() {
+                    return origin.hasNext();
+                }
+
+                @Override
+                public ParseTree next() {
+                    CountingChildren.this.reads++;
+                    return origin.next();
+                }
+
+            };
+        }
+
+        /**
+         * As is.
+         *
+         * @return See {@link CountingChildren#reads}.
+         */
+        int getReads() {
+            return this.reads;
+        }
+
+    }
+
+}
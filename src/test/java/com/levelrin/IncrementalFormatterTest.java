@@ -0,0 +1,92 @@
+package com.levelrin;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+final class IncrementalFormatterTest {
+
+    /**
+     * Code with an import and three declarations.
+     */
+    private static final String CODE = String.join(
+        "\n",
+        "import 'dart:math';",
+        "int square(int a) => a * a;",
+        "class Fruit {",
+        "  final String name;",
+        "  Fruit(this.name);",
+        "}",
+        "void main() => print(square(max(1, 2)));",
+        ""
+    );
+
+    /**
+     * The code we change in {@link IncrementalFormatterTest#CODE}.
+     */
+    private static final String NAME = "name";
+
+    /**
+     * We rename {@link IncrementalFormatterTest#NAME} into this.
+     */
+    private static final String LABEL = "label";
+
+    @Test
+    void shouldFormatSameAsWholeFileAfterEdit() {
+        final IncrementalFormatter formatter = new IncrementalFormatter(DocPrinter.UNLIMITED);
+        formatter.format(CODE);
+        MatcherAssert.assertThat(
+            "The edited document should be formatted in the same way as a new file.",
+            formatter.edit(CODE.indexOf(NAME), NAME.length(), LABEL),
+            Matchers.equalTo(this.formatWhole(CODE.replaceFirst(NAME, LABEL)))
+        );
+    }
+
+    @Test
+    void shouldReparseOnlyEditedDeclaration() {
+        final IncrementalFormatter formatter = new IncrementalFormatter(DocPrinter.UNLIMITED);
+        formatter.format(CODE);
+        formatter.edit(CODE.indexOf(NAME), NAME.length(), LABEL);
+        MatcherAssert.assertThat(
+            "The other declarations should keep their formatted results.",
+            formatter.getReparsed(),
+            Matchers.equalTo(1)
+        );
+    }
+
+    @Test
+    void shouldFormatInsertedDeclarations() {
+        final String inserted = "int cube(int a) => a * a * a;\nconst one = 1;\n";
+        final int offset = CODE.indexOf("class");
+        final IncrementalFormatter formatter = new IncrementalFormatter(DocPrinter.UNLIMITED);
+        formatter.format(CODE);
+        MatcherAssert.assertThat(
+            "The new declarations should be formatted between the others.",
+            formatter.edit(offset, 0, inserted),
+            Matchers.equalTo(this.formatWhole(CODE.substring(0, offset) + inserted + CODE.substring(offset)))
+        );
+    }
+
+    @Test
+    void shouldFormatWholeFileIfItIsNotLibrary() {
+        final String code = "part of fruits;\nclass Apple {}\n";
+        final IncrementalFormatter formatter = new IncrementalFormatter(DocPrinter.UNLIMITED);
+        formatter.format(code);
+        MatcherAssert.assertThat(
+            "A part file should be formatted as a whole.",
+            formatter.edit(code.indexOf("Apple"), 0, "Green"),
+            Matchers.equalTo(this.formatWhole("part of fruits;\nclass GreenApple {}\n"))
+        );
+    }
+
+    /**
+     * As is.
+     *
+     * @param code Code before formatting.
+     * @return The code formatted by {@link Formatter}.
+     */
+    private String formatWhole(final String code) {
+        return new Formatter(null, DocPrinter.UNLIMITED).format(SourceStream.fromString(code));
+    }
+
+}
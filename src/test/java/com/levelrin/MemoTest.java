@@ -0,0 +1,44 @@
+package com.levelrin;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class MemoTest {
+
+    /**
+     * Capacity smaller than the number of different subtrees in the code.
+     */
+    private static final int CAPACITY = 2;
+
+    @Test
+    void shouldKeepSubtreesUpToCapacity() throws URISyntaxException, IOException {
+        final Memo memo = new Memo(CAPACITY);
+        final String code = Files.readString(
+            Paths.get(ClassLoader.getSystemResource("memo-before.dart").toURI()),
+            StandardCharsets.UTF_8
+        );
+        new Formatter(null, DocPrinter.UNLIMITED, memo).format(SourceStream.fromString(code));
+        MatcherAssert.assertThat(
+            "The least recently used subtrees should be evicted.",
+            memo.size(),
+            Matchers.equalTo(CAPACITY)
+        );
+    }
+
+    @Test
+    void shouldRejectNonPositiveCapacity() {
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () -> new Memo(0),
+            "The memo should keep at least one subtree."
+        );
+    }
+
+}
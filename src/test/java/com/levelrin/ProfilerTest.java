@@ -0,0 +1,53 @@
+package com.levelrin;
+
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+
+final class ProfilerTest {
+
+    /**
+     * Code with a cascade, an assignment, and a binary expression.
+     */
+    private static final String CODE = "void main() {\n  fruits..add('apple');\n  total = price * count;\n}\n";
+
+    /**
+     * Number of the lines before the decisions in the report.
+     */
+    private static final int HEADER_LINES = 2;
+
+    @Test
+    void shouldCountParsedFiles() {
+        final Profiler profiler = new Profiler();
+        profiler.parse(SourceStream.fromString(CODE));
+        profiler.parse(SourceStream.fromString(CODE));
+        MatcherAssert.assertThat(
+            "The report should start with the number of the files.",
+            profiler.report(1),
+            Matchers.startsWith("Decisions of 2 files:")
+        );
+    }
+
+    @Test
+    void shouldListDecisionsWithRuleNames() {
+        final Profiler profiler = new Profiler();
+        profiler.parse(SourceStream.fromString(CODE));
+        MatcherAssert.assertThat(
+            "The report should have a line for a decision of the `expr` rule.",
+            profiler.report(Integer.MAX_VALUE).lines().map(line -> line.split(" ")[1]).anyMatch("expr"::equals),
+            Matchers.equalTo(true)
+        );
+    }
+
+    @Test
+    void shouldLimitDecisions() {
+        final Profiler profiler = new Profiler();
+        profiler.parse(SourceStream.fromString(CODE));
+        MatcherAssert.assertThat(
+            "The report should have the header lines and the given number of decisions.",
+            profiler.report(1).lines().count(),
+            Matchers.equalTo(HEADER_LINES + 1L)
+        );
+    }
+
+}
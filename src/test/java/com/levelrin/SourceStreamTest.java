@@ -0,0 +1,275 @@
+package com.levelrin;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Excluding the following PMD rules via `ruleSet.xml` didn't work, for some reason.
+@SuppressWarnings("PMD.TooManyMethods")
+final class SourceStreamTest {
+
+    /**
+     * Code with only BMP characters.
+     */
+    private static final String CODE = "void main() {\n  print('Hi');\n}";
+
+    /**
+     * Character outside the BMP. It's a surrogate pair in UTF-16.
+     */
+    private static final String EMOJI = Character.toString(0x1F600);
+
+    /**
+     * Code with a supplementary character.
+     */
+    private static final String WIDE_CODE = String.format("print('%s');\nmain();", EMOJI);
+
+    /**
+     * Character of two bytes in UTF-8.
+     */
+    private static final String ACUTE = Character.toString(0xE9);
+
+    /**
+     * Character of three bytes in UTF-8.
+     */
+    private static final String HANGUL = Character.toString(0xD55C);
+
+    /**
+     * Code with the characters of one, two, three, and four bytes in UTF-8, long enough to have many steps in {@link MappedUtf8}.
+     */
+    private static final String MIXED_CODE = String.format("print('a%s%s%s');\n", ACUTE, HANGUL, EMOJI).repeat(50);
+
+    /**
+     * File name for {@link SourceStreamTest#WIDE_CODE}.
+     */
+    private static final String WIDE_FILE = "wide.dart";
+
+    /**
+     * File name for {@link SourceStreamTest#CODE}.
+     */
+    private static final String NARROW_FILE = "narrow.dart";
+
+    /**
+     * File name for the code that is not UTF-8.
+     */
+    private static final String INVALID_FILE = "invalid.dart";
+
+    /**
+     * A byte that never appears in UTF-8.
+     */
+    private static final byte INVALID_BYTE = (byte) 0xFF;
+
+    /**
+     * Index of the first code point of `main` in {@link SourceStreamTest#CODE}.
+     */
+    private static final int MAIN_START = 5;
+
+    /**
+     * Index of the last code point of `main` in {@link SourceStreamTest#CODE}.
+     */
+    private static final int MAIN_STOP = 8;
+
+    /**
+     * Index of the last code point of the first line in {@link SourceStreamTest#WIDE_CODE}.
+     */
+    private static final int WIDE_LINE_STOP = 10;
+
+    /**
+     * Expected text between {@link SourceStreamTest#MAIN_START} and {@link SourceStreamTest#MAIN_STOP}.
+     */
+    private static final String MAIN = "main";
+
+    @Test
+    void shouldCopyIntoWriter() throws IOException {
+        final StringWriter writer = new StringWriter();
+        SourceStream.fromString(CODE).copy(MAIN_START, MAIN_STOP, writer);
+        MatcherAssert.assertThat(
+            "The writer should receive the token.",
+            writer.toString(),
+            Matchers.equalTo(MAIN)
+        );
+    }
+
+    @Test
+    void shouldCopyIntoStringBuilder() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        SourceStream.fromString(CODE).copy(MAIN_START, MAIN_STOP, builder);
+        MatcherAssert.assertThat(
+            "The builder should receive the token.",
+            builder.toString(),
+            Matchers.equalTo(MAIN)
+        );
+    }
+
+    @Test
+    void shouldCopyIntoOtherAppendable() throws IOException {
+        final CharBuffer buffer = CharBuffer.allocate(MAIN.length());
+        SourceStream.fromString(CODE).copy(MAIN_START, MAIN_STOP, buffer);
+        buffer.flip();
+        MatcherAssert.assertThat(
+            "The buffer should receive the token.",
+            buffer.toString(),
+            Matchers.equalTo(MAIN)
+        );
+    }
+
+    @Test
+    void shouldCopySupplementaryCharacters() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        SourceStream.fromString(WIDE_CODE).copy(0, WIDE_LINE_STOP, builder);
+        MatcherAssert.assertThat(
+            "The code point should be copied as a surrogate pair.",
+            builder.toString(),
+            Matchers.equalTo(String.format("print('%s');", EMOJI))
+        );
+    }
+
+    @Test
+    void shouldLookAroundLikeCodePointCharStream() {
+        final CharStream expected = CharStreams.fromString(WIDE_CODE);
+        final CharStream actual = SourceStream.fromString(WIDE_CODE);
+        MatcherAssert.assertThat(
+            "The stream should give the same code points as the one from ANTLR.",
+            this.lookAround(actual),
+            Matchers.equalTo(this.lookAround(expected))
+        );
+    }
+
+    @Test
+    void shouldGetTextLikeCodePointCharStream() {
+        final CharStream expected = CharStreams.fromString(WIDE_CODE);
+        final CharStream actual = SourceStream.fromString(WIDE_CODE);
+        final Interval interval = Interval.of(MAIN_START, expected.size() + 1);
+        MatcherAssert.assertThat(
+            "The stream should give the same text as the one from ANTLR.",
+            List.of(actual.getText(interval), actual.toString(), actual.getSourceName(), actual.size()),
+            Matchers.equalTo(List.of(expected.getText(interval), expected.toString(), expected.getSourceName(), expected.size()))
+        );
+    }
+
+    @Test
+    void shouldNotConsumeEof() {
+        final CharStream stream = SourceStream.fromString("", "empty.dart");
+        Assertions.assertThrows(
+            IllegalStateException.class,
+            stream::consume,
+            "The stream should not move after the end."
+        );
+    }
+
+    @Test
+    void shouldFindLineBreaks() {
+        final SourceStream stream = SourceStream.fromString(CODE);
+        MatcherAssert.assertThat(
+            "The first and last line breaks should be found in the range.",
+            List.of(
+                stream.indexOf('\n', 0, CODE.length() - 1),
+                stream.lastIndexOf('\n', 0, CODE.length() - 1),
+                stream.indexOf('\n', MAIN_START, MAIN_STOP),
+                stream.lastIndexOf('\n', MAIN_START, MAIN_STOP)
+            ),
+            Matchers.equalTo(List.of(CODE.indexOf('\n'), CODE.lastIndexOf('\n'), -1, -1))
+        );
+    }
+
+    @Test
+    void shouldDecodeFileLikeString(@TempDir final Path directory) throws IOException {
+        final Path narrow = Files.writeString(directory.resolve(NARROW_FILE), CODE, StandardCharsets.UTF_8);
+        final Path wide = Files.writeString(directory.resolve(WIDE_FILE), WIDE_CODE, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(
+            "The file should give the same code points as its content.",
+            List.of(this.lookAround(SourceStream.fromFile(narrow)), this.lookAround(SourceStream.fromFile(wide))),
+            Matchers.equalTo(List.of(this.lookAround(SourceStream.fromString(CODE)), this.lookAround(SourceStream.fromString(WIDE_CODE))))
+        );
+    }
+
+    @Test
+    void shouldKeepFileText(@TempDir final Path directory) throws IOException {
+        final Path file = Files.writeString(directory.resolve(WIDE_FILE), WIDE_CODE, StandardCharsets.UTF_8);
+        final CharStream stream = SourceStream.fromFile(file);
+        MatcherAssert.assertThat(
+            "The stream should have the text and the path of the file.",
+            List.of(stream.toString(), stream.getSourceName(), stream.size()),
+            Matchers.equalTo(List.of(WIDE_CODE, file.toString(), WIDE_CODE.codePointCount(0, WIDE_CODE.length())))
+        );
+    }
+
+    @Test
+    void shouldRejectMalformedFile(@TempDir final Path directory) throws IOException {
+        final Path file = Files.write(directory.resolve(INVALID_FILE), new byte[] {'a', INVALID_BYTE, ';'});
+        Assertions.assertThrows(
+            CharacterCodingException.class,
+            () -> SourceStream.fromFile(file),
+            "The file should be valid UTF-8."
+        );
+    }
+
+    @Test
+    void shouldMapFileLikeString(@TempDir final Path directory) throws IOException {
+        final Path narrow = Files.writeString(directory.resolve(NARROW_FILE), CODE, StandardCharsets.UTF_8);
+        final Path wide = Files.writeString(directory.resolve(WIDE_FILE), WIDE_CODE, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(
+            "The mapped file should give the same code points as its content.",
+            List.of(this.lookAround(SourceStream.map(narrow)), this.lookAround(SourceStream.map(wide))),
+            Matchers.equalTo(List.of(this.lookAround(SourceStream.fromString(CODE)), this.lookAround(SourceStream.fromString(WIDE_CODE))))
+        );
+    }
+
+    @Test
+    void shouldDecodeMappedFileLazily(@TempDir final Path directory) throws IOException {
+        final Path file = Files.writeString(directory.resolve("mixed.dart"), MIXED_CODE, StandardCharsets.UTF_8);
+        final SourceStream stream = SourceStream.map(file);
+        final StringBuilder copied = new StringBuilder();
+        stream.copy(0, stream.size() - 1, copied);
+        MatcherAssert.assertThat(
+            "Every code point of the mapped file should be decoded from the nearest step.",
+            List.of(stream.toString(), copied.toString(), stream.size()),
+            Matchers.equalTo(List.of(MIXED_CODE, MIXED_CODE, MIXED_CODE.codePointCount(0, MIXED_CODE.length())))
+        );
+    }
+
+    @Test
+    void shouldRejectMalformedMappedFile(@TempDir final Path directory) throws IOException {
+        final Path file = Files.write(directory.resolve(INVALID_FILE), new byte[] {'a', INVALID_BYTE, ';'});
+        Assertions.assertThrows(
+            CharacterCodingException.class,
+            () -> SourceStream.map(file),
+            "The mapped file should be valid UTF-8."
+        );
+    }
+
+    /**
+     * Read the stream the way the lexer does.
+     *
+     * @param stream The stream.
+     * @return Code points and indices we have seen.
+     */
+    private List<Integer> lookAround(final CharStream stream) {
+        final int first = stream.LA(1);
+        final int marker = stream.mark();
+        stream.consume();
+        stream.consume();
+        final int behind = stream.LA(-1);
+        final int current = stream.LA(0);
+        final int index = stream.index();
+        stream.seek(stream.size());
+        final int end = stream.LA(1);
+        final int beforeStart = stream.LA(-stream.size() - 1);
+        stream.release(marker);
+        return List.of(first, behind, current, index, end, beforeStart, IntStream.EOF);
+    }
+
+}
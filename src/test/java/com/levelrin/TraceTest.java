@@ -0,0 +1,124 @@
+package com.levelrin;
+
+import com.levelrin.antlr.generated.Dart2Lexer;
+import com.levelrin.antlr.generated.Dart2Parser;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class TraceTest {
+
+    /**
+     * Code of the nodes we visit.
+     */
+    private static final String CODE = "void main() {}\n";
+
+    /**
+     * Rule name of the tokens.
+     */
+    private static final String TERMINAL = "terminal";
+
+    /**
+     * Number of tokens in {@link TraceTest#CODE} including EOF.
+     */
+    private static final int TERMINAL_COUNT = 7;
+
+    @Test
+    void shouldCountVisitsOfEachRule() {
+        final Trace trace = new Trace(1, "");
+        this.enterAll(trace);
+        MatcherAssert.assertThat(
+            "Each visit should be counted by its rule.",
+            List.of(trace.count(TERMINAL), trace.count("compilationUnit"), trace.count("cascade")),
+            Matchers.equalTo(List.of(TERMINAL_COUNT, 1, 0))
+        );
+    }
+
+    @Test
+    void shouldSampleVisitsOfFilteredRules() {
+        final Trace trace = new Trace(2, TERMINAL);
+        MatcherAssert.assertThat(
+            "Every other token should be sampled.",
+            this.enterAll(trace).stream().filter(sampled -> sampled).count(),
+            Matchers.equalTo((long) (TERMINAL_COUNT + 1) / 2)
+        );
+    }
+
+    @Test
+    void shouldMergeVisits() {
+        final Trace trace = new Trace(1, "");
+        final Trace other = new Trace(1, "");
+        this.enterAll(trace);
+        this.enterAll(other);
+        trace.merge(other);
+        MatcherAssert.assertThat(
+            "The visits of the other trace should be added.",
+            trace.count(TERMINAL),
+            Matchers.equalTo(TERMINAL_COUNT * 2)
+        );
+    }
+
+    @Test
+    void shouldForgetVisitsAfterClear() {
+        final Trace trace = new Trace(1, "");
+        this.enterAll(trace);
+        trace.clear();
+        MatcherAssert.assertThat(
+            "There should be no visits after clear.",
+            trace.summary(),
+            Matchers.emptyString()
+        );
+    }
+
+    @Test
+    void shouldRejectUnknownRule() {
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () -> new Trace(1, "cascade, unknown"),
+            "The rule filter should have the rule names of the parser."
+        );
+    }
+
+    @Test
+    void shouldNotReadSettingsIfDisabled() {
+        final String property = "dart-stylerin.trace.rules";
+        System.setProperty(property, "unknown");
+        try {
+            Assertions.assertDoesNotThrow(
+                () -> new DartVisitor(new CommonTokenStream(new Dart2Lexer(SourceStream.fromString(CODE)))),
+                "The visitor should not create the trace when the tracing is off."
+            );
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    /**
+     * Enter all nodes of {@link TraceTest#CODE} in pre-order like the visitor does.
+     *
+     * @param trace The trace.
+     * @return Whether each visit was sampled.
+     */
+    private List<Boolean> enterAll(final Trace trace) {
+        final Dart2Parser parser = new Dart2Parser(new CommonTokenStream(new Dart2Lexer(SourceStream.fromString(CODE))));
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(parser.compilationUnit());
+        final List<Boolean> result = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            final ParseTree node = stack.pop();
+            result.add(trace.enter(node));
+            for (int index = node.getChildCount() - 1; index >= 0; index--) {
+                stack.push(node.getChild(index));
+            }
+        }
+        return result;
+    }
+
+}
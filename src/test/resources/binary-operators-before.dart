@@ -0,0 +1,9 @@
+void main() {
+int flags = a|b ^ c&d;
+int shifted = a<<2 >> 1 >>> 3;
+bool check = a<=b && c>=d || e != f;
+var name = given ?? fallback;
+var total = (a+b)*c ~/ d % e - f / g;
+bool typed = value is String && other is int;
+var cast = value as int;
+}
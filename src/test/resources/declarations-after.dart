@@ -0,0 +1,58 @@
+import 'dart:io';
+
+// Greeting for the user.
+class Greeter {
+
+  final String name;
+
+  Greeter(this.name);
+
+  // Say hello.
+  @override
+  String toString() => 'Hello, $name!';
+
+  void greet() {
+    stdout
+      ..write(
+        toString()
+      )
+      ..write('\n')
+      ..flush();
+  }
+
+}
+
+/// Counts the calls.
+class Counter {
+
+  int count = 0;
+
+  void increase() {
+    count++;
+  }
+
+  @deprecated
+  void decrease() {
+    count--;
+  }
+
+}
+
+int sum(final int a, final int b) {
+  return a + b;
+}
+
+@deprecated
+void oldMain() {
+  print(
+    sum(1, 2)
+  );
+}
+
+void main() {
+  // Start.
+  Greeter('Rin').greet();
+  final Counter counter = Counter();
+  counter.increase();
+  print(counter.count);
+}
@@ -0,0 +1,16 @@
+void main() {
+  final list = [1, 2, 3];
+  final names = ['alpha', 'beta', 'gamma', 'delta', 'epsilon'];
+  final trailing = [1, 2,];
+  final nested = [[1, 2], [3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14]];
+  print('short');
+  print('a very long message that does not fit in the line');
+  final point = Point()..x = 1..y = 2;
+  final user = User()..name = 'Rin'..email = 'rin@example.com'..age = 3;
+  builder..add(1)..add(2);
+  value = compute(alpha, beta) + someVeryLongIdentifierAfterIt;
+  final lines = ['''x
+y''', () {
+ foo();
+}];
+}
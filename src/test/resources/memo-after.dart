@@ -0,0 +1,64 @@
+class A {
+
+  Map<String, dynamic> toJson() {
+    return {
+      'id': id,
+      'name': name,
+      'tags': [
+        'a',
+        'b',
+        'c'
+      ]
+    };
+  }
+
+  void log() {
+    print(
+      format('value', 'other', 1, 2, 3)
+    );
+    if (ok) {
+      print(
+        format('value', 'other', 1, 2, 3)
+      );
+    }
+    print(
+      // Same arguments with a comment.
+      format('value', 'other', 1, 2, 3)
+    );
+    builder
+      .add(
+      format('value', 'other', 1, 2, 3)
+    )
+      .add(
+      format('value', 'other', 1, 2, 3)
+    );
+    print(
+      format('value', 'other', 1, 2, 3)
+    );
+  }
+
+}
+
+class B {
+
+  Map<String, dynamic> toJson() {
+    return {
+      'id': id,
+      'name': name,
+      'tags': [
+        'a',
+        'b',
+        'c'
+      ]
+    };
+  }
+
+  void log() {
+    if (ok) {
+      print(
+        format('value', 'other', 1, 2, 3)
+      );
+    }
+  }
+
+}
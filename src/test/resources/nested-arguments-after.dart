@@ -0,0 +1,48 @@
+void main() {
+  runApp(
+    App(
+      child: Box(
+        child: Box(
+          child: Box(
+            child: Box(
+              child: Box(
+                child: Box(
+                  child: Box(
+                    child: Box(
+                      child: Box(
+                        child: Box(
+                          child: Box(
+                            child: Box(
+                              child: Box(
+                                child: Box(
+                                  child: Box(
+                                    child: Box(
+                                      child: Box(
+                                        child: Box(
+                                          child: Box(
+                                            child: Text('deep')
+                                          )
+                                        )
+                                      )
+                                    )
+                                  )
+                                )
+                              )
+                            )
+                          )
+                        )
+                      )
+                    )
+                  )
+                )
+              )
+            )
+          )
+        )
+      )
+    )
+  );
+  User(
+    User('Rin'), 'Yo'
+  );
+}
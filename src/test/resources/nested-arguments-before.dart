@@ -0,0 +1,4 @@
+void main() {
+  runApp(App(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Box(child: Text('deep'))))))))))))))))))))));
+  User(User('Rin'), 'Yo');
+}